@@ -21,5 +21,15 @@ public interface IAppOptions extends IPlaylistOptions
    */
   Font getAppFont();
 
+  /**
+   * Keep the media library up to date, by watching its directories for changes.
+   */
+  boolean getWatchMediaLibrary();
+
+  /**
+   * Number of directories listed concurrently per media directory, when scanning the media library.
+   */
+  int getMediaLibraryScanParallelism();
+
   IApplicationState getApplicationState();
 }
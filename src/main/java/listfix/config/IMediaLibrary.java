@@ -1,22 +1,49 @@
 package listfix.config;
 
-import java.util.Set;
+import listfix.io.DirectoryState;
+import listfix.util.FileNameTokenIndex;
 
+import java.util.Map;
+
+/**
+ * The nested directories, nested media files and directory states are modified in the background by the media library watcher.
+ * Every read and write of these has to synchronize on the media library.
+ */
 public interface IMediaLibrary
 {
   /**
    * User configured top level media directories.
    * Used to search media files in
    */
-  Set<String> getMediaDirectories();
+  IPathSet getMediaDirectories();
 
   /**
    * Cached nested directories, derived from media-directories
    */
-  Set<String> getNestedDirectories();
+  IPathSet getNestedDirectories();
 
   /**
    * Cached nested files, derived from media-directories
    */
-  Set<String> getNestedMediaFiles();
+  IPathSet getNestedMediaFiles();
+
+  /**
+   * Filename index of the nested media files, built once per snapshot of the media library
+   */
+  IMediaLibraryFileIndex getFileIndex();
+
+  /**
+   * Token index of the nested media file names, used to find closest matches, built once per snapshot of the media library
+   */
+  FileNameTokenIndex getFileNameTokenIndex();
+
+  /**
+   * State of the nested directories at the last scan, used to skip listing unmodified directories on a refresh
+   */
+  Map<String, DirectoryState> getDirectoryStates();
+
+  /**
+   * Previously repaired paths, consulted before searching the media library; null if repairs are not remembered
+   */
+  RepairMemory getRepairMemory();
 }
@@ -0,0 +1,31 @@
+package listfix.config;
+
+import java.util.List;
+
+/**
+ * Lookup of media library files by filename.
+ */
+public interface IMediaLibraryFileIndex
+{
+  /**
+   * Lookup the media files with the provided filename.
+   *
+   * @param fileName      Filename to search for, without folder
+   * @param caseSensitive If false, the filenames are compared like {@link String#equalsIgnoreCase(String)}
+   * @return Paths of all media files with a matching name, in library order; empty if there are none
+   */
+  List<String> find(String fileName, boolean caseSensitive);
+
+  /**
+   * Lookup the first media file with the provided filename.
+   *
+   * @param fileName      Filename to search for, without folder
+   * @param caseSensitive If false, the filenames are compared like {@link String#equalsIgnoreCase(String)}
+   * @return Path of the first media file in library order with a matching name, null if there is none
+   */
+  default String findFirst(String fileName, boolean caseSensitive)
+  {
+    final List<String> paths = find(fileName, caseSensitive);
+    return paths.isEmpty() ? null : paths.get(0);
+  }
+}
@@ -0,0 +1,24 @@
+package listfix.config;
+
+import java.util.Set;
+
+/**
+ * Set of absolute paths, iterating in the natural order of the path strings, supporting operations on directory subtrees.
+ */
+public interface IPathSet extends Set<String>
+{
+  /**
+   * Remove a directory, and all paths below it
+   *
+   * @param directory Directory to remove
+   * @return Number of paths removed
+   */
+  int removeTree(String directory);
+
+  /**
+   * @param path       Path to check
+   * @param ignoreCase Compare the path components case-insensitive
+   * @return true if this set contains the path itself, or one of its ancestor directories
+   */
+  boolean containsAncestorOf(String path, boolean ignoreCase);
+}
@@ -55,11 +55,16 @@ public abstract class JsonConfigFile<T>
     return mapper.reader().readValue(jsonFile, valueType);
   }
 
-  public void write() throws IOException
+  protected static void writeJson(File jsonFile, Object value) throws IOException
   {
     final ObjectMapper mapper = new ObjectMapper();
     mapper.enable(SerializationFeature.INDENT_OUTPUT); // pretty JSON
-    mapper.writer().writeValue(this.jsonFile, this.jsonPojo);
+    mapper.writer().writeValue(jsonFile, value);
+  }
+
+  public void write() throws IOException
+  {
+    writeJson(this.jsonFile, this.jsonPojo);
   }
 
   /**
@@ -0,0 +1,147 @@
+package listfix.config;
+
+import java.io.File;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+/**
+ * Sorted set of paths, answering queries directly from a memory mapped {@link MediaLibraryStore}.
+ * The first modification copies the paths to a {@link PathTrie} on the heap, which is used from then on.
+ * <p>
+ * All methods synchronize on this set. Iterating, including the bulk operations inherited from {@link AbstractSet}
+ * like {@code toArray} and {@code equals}, requires the caller to synchronize on this set.
+ */
+public class MappedPathSet extends AbstractSet<String> implements IPathSet
+{
+  private final MediaLibraryStore.PathList pathList;
+  private PathTrie heapSet;
+
+  public MappedPathSet(MediaLibraryStore.PathList pathList)
+  {
+    this.pathList = pathList;
+  }
+
+  /**
+   * @return true if this set has been copied to the heap, and no longer reflects the memory mapped store
+   */
+  public synchronized boolean isMaterialized()
+  {
+    return this.heapSet != null;
+  }
+
+  private synchronized PathTrie materialize()
+  {
+    if (this.heapSet == null)
+    {
+      // Adding the paths in sorted order only appends to the children of each directory
+      PathTrie pathTrie = new PathTrie();
+      this.pathList.forEach(pathTrie::add);
+      this.heapSet = pathTrie;
+    }
+    return this.heapSet;
+  }
+
+  @Override
+  public synchronized int size()
+  {
+    return this.heapSet == null ? this.pathList.size() : this.heapSet.size();
+  }
+
+  @Override
+  public synchronized boolean contains(Object o)
+  {
+    if (this.heapSet != null)
+    {
+      return this.heapSet.contains(o);
+    }
+    return o instanceof String && this.pathList.contains((String) o);
+  }
+
+  /**
+   * Until materialized, the returned iterator is read-only.
+   * The caller has to synchronize on this set while iterating.
+   */
+  @Override
+  public synchronized Iterator<String> iterator()
+  {
+    return this.heapSet == null ? this.pathList.iterator() : this.heapSet.iterator();
+  }
+
+  @Override
+  public synchronized boolean add(String path)
+  {
+    return materialize().add(path);
+  }
+
+  @Override
+  public synchronized boolean addAll(Collection<? extends String> paths)
+  {
+    return materialize().addAll(paths);
+  }
+
+  @Override
+  public synchronized boolean remove(Object o)
+  {
+    return materialize().remove(o);
+  }
+
+  @Override
+  public synchronized boolean removeAll(Collection<?> c)
+  {
+    return materialize().removeAll(c);
+  }
+
+  @Override
+  public synchronized boolean retainAll(Collection<?> c)
+  {
+    return materialize().retainAll(c);
+  }
+
+  @Override
+  public synchronized boolean removeIf(Predicate<? super String> filter)
+  {
+    return materialize().removeIf(filter);
+  }
+
+  @Override
+  public synchronized void clear()
+  {
+    this.heapSet = new PathTrie();
+  }
+
+  @Override
+  public synchronized int removeTree(String directory)
+  {
+    return materialize().removeTree(directory);
+  }
+
+  @Override
+  public synchronized boolean containsAncestorOf(String path, boolean ignoreCase)
+  {
+    if (this.heapSet != null)
+    {
+      return this.heapSet.containsAncestorOf(path, ignoreCase);
+    }
+    if (ignoreCase)
+    {
+      for (String directory : this.pathList)
+      {
+        if (PathTrie.isAncestorOrSelf(directory, path, true))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (File file = new File(path); file != null; file = file.getParentFile())
+    {
+      if (this.pathList.contains(file.getPath()))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
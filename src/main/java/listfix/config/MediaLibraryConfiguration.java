@@ -2,32 +2,131 @@ package listfix.config;
 
 import listfix.controller.tasks.WriteMediaLibraryIniTask;
 import listfix.exceptions.MediaDirNotFoundException;
+import listfix.io.Constants;
 import listfix.io.UNCFile;
 import listfix.json.JsonMediaLibrary;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Set;
 
+import static listfix.io.Constants.DATA_DIR;
+
+/**
+ * Persists the media library in a memory mapped {@link MediaLibraryStore}.
+ * A media library stored in the legacy JSON file is migrated once.
+ */
 public class MediaLibraryConfiguration extends JsonConfigFile<JsonMediaLibrary>
 {
+  private final Path storeFile;
+  private final RepairMemory repairMemory;
+  // Replacing the mapped store fails on every write on Windows, logged once
+  private boolean storeInUseLogged;
+
   public MediaLibraryConfiguration()
   {
     super("mediaLibrary.json");
+    this.storeFile = DATA_DIR.resolve("mediaLibrary.bin");
+    this.repairMemory = new RepairMemory(DATA_DIR.resolve("repairMemory.bin"), !Constants.FILE_SYSTEM_IS_CASE_SENSITIVE);
+  }
+
+  /**
+   * Written store, pending to replace the store file.
+   * Replacing a file which is still memory mapped fails on Windows, in which case it is replaced on the next start.
+   */
+  private Path getPendingStoreFile()
+  {
+    return this.storeFile.resolveSibling(this.storeFile.getFileName() + ".new");
+  }
+
+  @Override
+  public File getFile()
+  {
+    return this.storeFile.toFile();
   }
 
   @Override
   public void read() throws IOException
   {
-    this.jsonPojo = readJson(this.jsonFile, JsonMediaLibrary.class);
+    this.jsonPojo = new JsonMediaLibrary(MediaLibraryStore.open(this.storeFile));
+    this.jsonPojo.setRepairMemory(this.repairMemory);
+  }
+
+  @Override
+  public synchronized void write() throws IOException
+  {
+    final Path pendingStoreFile = getPendingStoreFile();
+    synchronized (this.jsonPojo)
+    {
+      MediaLibraryStore.write(pendingStoreFile, this.jsonPojo);
+    }
+    try
+    {
+      Files.move(pendingStoreFile, this.storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e)
+    {
+      // The pending store is kept, init() replaces the store with it
+      if (!this.storeInUseLogged)
+      {
+        this.storeInUseLogged = true;
+        this.logger.debug("Media library store is in use, it will be replaced on the next start", e);
+      }
+    }
+  }
+
+  @Override
+  public void init() throws IOException
+  {
+    final Path pendingStoreFile = getPendingStoreFile();
+    if (Files.exists(pendingStoreFile))
+    {
+      Files.move(pendingStoreFile, this.storeFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+    if (Files.exists(this.storeFile))
+    {
+      this.read();
+      return;
+    }
+    Files.createDirectories(this.storeFile.getParent());
+    if (this.jsonFile.exists())
+    {
+      this.logger.info("Migrating media library from " + this.jsonFile.getName() + " to " + this.storeFile.getFileName());
+      this.jsonPojo = readJson(this.jsonFile, JsonMediaLibrary.class);
+      this.jsonPojo.setRepairMemory(this.repairMemory);
+      this.write();
+      Files.move(this.jsonFile.toPath(), this.jsonFile.toPath().resolveSibling(this.jsonFile.getName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+    }
+    else
+    {
+      this.initPojo();
+      this.write();
+    }
+  }
+
+  /**
+   * Export the media library in the (legacy) JSON format
+   *
+   * @param jsonFile Destination file
+   */
+  public void exportJson(File jsonFile) throws IOException
+  {
+    synchronized (this.jsonPojo)
+    {
+      writeJson(jsonFile, this.jsonPojo);
+    }
   }
 
   @Override
   public void initPojo()
   {
     this.jsonPojo = new JsonMediaLibrary();
+    this.jsonPojo.setRepairMemory(this.repairMemory);
   }
 
   public static MediaLibraryConfiguration load() throws IOException
@@ -41,22 +140,28 @@ public class MediaLibraryConfiguration extends JsonConfigFile<JsonMediaLibrary>
   public void removeMediaDir(String dir) throws MediaDirNotFoundException
   {
     final Set<String> mediaDir = this.jsonPojo.getMediaDirectories();
-    final boolean found = mediaDir.remove(dir);
-
-    if (found)
+    final boolean found;
+    synchronized (this.jsonPojo)
     {
-      if (mediaDir.isEmpty())
-      {
-        this.jsonPojo.getNestedDirectories().clear();
-        this.jsonPojo.getNestedMediaFiles().clear();
-      }
-      else
+      found = mediaDir.remove(dir);
+      if (found)
       {
-        // Remove folders starting with dir
-        this.jsonPojo.getNestedDirectories().removeIf(mediaLibDir -> mediaLibDir.startsWith(dir));
-        // Remove files starting with dir
-        this.jsonPojo.getNestedMediaFiles().removeIf(mediaLibDir -> mediaLibDir.startsWith(dir));
+        if (mediaDir.isEmpty())
+        {
+          this.jsonPojo.getNestedDirectories().clear();
+          this.jsonPojo.getNestedMediaFiles().clear();
+          this.jsonPojo.getDirectoryStates().clear();
+        }
+        else
+        {
+          this.jsonPojo.removeDirectoryTree(dir);
+        }
+        this.jsonPojo.invalidateFileIndex();
       }
+    }
+
+    if (found)
+    {
       this.writeOnBackground();
     }
     else
@@ -97,9 +202,13 @@ public class MediaLibraryConfiguration extends JsonConfigFile<JsonMediaLibrary>
 
   public void switchMediaLibraryToUNCPaths()
   {
-    normalizeFileSetToUNC(this.getConfig().getNestedMediaFiles());
-    normalizeFileSetToUNC(this.getConfig().getNestedDirectories());
-    normalizeFileSetToUNC(this.getConfig().getNestedMediaFiles());
+    synchronized (this.getConfig())
+    {
+      normalizeFileSetToUNC(this.getConfig().getNestedMediaFiles());
+      normalizeFileSetToUNC(this.getConfig().getNestedDirectories());
+      normalizeFileSetToUNC(this.getConfig().getNestedMediaFiles());
+      this.getConfig().invalidateFileIndex();
+    }
   }
 
   /**
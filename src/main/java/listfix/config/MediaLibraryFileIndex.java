@@ -0,0 +1,107 @@
+package listfix.config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the media library files by their filename.
+ * Built once per media library snapshot, so an exact match repair costs a single lookup per playlist entry,
+ * instead of a scan over all media files.
+ */
+public class MediaLibraryFileIndex implements IMediaLibraryFileIndex
+{
+  private static final boolean isWindows = File.separatorChar == '\\';
+
+  private final Collection<String> mediaFiles;
+  private final Object lock;
+  private Map<String, List<String>> caseSensitiveIndex;
+  private Map<String, List<String>> caseInsensitiveIndex;
+
+  /**
+   * @param mediaFiles Media library files (absolute paths); the iteration order determines the order of the lookup results
+   */
+  public MediaLibraryFileIndex(Collection<String> mediaFiles)
+  {
+    this(mediaFiles, mediaFiles);
+  }
+
+  /**
+   * @param mediaFiles Media library files (absolute paths); the iteration order determines the order of the lookup results
+   * @param lock       Lock guarding modifications of the media files, held while building the index
+   */
+  public MediaLibraryFileIndex(Collection<String> mediaFiles, Object lock)
+  {
+    this.mediaFiles = mediaFiles;
+    this.lock = lock;
+  }
+
+  @Override
+  public List<String> find(String fileName, boolean caseSensitive)
+  {
+    final List<String> paths = caseSensitive ?
+      getCaseSensitiveIndex().get(fileName) :
+      getCaseInsensitiveIndex().get(foldCase(fileName));
+    return paths == null ? Collections.emptyList() : paths;
+  }
+
+  private synchronized Map<String, List<String>> getCaseSensitiveIndex()
+  {
+    if (this.caseSensitiveIndex == null)
+    {
+      this.caseSensitiveIndex = buildIndex(false);
+    }
+    return this.caseSensitiveIndex;
+  }
+
+  private synchronized Map<String, List<String>> getCaseInsensitiveIndex()
+  {
+    if (this.caseInsensitiveIndex == null)
+    {
+      this.caseInsensitiveIndex = buildIndex(true);
+    }
+    return this.caseInsensitiveIndex;
+  }
+
+  private Map<String, List<String>> buildIndex(boolean foldCase)
+  {
+    synchronized (this.lock)
+    {
+      final Map<String, List<String>> index = new HashMap<>(Math.max(16, this.mediaFiles.size() * 4 / 3));
+      for (String mediaFile : this.mediaFiles)
+      {
+        String fileName = getFileName(mediaFile);
+        index.computeIfAbsent(foldCase ? foldCase(fileName) : fileName, key -> new ArrayList<>(1)).add(mediaFile);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * Extract the filename from a path, without constructing a {@link java.nio.file.Path}.
+   */
+  static String getFileName(String path)
+  {
+    int ix = path.lastIndexOf(File.separatorChar);
+    if (isWindows)
+    {
+      ix = Math.max(ix, path.lastIndexOf('/'));
+    }
+    return ix < 0 ? path : path.substring(ix + 1);
+  }
+
+  /**
+   * Fold the case in the same way {@link String#equalsIgnoreCase(String)} compares characters,
+   * so equal keys are equivalent to a case-insensitive string comparison.
+   */
+  static String foldCase(String value)
+  {
+    final StringBuilder folded = new StringBuilder(value.length());
+    value.codePoints().forEach(codePoint -> folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint))));
+    return folded.toString();
+  }
+}
@@ -0,0 +1,539 @@
+package listfix.config;
+
+import listfix.io.DirectoryState;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Compact binary storage of the media library, designed to be memory mapped.
+ * Paths are only decoded to {@link String} when they are requested.
+ * <p>
+ * Layout, all integers are big-endian:
+ * <pre>
+ * header:         int magic, int version, int[5] section offsets
+ *                 (media directories, nested directories, nested media files, filename index, directory states)
+ * path list:      int count, int block count, int[block count] block offsets, entries;
+ *                 the paths are sorted, and front-coded in blocks of 16 entries,
+ *                 each entry being: varint shared prefix length, varint suffix length, UTF-8 suffix.
+ *                 The first entry of every block is stored in full.
+ * filename index: int count, int[count] hashes of the case-folded filenames in ascending order,
+ *                 int[count] corresponding ordinals in the nested media files
+ * directory states: int count, long[count] last modified times, int[count] entry counts,
+ *                 in the order of the nested directories
+ * </pre>
+ * Version 1 stores, without directory states, can still be read.
+ */
+public class MediaLibraryStore
+{
+  private static final int MAGIC = 0x4C464D4C; // "LFML"
+  private static final int VERSION = 2;
+  private static final int BLOCK_SIZE = 16;
+  private static final int HEADER_SIZE = 7 * Integer.BYTES;
+  private static final int HEADER_SIZE_V1 = 6 * Integer.BYTES;
+
+  private final MappedByteBuffer buffer;
+  private final PathList mediaDirectories;
+  private final PathList nestedDirectories;
+  private final PathList nestedMediaFiles;
+  private final FileNameIndex fileIndex;
+  private final int directoryStatesOffset;
+
+  private MediaLibraryStore(MappedByteBuffer buffer) throws IOException
+  {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE_V1 || buffer.getInt(0) != MAGIC)
+    {
+      throw new IOException("Not a media library store");
+    }
+    final int version = buffer.getInt(4);
+    if (version != 1 && version != VERSION)
+    {
+      throw new IOException("Unsupported media library store version " + version);
+    }
+    this.mediaDirectories = new PathList(buffer.getInt(8));
+    this.nestedDirectories = new PathList(buffer.getInt(12));
+    this.nestedMediaFiles = new PathList(buffer.getInt(16));
+    this.fileIndex = new FileNameIndex(buffer.getInt(20));
+    this.directoryStatesOffset = version == 1 ? -1 : buffer.getInt(24);
+  }
+
+  /**
+   * Memory map a media library store.
+   *
+   * @param storeFile Media library store file
+   * @return Opened store
+   */
+  public static MediaLibraryStore open(Path storeFile) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(storeFile, StandardOpenOption.READ))
+    {
+      if (channel.size() > Integer.MAX_VALUE)
+      {
+        throw new IOException("Media library store exceeds 2 GB: " + storeFile);
+      }
+      // The mapping remains valid after the channel has been closed
+      return new MediaLibraryStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Write the media library to a store file.
+   *
+   * @param storeFile    Destination file, replaced if it exists
+   * @param mediaLibrary Media library to write
+   */
+  public static void write(Path storeFile, IMediaLibrary mediaLibrary) throws IOException
+  {
+    final byte[] mediaDirectories = encodePathList(sorted(mediaLibrary.getMediaDirectories()), null);
+    final Collection<String> directories = sorted(mediaLibrary.getNestedDirectories());
+    final byte[] nestedDirectories = encodePathList(directories, null);
+    final Collection<String> mediaFiles = sorted(mediaLibrary.getNestedMediaFiles());
+    final long[] fileNameHashes = new long[mediaFiles.size()];
+    final byte[] nestedMediaFiles = encodePathList(mediaFiles, fileNameHashes);
+
+    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(storeFile), 1 << 16))
+    {
+      DataOutputStream dos = new DataOutputStream(os);
+      int offset = HEADER_SIZE;
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeInt(offset);
+      offset += mediaDirectories.length;
+      dos.writeInt(offset);
+      offset += nestedDirectories.length;
+      dos.writeInt(offset);
+      offset += nestedMediaFiles.length;
+      dos.writeInt(offset);
+      offset += Integer.BYTES + 2 * fileNameHashes.length * Integer.BYTES;
+      dos.writeInt(offset);
+      dos.write(mediaDirectories);
+      dos.write(nestedDirectories);
+      dos.write(nestedMediaFiles);
+      writeFileNameIndex(dos, fileNameHashes);
+      writeDirectoryStates(dos, directories, mediaLibrary.getDirectoryStates());
+      dos.flush();
+    }
+  }
+
+  /**
+   * @return The paths in natural order, only sorting them if they are not already iterated in that order
+   */
+  private static Collection<String> sorted(Collection<String> paths)
+  {
+    if (paths instanceof IPathSet || (paths instanceof SortedSet && ((SortedSet<String>) paths).comparator() == null))
+    {
+      return paths;
+    }
+    return new TreeSet<>(paths);
+  }
+
+  /**
+   * @param paths          Sorted paths
+   * @param fileNameHashes If not null, filled with the filename hash in the upper, and the ordinal in the lower 32 bits, for each path
+   */
+  private static byte[] encodePathList(Collection<String> paths, long[] fileNameHashes) throws IOException
+  {
+    final int count = paths.size();
+    final int blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    final int[] blockOffsets = new int[blockCount];
+    final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    byte[] previous = new byte[0];
+    int ordinal = 0;
+    for (String path : paths)
+    {
+      final byte[] current = path.getBytes(StandardCharsets.UTF_8);
+      int shared = 0;
+      if (ordinal % BLOCK_SIZE == 0)
+      {
+        blockOffsets[ordinal / BLOCK_SIZE] = entries.size();
+      }
+      else
+      {
+        shared = Arrays.mismatch(previous, current);
+        if (shared < 0)
+        {
+          shared = current.length; // Only possible with duplicates, which a sorted set does not contain
+        }
+      }
+      writeVarInt(entries, shared);
+      writeVarInt(entries, current.length - shared);
+      entries.write(current, shared, current.length - shared);
+      if (fileNameHashes != null)
+      {
+        fileNameHashes[ordinal] = ((long) fileNameHash(MediaLibraryFileIndex.getFileName(path)) << 32) | ordinal;
+      }
+      previous = current;
+      ++ordinal;
+    }
+
+    final ByteArrayOutputStream section = new ByteArrayOutputStream(2 * Integer.BYTES + blockCount * Integer.BYTES + entries.size());
+    final DataOutputStream dos = new DataOutputStream(section);
+    dos.writeInt(count);
+    dos.writeInt(blockCount);
+    for (int blockOffset : blockOffsets)
+    {
+      dos.writeInt(blockOffset);
+    }
+    entries.writeTo(dos);
+    dos.flush();
+    return section.toByteArray();
+  }
+
+  private static void writeFileNameIndex(DataOutputStream dos, long[] fileNameHashes) throws IOException
+  {
+    // Sorts on hash, and within equal hashes on ordinal, preserving the library order
+    Arrays.sort(fileNameHashes);
+    dos.writeInt(fileNameHashes.length);
+    for (long entry : fileNameHashes)
+    {
+      dos.writeInt((int) (entry >> 32));
+    }
+    for (long entry : fileNameHashes)
+    {
+      dos.writeInt((int) entry);
+    }
+  }
+
+  private static void writeDirectoryStates(DataOutputStream dos, Collection<String> directories, Map<String, DirectoryState> directoryStates) throws IOException
+  {
+    dos.writeInt(directories.size());
+    for (String directory : directories)
+    {
+      final DirectoryState state = directoryStates.get(directory);
+      dos.writeLong(state == null ? DirectoryState.UNKNOWN_LAST_MODIFIED : state.getLastModified());
+    }
+    for (String directory : directories)
+    {
+      final DirectoryState state = directoryStates.get(directory);
+      dos.writeInt(state == null ? 0 : state.getEntryCount());
+    }
+  }
+
+  private static int fileNameHash(String fileName)
+  {
+    return MediaLibraryFileIndex.foldCase(fileName).hashCode();
+  }
+
+  private static void writeVarInt(ByteArrayOutputStream out, int value)
+  {
+    while ((value & ~0x7F) != 0)
+    {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  public PathList getMediaDirectories()
+  {
+    return this.mediaDirectories;
+  }
+
+  public PathList getNestedDirectories()
+  {
+    return this.nestedDirectories;
+  }
+
+  public PathList getNestedMediaFiles()
+  {
+    return this.nestedMediaFiles;
+  }
+
+  /**
+   * Filename index over the nested media files
+   */
+  public IMediaLibraryFileIndex getFileIndex()
+  {
+    return this.fileIndex;
+  }
+
+  /**
+   * Read the directory states recorded by the last scan
+   *
+   * @return Directory state by nested directory, excluding directories of which the state is unknown
+   */
+  public Map<String, DirectoryState> readDirectoryStates()
+  {
+    final Map<String, DirectoryState> directoryStates = new HashMap<>();
+    if (this.directoryStatesOffset < 0)
+    {
+      return directoryStates;
+    }
+    final int count = buffer.getInt(this.directoryStatesOffset);
+    final int lastModifiedPosition = this.directoryStatesOffset + Integer.BYTES;
+    final int entryCountPosition = lastModifiedPosition + count * Long.BYTES;
+    int ordinal = 0;
+    for (String directory : this.nestedDirectories)
+    {
+      final long lastModified = buffer.getLong(lastModifiedPosition + ordinal * Long.BYTES);
+      if (lastModified != DirectoryState.UNKNOWN_LAST_MODIFIED)
+      {
+        directoryStates.put(directory, new DirectoryState(lastModified, buffer.getInt(entryCountPosition + ordinal * Integer.BYTES)));
+      }
+      ++ordinal;
+    }
+    return directoryStates;
+  }
+
+  /**
+   * Sequential decoder of front-coded path entries.
+   */
+  private final class Cursor
+  {
+    private int position;
+    private byte[] bytes = new byte[256];
+    private int length;
+
+    private Cursor(int position)
+    {
+      this.position = position;
+    }
+
+    private int readVarInt()
+    {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do
+      {
+        b = buffer.get(this.position++);
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      }
+      while ((b & 0x80) != 0);
+      return value;
+    }
+
+    private void next()
+    {
+      final int shared = readVarInt();
+      final int suffixLength = readVarInt();
+      this.length = shared + suffixLength;
+      if (this.length > this.bytes.length)
+      {
+        this.bytes = Arrays.copyOf(this.bytes, Math.max(this.length, this.bytes.length * 2));
+      }
+      buffer.get(this.position, this.bytes, shared, suffixLength);
+      this.position += suffixLength;
+    }
+
+    private boolean matches(byte[] other)
+    {
+      return Arrays.equals(this.bytes, 0, this.length, other, 0, other.length);
+    }
+
+    private String decode()
+    {
+      return new String(this.bytes, 0, this.length, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Sorted list of paths stored in the memory mapped store.
+   */
+  public final class PathList implements Iterable<String>
+  {
+    private final int count;
+    private final int blockCount;
+    private final int blockOffsetsPosition;
+    private final int entriesPosition;
+
+    private PathList(int offset)
+    {
+      this.count = buffer.getInt(offset);
+      this.blockCount = buffer.getInt(offset + Integer.BYTES);
+      this.blockOffsetsPosition = offset + 2 * Integer.BYTES;
+      this.entriesPosition = this.blockOffsetsPosition + this.blockCount * Integer.BYTES;
+    }
+
+    public int size()
+    {
+      return this.count;
+    }
+
+    private Cursor openBlock(int block)
+    {
+      return new Cursor(this.entriesPosition + buffer.getInt(this.blockOffsetsPosition + block * Integer.BYTES));
+    }
+
+    /**
+     * Decode the path at the given position.
+     *
+     * @param ordinal Position in the sorted list
+     * @return Path
+     */
+    public String get(int ordinal)
+    {
+      if (ordinal < 0 || ordinal >= this.count)
+      {
+        throw new IndexOutOfBoundsException(ordinal);
+      }
+      final Cursor cursor = openBlock(ordinal / BLOCK_SIZE);
+      for (int i = ordinal % BLOCK_SIZE; i >= 0; --i)
+      {
+        cursor.next();
+      }
+      return cursor.decode();
+    }
+
+    /**
+     * Binary search over the first path of each block, followed by a scan within a single block.
+     * Only the paths visited by the binary search are decoded to strings.
+     *
+     * @param path Path to search for
+     * @return true if the path is in this list
+     */
+    public boolean contains(String path)
+    {
+      int low = 0;
+      int high = this.blockCount - 1;
+      int block = -1;
+      while (low <= high)
+      {
+        final int mid = (low + high) >>> 1;
+        final Cursor cursor = openBlock(mid);
+        cursor.next();
+        final int cmp = cursor.decode().compareTo(path);
+        if (cmp == 0)
+        {
+          return true;
+        }
+        if (cmp < 0)
+        {
+          block = mid;
+          low = mid + 1;
+        }
+        else
+        {
+          high = mid - 1;
+        }
+      }
+      if (block < 0)
+      {
+        return false;
+      }
+      final byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+      final Cursor cursor = openBlock(block);
+      final int entriesInBlock = Math.min(BLOCK_SIZE, this.count - block * BLOCK_SIZE);
+      for (int i = 0; i < entriesInBlock; ++i)
+      {
+        cursor.next();
+        if (cursor.matches(pathBytes))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return Read-only iterator, decoding the paths in sorted order
+     */
+    @Override
+    public Iterator<String> iterator()
+    {
+      return new Iterator<>()
+      {
+        private final Cursor cursor = new Cursor(entriesPosition);
+        private int next = 0;
+
+        @Override
+        public boolean hasNext()
+        {
+          return this.next < count;
+        }
+
+        @Override
+        public String next()
+        {
+          if (this.next >= count)
+          {
+            throw new NoSuchElementException();
+          }
+          ++this.next;
+          this.cursor.next();
+          return this.cursor.decode();
+        }
+      };
+    }
+  }
+
+  private final class FileNameIndex implements IMediaLibraryFileIndex
+  {
+    private final int count;
+    private final int hashesPosition;
+    private final int ordinalsPosition;
+
+    private FileNameIndex(int offset)
+    {
+      this.count = buffer.getInt(offset);
+      this.hashesPosition = offset + Integer.BYTES;
+      this.ordinalsPosition = this.hashesPosition + this.count * Integer.BYTES;
+    }
+
+    private int hashAt(int ix)
+    {
+      return buffer.getInt(this.hashesPosition + ix * Integer.BYTES);
+    }
+
+    @Override
+    public List<String> find(String fileName, boolean caseSensitive)
+    {
+      final String folded = MediaLibraryFileIndex.foldCase(fileName);
+      final int hash = folded.hashCode();
+
+      // Lower bound of the hash
+      int low = 0;
+      int high = this.count;
+      while (low < high)
+      {
+        final int mid = (low + high) >>> 1;
+        if (hashAt(mid) < hash)
+        {
+          low = mid + 1;
+        }
+        else
+        {
+          high = mid;
+        }
+      }
+
+      List<String> result = Collections.emptyList();
+      for (int ix = low; ix < this.count && hashAt(ix) == hash; ++ix)
+      {
+        final String path = nestedMediaFiles.get(buffer.getInt(this.ordinalsPosition + ix * Integer.BYTES));
+        final String candidate = MediaLibraryFileIndex.getFileName(path);
+        if (caseSensitive ? candidate.equals(fileName) : MediaLibraryFileIndex.foldCase(candidate).equals(folded))
+        {
+          if (result.isEmpty())
+          {
+            result = new ArrayList<>(1);
+          }
+          result.add(path);
+        }
+      }
+      return result;
+    }
+  }
+}
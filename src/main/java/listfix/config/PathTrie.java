@@ -0,0 +1,637 @@
+package listfix.config;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Set of paths, stored as a trie of path components.
+ * The name of a directory is stored once, shared by all paths below it, and a path without descendants
+ * is stored as the bare name, without a node object.
+ * <p>
+ * Iterates in the natural order of the path strings, the same order as a {@link TreeSet} of the paths.
+ * Membership checks, insertion and the removal of a subtree cost O(depth) lookups, each a binary search over the children.
+ * Not thread-safe.
+ */
+public class PathTrie extends AbstractSet<String> implements IPathSet
+{
+  private static final char SEPARATOR = File.separatorChar;
+  private static final Object[] NO_CHILDREN = new Object[0];
+
+  /**
+   * Root of the trie, the first component of a path (empty for an absolute path on Unix) is a child of the root.
+   */
+  private final Node root = new Node(null, false);
+  private int modCount;
+
+  public PathTrie()
+  {
+  }
+
+  public PathTrie(Collection<String> paths)
+  {
+    this.addAll(paths);
+  }
+
+  /**
+   * Directory node, children are either a {@link Node} or a {@link String} being a member without children.
+   */
+  private static final class Node
+  {
+    private final String name;
+    private boolean member;
+    private Object[] children = NO_CHILDREN;
+    private int childCount;
+    /**
+     * Number of members in this subtree, including this node
+     */
+    private int size;
+
+    private Node(String name, boolean member)
+    {
+      this.name = name;
+      this.member = member;
+      this.size = member ? 1 : 0;
+    }
+
+    /**
+     * Binary search for the child with the name equal to the given region of the path
+     *
+     * @return Index of the child, or (-(insertion point) - 1) if not found
+     */
+    private int find(String path, int start, int end)
+    {
+      int low = 0;
+      int high = this.childCount - 1;
+      while (low <= high)
+      {
+        final int mid = (low + high) >>> 1;
+        final int cmp = compareRegion(nameOf(this.children[mid]), path, start, end);
+        if (cmp < 0)
+        {
+          low = mid + 1;
+        }
+        else if (cmp > 0)
+        {
+          high = mid - 1;
+        }
+        else
+        {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+
+    private void insert(int index, Object child)
+    {
+      if (this.childCount == this.children.length)
+      {
+        this.children = Arrays.copyOf(this.children, Math.max(4, this.childCount + (this.childCount >> 1)));
+      }
+      System.arraycopy(this.children, index, this.children, index + 1, this.childCount - index);
+      this.children[index] = child;
+      ++this.childCount;
+    }
+
+    private void delete(int index)
+    {
+      System.arraycopy(this.children, index + 1, this.children, index, this.childCount - index - 1);
+      this.children[--this.childCount] = null;
+      if (this.childCount == 0)
+      {
+        this.children = NO_CHILDREN;
+      }
+    }
+
+    /**
+     * Replace a member without children by a node, so children can be added to it
+     */
+    private Node nodeAt(int index)
+    {
+      final Object child = this.children[index];
+      if (child instanceof Node)
+      {
+        return (Node) child;
+      }
+      final Node node = new Node((String) child, true);
+      this.children[index] = node;
+      return node;
+    }
+  }
+
+  private static String nameOf(Object child)
+  {
+    return child instanceof Node ? ((Node) child).name : (String) child;
+  }
+
+  private static boolean isMember(Object child)
+  {
+    return !(child instanceof Node) || ((Node) child).member;
+  }
+
+  private static boolean hasChildren(Object child)
+  {
+    return child instanceof Node && ((Node) child).childCount > 0;
+  }
+
+  private static int sizeOf(Object child)
+  {
+    return child instanceof Node ? ((Node) child).size : 1;
+  }
+
+  /**
+   * Compare a name with a region of a path, in the same way as {@link String#compareTo(String)}
+   */
+  private static int compareRegion(String name, String path, int start, int end)
+  {
+    final int length = end - start;
+    final int limit = Math.min(name.length(), length);
+    for (int k = 0; k < limit; ++k)
+    {
+      final char c1 = name.charAt(k);
+      final char c2 = path.charAt(start + k);
+      if (c1 != c2)
+      {
+        return c1 - c2;
+      }
+    }
+    return name.length() - length;
+  }
+
+  /**
+   * @return Difference of the first differing character of a and b, within the given length, 0 if none differs
+   */
+  private static int compareChars(String a, String b, int length)
+  {
+    for (int k = 0; k < length; ++k)
+    {
+      final char c1 = a.charAt(k);
+      final char c2 = b.charAt(k);
+      if (c1 != c2)
+      {
+        return c1 - c2;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Compare name a, with name b followed by a separator, without concatenating them
+   */
+  private static int compareWithSeparator(String a, String b)
+  {
+    final int cmp = compareChars(a, b, Math.min(a.length(), b.length()));
+    if (cmp != 0)
+    {
+      return cmp;
+    }
+    return a.length() <= b.length() ? -1 : a.charAt(b.length()) - SEPARATOR;
+  }
+
+  /**
+   * Compare names a and b, both followed by a separator
+   */
+  private static int compareBothWithSeparator(String a, String b)
+  {
+    final int limit = Math.min(a.length(), b.length());
+    final int cmp = compareChars(a, b, limit);
+    if (cmp != 0 || a.length() == b.length())
+    {
+      return cmp;
+    }
+    return a.length() < b.length() ? SEPARATOR - b.charAt(limit) : a.charAt(limit) - SEPARATOR;
+  }
+
+  private static int componentEnd(String path, int start)
+  {
+    final int end = path.indexOf(SEPARATOR, start);
+    return end < 0 ? path.length() : end;
+  }
+
+  /**
+   * Component-wise check if a path is equal to, or located in a directory.
+   *
+   * @param directory  Directory
+   * @param path       Path to check
+   * @param ignoreCase Compare case-insensitive
+   * @return true if the path is equal to the directory or below it
+   */
+  public static boolean isAncestorOrSelf(String directory, String path, boolean ignoreCase)
+  {
+    final int length = directory.length();
+    return path.regionMatches(ignoreCase, 0, directory, 0, length) &&
+      (path.length() == length || path.charAt(length) == SEPARATOR || (length > 0 && directory.charAt(length - 1) == SEPARATOR));
+  }
+
+  @Override
+  public int size()
+  {
+    return this.root.size;
+  }
+
+  @Override
+  public boolean contains(Object o)
+  {
+    if (!(o instanceof String))
+    {
+      return false;
+    }
+    final String path = (String) o;
+    Node node = this.root;
+    int start = 0;
+    while (true)
+    {
+      final int end = componentEnd(path, start);
+      final int index = node.find(path, start, end);
+      if (index < 0)
+      {
+        return false;
+      }
+      final Object child = node.children[index];
+      if (end == path.length())
+      {
+        return isMember(child);
+      }
+      if (!(child instanceof Node))
+      {
+        return false;
+      }
+      node = (Node) child;
+      start = end + 1;
+    }
+  }
+
+  @Override
+  public boolean add(String path)
+  {
+    if (add(this.root, path, 0))
+    {
+      ++this.modCount;
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean add(Node node, String path, int start)
+  {
+    final int end = componentEnd(path, start);
+    int index = node.find(path, start, end);
+    boolean added;
+    if (end == path.length())
+    {
+      if (index < 0)
+      {
+        node.insert(-index - 1, path.substring(start));
+        added = true;
+      }
+      else
+      {
+        final Object child = node.children[index];
+        added = !isMember(child);
+        if (added)
+        {
+          final Node childNode = (Node) child;
+          childNode.member = true;
+          ++childNode.size;
+        }
+      }
+    }
+    else
+    {
+      if (index < 0)
+      {
+        index = -index - 1;
+        node.insert(index, new Node(path.substring(start, end), false));
+      }
+      added = add(node.nodeAt(index), path, end + 1);
+    }
+    if (added)
+    {
+      ++node.size;
+    }
+    return added;
+  }
+
+  @Override
+  public boolean remove(Object o)
+  {
+    return o instanceof String && remove((String) o, false) > 0;
+  }
+
+  @Override
+  public int removeTree(String directory)
+  {
+    return remove(directory, true);
+  }
+
+  private int remove(String path, boolean subtree)
+  {
+    final int removed = remove(this.root, path, 0, subtree);
+    if (removed > 0)
+    {
+      ++this.modCount;
+    }
+    return removed;
+  }
+
+  /**
+   * @return Number of members removed
+   */
+  private static int remove(Node node, String path, int start, boolean subtree)
+  {
+    final int end = componentEnd(path, start);
+    final int index = node.find(path, start, end);
+    if (index < 0)
+    {
+      return 0;
+    }
+    final Object child = node.children[index];
+    int removed;
+    if (end == path.length())
+    {
+      if (subtree || !(child instanceof Node))
+      {
+        removed = sizeOf(child);
+        node.delete(index);
+      }
+      else
+      {
+        final Node childNode = (Node) child;
+        removed = childNode.member ? 1 : 0;
+        childNode.member = false;
+        childNode.size -= removed;
+        if (childNode.childCount == 0)
+        {
+          node.delete(index);
+        }
+      }
+    }
+    else
+    {
+      if (!(child instanceof Node))
+      {
+        return 0;
+      }
+      final Node childNode = (Node) child;
+      removed = remove(childNode, path, end + 1, subtree);
+      if (childNode.size == 0)
+      {
+        node.delete(index);
+      }
+    }
+    node.size -= removed;
+    return removed;
+  }
+
+  @Override
+  public boolean containsAncestorOf(String path, boolean ignoreCase)
+  {
+    return containsAncestorOf(this.root, path, 0, ignoreCase);
+  }
+
+  private static boolean containsAncestorOf(Node node, String path, int start, boolean ignoreCase)
+  {
+    final int end = componentEnd(path, start);
+    if (!ignoreCase)
+    {
+      final int index = node.find(path, start, end);
+      if (index < 0)
+      {
+        return false;
+      }
+      final Object child = node.children[index];
+      return isMember(child) || (end < path.length() && child instanceof Node && containsAncestorOf((Node) child, path, end + 1, false));
+    }
+    for (int index = 0; index < node.childCount; ++index)
+    {
+      final Object child = node.children[index];
+      final String name = nameOf(child);
+      if (name.length() == end - start && path.regionMatches(true, start, name, 0, name.length()) &&
+        (isMember(child) || (end < path.length() && child instanceof Node && containsAncestorOf((Node) child, path, end + 1, true))))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c)
+  {
+    boolean modified = false;
+    for (Object o : c)
+    {
+      modified |= this.remove(o);
+    }
+    return modified;
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super String> filter)
+  {
+    final List<String> toRemove = new ArrayList<>();
+    for (String path : this)
+    {
+      if (filter.test(path))
+      {
+        toRemove.add(path);
+      }
+    }
+    return this.removeAll(toRemove);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c)
+  {
+    return this.removeIf(path -> !c.contains(path));
+  }
+
+  @Override
+  public void clear()
+  {
+    this.root.children = NO_CHILDREN;
+    this.root.childCount = 0;
+    this.root.size = 0;
+    ++this.modCount;
+  }
+
+  @Override
+  public Iterator<String> iterator()
+  {
+    return new TrieIterator();
+  }
+
+  /**
+   * Depth-first iterator. Within a directory, a child is visited at the position of its name,
+   * and its descendants at the position of its name followed by the separator,
+   * which results in the same order as comparing the full path strings.
+   */
+  private final class TrieIterator implements Iterator<String>
+  {
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private int expectedModCount = modCount;
+    private String next;
+    private String lastReturned;
+
+    private TrieIterator()
+    {
+      this.stack.push(new Frame(root, ""));
+      this.next = this.advance();
+    }
+
+    private String advance()
+    {
+      while (!this.stack.isEmpty())
+      {
+        final Frame frame = this.stack.peek();
+        final Object[] children = frame.node.children;
+        final int count = frame.node.childCount;
+        while (frame.self < count && !isMember(children[frame.self]))
+        {
+          ++frame.self;
+        }
+        final boolean hasSelf = frame.self < count;
+        final boolean hasSubtree = frame.subtree < frame.subtrees.length;
+        if (!hasSelf && !hasSubtree)
+        {
+          this.stack.pop();
+          continue;
+        }
+        if (!hasSubtree || (hasSelf && compareWithSeparator(nameOf(children[frame.self]), frame.subtrees[frame.subtree].name) < 0))
+        {
+          return frame.prefix + nameOf(children[frame.self++]);
+        }
+        final Node child = frame.subtrees[frame.subtree++];
+        this.stack.push(new Frame(child, frame.prefix + child.name + SEPARATOR));
+      }
+      return null;
+    }
+
+    /**
+     * Position the iterator on the first path greater than the given path
+     */
+    private void seek(String path)
+    {
+      this.stack.clear();
+      Node node = root;
+      String prefix = "";
+      int start = 0;
+      while (node != null)
+      {
+        final Frame frame = new Frame(node, prefix);
+        this.stack.push(frame);
+        final String rest = path.substring(start);
+        final int end = componentEnd(path, start);
+        while (frame.self < node.childCount && nameOf(node.children[frame.self]).compareTo(rest) <= 0)
+        {
+          ++frame.self;
+        }
+        Node descend = null;
+        while (frame.subtree < frame.subtrees.length)
+        {
+          final Node child = frame.subtrees[frame.subtree];
+          if (end < path.length() && compareRegion(child.name, path, start, end) == 0)
+          {
+            descend = child;
+            ++frame.subtree;
+            break;
+          }
+          if (compareWithSeparator(rest, child.name) < 0)
+          {
+            break;
+          }
+          ++frame.subtree;
+        }
+        if (descend != null)
+        {
+          prefix = prefix + descend.name + SEPARATOR;
+          start = end + 1;
+        }
+        node = descend;
+      }
+      this.next = this.advance();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return this.next != null;
+    }
+
+    @Override
+    public String next()
+    {
+      if (modCount != this.expectedModCount)
+      {
+        throw new ConcurrentModificationException();
+      }
+      if (this.next == null)
+      {
+        throw new NoSuchElementException();
+      }
+      this.lastReturned = this.next;
+      this.next = this.advance();
+      return this.lastReturned;
+    }
+
+    /**
+     * Removes the last returned path, and repositions after it, as the removal may have restructured the trie.
+     */
+    @Override
+    public void remove()
+    {
+      if (this.lastReturned == null)
+      {
+        throw new IllegalStateException();
+      }
+      if (modCount != this.expectedModCount)
+      {
+        throw new ConcurrentModificationException();
+      }
+      PathTrie.this.remove(this.lastReturned);
+      this.expectedModCount = modCount;
+      this.seek(this.lastReturned);
+      this.lastReturned = null;
+    }
+  }
+
+  private static final class Frame
+  {
+    private final Node node;
+    private final String prefix;
+    /**
+     * Children with descendants, in the order of their name followed by the separator
+     */
+    private final Node[] subtrees;
+    private int self;
+    private int subtree;
+
+    private Frame(Node node, String prefix)
+    {
+      this.node = node;
+      this.prefix = prefix;
+      int count = 0;
+      for (int i = 0; i < node.childCount; ++i)
+      {
+        if (hasChildren(node.children[i]))
+        {
+          ++count;
+        }
+      }
+      this.subtrees = new Node[count];
+      count = 0;
+      for (int i = 0; i < node.childCount; ++i)
+      {
+        if (hasChildren(node.children[i]))
+        {
+          this.subtrees[count++] = (Node) node.children[i];
+        }
+      }
+      if (count > 1)
+      {
+        Arrays.sort(this.subtrees, (a, b) -> compareBothWithSeparator(a.name, b.name));
+      }
+    }
+  }
+}
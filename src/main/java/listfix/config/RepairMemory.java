@@ -0,0 +1,223 @@
+package listfix.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers repaired playlist entries, as a mapping from the missing path to the path it has been repaired to.
+ * Consulted before searching the media library, so repeated repairs of the same missing path are instant.
+ * Loaded on first use; the least recently used mappings are forgotten beyond {@link #MAX_SIZE}.
+ * <p>
+ * Layout, GZIP compressed: int magic, int version, int count, count times (UTF missing path, UTF repaired path),
+ * from the least to the most recently used.
+ */
+public class RepairMemory
+{
+  public static final int MAX_SIZE = 100000;
+
+  private static final Logger _logger = LogManager.getLogger(RepairMemory.class);
+  private static final int MAGIC = 0x4C46524D; // "LFRM"
+  private static final int VERSION = 1;
+
+  private final Path file;
+  private final boolean ignoreCase;
+  private Map<String, String> mappings;
+  private boolean modified;
+  // Writes in the background one at a time; the thread ends when idle
+  private final ExecutorService writer = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+    runnable -> new Thread(runnable, "write-repair-memory"));
+  private final AtomicBoolean writePending = new AtomicBoolean();
+
+  /**
+   * @param file       File the mappings are persisted in
+   * @param ignoreCase Compare missing paths case-insensitive
+   */
+  public RepairMemory(Path file, boolean ignoreCase)
+  {
+    this.file = file;
+    this.ignoreCase = ignoreCase;
+  }
+
+  private String key(String path)
+  {
+    return this.ignoreCase ? path.toLowerCase(Locale.ROOT) : path;
+  }
+
+  private Map<String, String> getMappings()
+  {
+    if (this.mappings == null)
+    {
+      this.mappings = new LinkedHashMap<>(16, 0.75f, true)
+      {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+        {
+          return this.size() > MAX_SIZE;
+        }
+      };
+      try
+      {
+        this.read();
+      }
+      catch (NoSuchFileException e)
+      {
+        // Nothing remembered yet
+      }
+      catch (IOException e)
+      {
+        _logger.warn("Failed to read repair memory from " + this.file, e);
+      }
+    }
+    return this.mappings;
+  }
+
+  private void read() throws IOException
+  {
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(this.file)))))
+    {
+      if (input.readInt() != MAGIC)
+      {
+        throw new IOException("Not a repair memory file");
+      }
+      final int version = input.readInt();
+      if (version != VERSION)
+      {
+        throw new IOException("Unsupported repair memory version " + version);
+      }
+      final int count = input.readInt();
+      for (int i = 0; i < count; ++i)
+      {
+        final String missingPath = this.key(input.readUTF());
+        this.mappings.put(missingPath, input.readUTF());
+      }
+    }
+  }
+
+  /**
+   * Look up where a missing path has been repaired to before.
+   * A remembered path which no longer exists is forgotten.
+   *
+   * @param missingPath Absolute path of a missing playlist entry
+   * @return Existing path the missing path has been repaired to, null if unknown
+   */
+  public Path recall(Path missingPath)
+  {
+    final String key = this.key(missingPath.toString());
+    final String repairedPath;
+    synchronized (this)
+    {
+      repairedPath = this.getMappings().get(key);
+    }
+    if (repairedPath == null)
+    {
+      return null;
+    }
+    // Checked without holding the lock, so concurrent repairs do not wait for each other's disk access
+    final Path repaired = Path.of(repairedPath);
+    if (Files.exists(repaired))
+    {
+      return repaired;
+    }
+    synchronized (this)
+    {
+      if (this.mappings.remove(key, repairedPath))
+      {
+        this.modified = true;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param missingPath  Absolute path of a missing playlist entry
+   * @param repairedPath Absolute path the entry has been repaired to
+   */
+  public synchronized void remember(Path missingPath, Path repairedPath)
+  {
+    final String key = this.key(missingPath.toString());
+    if (!repairedPath.toString().equals(this.getMappings().put(key, repairedPath.toString())))
+    {
+      this.modified = true;
+    }
+  }
+
+  /**
+   * @return Number of remembered repairs
+   */
+  public synchronized int size()
+  {
+    return this.getMappings().size();
+  }
+
+  /**
+   * Write the mappings, if modified since read or last written
+   */
+  public synchronized void write() throws IOException
+  {
+    if (!this.modified)
+    {
+      return;
+    }
+    Files.createDirectories(this.file.getParent());
+    final Path tempFile = this.file.resolveSibling(this.file.getFileName() + ".new");
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile)))))
+    {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(this.mappings.size());
+      for (Map.Entry<String, String> mapping : this.mappings.entrySet())
+      {
+        output.writeUTF(mapping.getKey());
+        output.writeUTF(mapping.getValue());
+      }
+    }
+    Files.move(tempFile, this.file, StandardCopyOption.REPLACE_EXISTING);
+    this.modified = false;
+  }
+
+  private synchronized boolean isModified()
+  {
+    return this.modified;
+  }
+
+  /**
+   * Write the mappings in the background, if modified; a write already waiting to run includes the latest changes.
+   */
+  public void writeOnBackground()
+  {
+    if (this.isModified() && this.writePending.compareAndSet(false, true))
+    {
+      this.writer.execute(() -> {
+        this.writePending.set(false);
+        try
+        {
+          this.write();
+        }
+        catch (IOException e)
+        {
+          _logger.error("Error writing repair memory to " + this.file, e);
+        }
+      });
+    }
+  }
+}
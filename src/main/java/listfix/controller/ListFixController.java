@@ -15,6 +15,7 @@ public final class ListFixController implements IApplicationConfiguration
   private MediaLibraryConfiguration mediaLibraryConfiguration;
   private ApplicationOptionsConfiguration applicationOptionsConfiguration;
   private PlaylistHistory history;
+  private MediaLibraryWatcher mediaLibraryWatcher;
 
   public static final boolean FILE_SYSTEM_IS_CASE_SENSITIVE = File.separatorChar == '/';
 
@@ -47,6 +48,11 @@ public final class ListFixController implements IApplicationConfiguration
       mediaLibraryConfiguration.cleanNonExistingMediaDirectories();
 
       showMediaDirWindow = this.getMediaLibrary().getNestedDirectories().isEmpty();
+
+      if (this.getAppOptions().getWatchMediaLibrary())
+      {
+        this.startMediaLibraryWatcher();
+      }
     }
     catch (Exception e)
     {
@@ -90,6 +96,38 @@ public final class ListFixController implements IApplicationConfiguration
     return this.mediaLibraryConfiguration;
   }
 
+  /**
+   * @return Watcher keeping the media library up to date, null if not enabled
+   */
+  public MediaLibraryWatcher getMediaLibraryWatcher()
+  {
+    return this.mediaLibraryWatcher;
+  }
+
+  /**
+   * Start watching the media library directories, if not already watching
+   */
+  public synchronized void startMediaLibraryWatcher() throws IOException
+  {
+    if (this.mediaLibraryWatcher == null)
+    {
+      this.mediaLibraryWatcher = new MediaLibraryWatcher(this.mediaLibraryConfiguration);
+      this.mediaLibraryWatcher.start();
+    }
+  }
+
+  /**
+   * Stop watching the media library directories
+   */
+  public synchronized void stopMediaLibraryWatcher() throws IOException
+  {
+    if (this.mediaLibraryWatcher != null)
+    {
+      this.mediaLibraryWatcher.close();
+      this.mediaLibraryWatcher = null;
+    }
+  }
+
   public boolean getShowMediaDirWindow()
   {
     return this.showMediaDirWindow;
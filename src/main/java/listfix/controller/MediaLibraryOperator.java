@@ -2,12 +2,15 @@ package listfix.controller;
 
 import listfix.config.MediaLibraryConfiguration;
 import listfix.io.DirectoryScanner;
+import listfix.io.MediaLibraryDelta;
+import listfix.json.JsonMediaLibrary;
 import listfix.view.support.ProgressWorker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Set;
 
 public class MediaLibraryOperator
@@ -22,52 +25,78 @@ public class MediaLibraryOperator
     this.mediaLibraryConfiguration = ListFixController.getInstance().getMediaLibraryConfiguration();
   }
 
-  public void addDirectory(String dir)
+  /**
+   * Add a media directory, and scan it
+   *
+   * @param dir Media directory to add
+   * @return Changes applied to the media library, null if cancelled
+   */
+  public MediaLibraryDelta addDirectory(String dir)
   {
     final Set<String> mediaDir = this.mediaLibraryConfiguration.getConfig().getMediaDirectories();
     mediaDir.add(dir);
-    DirectoryScanner ds = new DirectoryScanner();
-    ds.createMediaLibraryDirectoryAndFileList(mediaDir, _observer);
-    if (!_observer.getCancelled())
+    return this.refresh();
+  }
+
+  /**
+   * Rescan the media directories, only directories modified since the previous scan are listed again
+   *
+   * @return Changes applied to the media library, null if cancelled
+   */
+  public MediaLibraryDelta refresh()
+  {
+    final JsonMediaLibrary mediaLibrary = this.mediaLibraryConfiguration.getConfig();
+    final int parallelism = ListFixController.getInstance().getAppOptions().getMediaLibraryScanParallelism();
+    final DirectoryScanner ds;
+    synchronized (mediaLibrary)
     {
-      _observer.setMessage("Finishing...");
-      replaceSetValues(this.mediaLibraryConfiguration.getConfig().getNestedDirectories(), ds.getDirectoryList());
-      replaceSetValues(this.mediaLibraryConfiguration.getConfig().getNestedMediaFiles(), ds.getFileList());
-      ds.reset();
-      try
-      {
-        this.mediaLibraryConfiguration.write();
-      }
-      catch (IOException e)
+      // The scanner copies the previous results, the media library watcher may modify these while scanning
+      ds = new DirectoryScanner(new HashMap<>(mediaLibrary.getDirectoryStates()), mediaLibrary.getNestedDirectories(), mediaLibrary.getNestedMediaFiles(), parallelism);
+    }
+    MediaLibraryDelta delta = ds.createMediaLibraryDirectoryAndFileList(mediaLibrary.getMediaDirectories(), _observer);
+    if (_observer.getCancelled())
+    {
+      return null;
+    }
+    _observer.setMessage("Finishing...");
+    _logger.info("Media library refreshed: " + delta);
+    synchronized (mediaLibrary)
+    {
+      applyDelta(mediaLibrary.getNestedDirectories(), delta.getAddedDirectories(), delta.getRemovedDirectories());
+      applyDelta(mediaLibrary.getNestedMediaFiles(), delta.getAddedFiles(), delta.getRemovedFiles());
+      mediaLibrary.getDirectoryStates().clear();
+      mediaLibrary.getDirectoryStates().putAll(ds.getDirectoryStates());
+      if (!delta.getAddedFiles().isEmpty() || !delta.getRemovedFiles().isEmpty())
       {
-        _logger.error("Error", e);
+        mediaLibrary.invalidateFileIndex();
       }
     }
+    final MediaLibraryWatcher watcher = ListFixController.getInstance().getMediaLibraryWatcher();
+    if (watcher != null && (!delta.getAddedDirectories().isEmpty() || !delta.getRemovedDirectories().isEmpty()))
+    {
+      watcher.synchronizeDirectories();
+    }
+    try
+    {
+      this.mediaLibraryConfiguration.write();
+    }
+    catch (IOException e)
+    {
+      _logger.error("Error", e);
+    }
+    return delta;
   }
 
-  private static void replaceSetValues(Set<String> set, Collection<String> newValues)
-  {
-    set.clear();
-    set.addAll(newValues);
-  }
-
-
-  public void refresh()
+  private static void applyDelta(Set<String> set, Collection<String> added, Collection<String> removed)
   {
-    DirectoryScanner ds = new DirectoryScanner();
-    ds.createMediaLibraryDirectoryAndFileList(this.mediaLibraryConfiguration.getConfig().getMediaDirectories(), _observer);
-    if (!_observer.getCancelled())
+    // Avoid copying a memory mapped set to the heap if there is nothing to change
+    if (!removed.isEmpty())
     {
-      _observer.setMessage("Finishing...");
-      ds.reset();
-      try
-      {
-        this.mediaLibraryConfiguration.write();
-      }
-      catch (IOException e)
-      {
-        _logger.error("Error", e);
-      }
+      set.removeAll(removed);
+    }
+    if (!added.isEmpty())
+    {
+      set.addAll(added);
     }
   }
 }
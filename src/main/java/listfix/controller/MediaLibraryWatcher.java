@@ -0,0 +1,383 @@
+package listfix.controller;
+
+import listfix.config.MediaLibraryConfiguration;
+import listfix.config.PathTrie;
+import listfix.io.FileUtils;
+import listfix.json.JsonMediaLibrary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the media library up to date, by watching the nested directories for created, deleted and renamed entries.
+ * <p>
+ * Events are collected until no new event arrived for {@link #QUIET_PERIOD_MS}, or until {@link #MAX_DELAY_MS} has passed,
+ * so a storm of events (e.g. copying an album) is applied, and written to the media library store, as a single batch.
+ * The paths touched by a batch are compared with the file system, which coalesces repeated events on the same path.
+ * The media library is only read and modified while holding its lock, see {@link listfix.config.IMediaLibrary};
+ * the file system is checked, and new directories are scanned and watched, before taking the lock to apply the changes.
+ */
+public class MediaLibraryWatcher implements Closeable
+{
+  private static final Logger _logger = LogManager.getLogger(MediaLibraryWatcher.class);
+
+  static final long QUIET_PERIOD_MS = 1000;
+  static final long MAX_DELAY_MS = 10000;
+
+  private final MediaLibraryConfiguration mediaLibraryConfiguration;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+  private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+  private final Thread thread;
+  // Directories which could not be watched since the last report, and the first failure
+  private int unwatchedDirectories;
+  private IOException unwatchedFailure;
+  private boolean unwatchedReported;
+
+  public MediaLibraryWatcher(MediaLibraryConfiguration mediaLibraryConfiguration) throws IOException
+  {
+    this.mediaLibraryConfiguration = mediaLibraryConfiguration;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.thread = new Thread(this::run, "Media library watcher");
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Register the nested directories, and process events, in the background
+   */
+  public void start()
+  {
+    this.thread.start();
+  }
+
+  /**
+   * Watch the current nested directories of the media library, and stop watching directories no longer in it.
+   * To be called after the nested directories have been modified by something else than this watcher.
+   */
+  public synchronized void synchronizeDirectories()
+  {
+    final Set<Path> directories = new HashSet<>();
+    synchronized (getMediaLibrary())
+    {
+      for (String directory : getMediaLibrary().getNestedDirectories())
+      {
+        directories.add(Path.of(directory));
+      }
+    }
+    for (Path directory : new ArrayList<>(this.watchKeys.keySet()))
+    {
+      if (!directories.contains(directory))
+      {
+        this.unregister(directory);
+      }
+    }
+    for (Path directory : directories)
+    {
+      if (!this.watchKeys.containsKey(directory))
+      {
+        this.register(directory);
+      }
+    }
+    _logger.info(String.format("Watching %d media library directories", this.watchKeys.size()));
+    this.reportUnwatchedDirectories();
+  }
+
+  private void register(Path directory)
+  {
+    try
+    {
+      WatchKey key = directory.register(this.watchService, ENTRY_CREATE, ENTRY_DELETE);
+      this.watchedDirectories.put(key, directory);
+      this.watchKeys.put(directory, key);
+    }
+    catch (IOException e)
+    {
+      // E.g. the inotify watch limit on Linux has been reached
+      _logger.debug("Failed to watch directory " + directory, e);
+      if (this.unwatchedFailure == null)
+      {
+        this.unwatchedFailure = e;
+      }
+      ++this.unwatchedDirectories;
+    }
+  }
+
+  /**
+   * Log the directories which could not be watched, as a single warning the first time
+   */
+  private void reportUnwatchedDirectories()
+  {
+    if (this.unwatchedDirectories > 0)
+    {
+      final String message = String.format("Failed to watch %d media library directories, changes in these are found by refreshing the media library", this.unwatchedDirectories);
+      if (this.unwatchedReported)
+      {
+        _logger.debug(message);
+      }
+      else
+      {
+        _logger.warn(message, this.unwatchedFailure);
+        this.unwatchedReported = true;
+      }
+      this.unwatchedDirectories = 0;
+      this.unwatchedFailure = null;
+    }
+  }
+
+  private void unregister(Path directory)
+  {
+    WatchKey key = this.watchKeys.remove(directory);
+    if (key != null)
+    {
+      key.cancel();
+      this.watchedDirectories.remove(key);
+    }
+  }
+
+  private JsonMediaLibrary getMediaLibrary()
+  {
+    return this.mediaLibraryConfiguration.getConfig();
+  }
+
+  private void run()
+  {
+    try
+    {
+      // Registering a large media library takes a while, which is kept off the startup path
+      this.synchronizeDirectories();
+      while (true)
+      {
+        final Set<Path> touchedPaths = new LinkedHashSet<>();
+        final Set<Path> overflowedDirectories = new LinkedHashSet<>();
+        WatchKey key = this.watchService.take();
+        final long batchStart = System.currentTimeMillis();
+        while (key != null)
+        {
+          this.collectEvents(key, touchedPaths, overflowedDirectories);
+          final long remaining = batchStart + MAX_DELAY_MS - System.currentTimeMillis();
+          key = remaining > 0 ? this.watchService.poll(Math.min(QUIET_PERIOD_MS, remaining), TimeUnit.MILLISECONDS) : null;
+        }
+        this.applyBatch(touchedPaths, overflowedDirectories);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch (ClosedWatchServiceException e)
+    {
+      _logger.debug("Media library watcher stopped");
+    }
+  }
+
+  private synchronized void collectEvents(WatchKey key, Set<Path> touchedPaths, Set<Path> overflowedDirectories)
+  {
+    final Path directory = this.watchedDirectories.get(key);
+    for (WatchEvent<?> event : key.pollEvents())
+    {
+      if (directory == null)
+      {
+        continue;
+      }
+      if (event.kind() == OVERFLOW)
+      {
+        overflowedDirectories.add(directory);
+      }
+      else
+      {
+        touchedPaths.add(directory.resolve((Path) event.context()));
+      }
+    }
+    if (!key.reset() && directory != null)
+    {
+      // Directory is no longer accessible, e.g. deleted
+      this.unregister(directory);
+      touchedPaths.add(directory);
+    }
+  }
+
+  /**
+   * Apply a batch of events to the media library, and write it to disk
+   *
+   * @param touchedPaths          Paths created or deleted
+   * @param overflowedDirectories Directories of which events have been lost, these are listed to find the changes
+   */
+  synchronized void applyBatch(Set<Path> touchedPaths, Set<Path> overflowedDirectories)
+  {
+    for (Path directory : overflowedDirectories)
+    {
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory))
+      {
+        entries.forEach(touchedPaths::add);
+      }
+      catch (IOException e)
+      {
+        touchedPaths.add(directory);
+      }
+    }
+
+    final JsonMediaLibrary mediaLibrary = getMediaLibrary();
+    final List<Path> relevantPaths = new ArrayList<>(touchedPaths.size());
+    synchronized (mediaLibrary)
+    {
+      final Set<String> nestedDirectories = mediaLibrary.getNestedDirectories();
+      for (Path path : touchedPaths)
+      {
+        final Path parent = path.getParent();
+        // Skip paths no longer part of the media library
+        if (parent == null || nestedDirectories.contains(parent.toString()) || nestedDirectories.contains(path.toString()))
+        {
+          relevantPaths.add(path);
+        }
+      }
+    }
+
+    // Check the file system, and watch new directories, without holding the lock of the media library
+    final Set<String> addedDirectories = new LinkedHashSet<>();
+    final Set<String> addedMediaFiles = new LinkedHashSet<>();
+    final List<String> removedPaths = new ArrayList<>();
+    for (Path path : relevantPaths)
+    {
+      if (Files.isDirectory(path))
+      {
+        this.scanDirectory(path, addedDirectories, addedMediaFiles);
+      }
+      else if (Files.exists(path))
+      {
+        if (FileUtils.isMediaFile(path))
+        {
+          addedMediaFiles.add(path.toString());
+        }
+      }
+      else
+      {
+        removedPaths.add(path.toString());
+      }
+    }
+
+    boolean modified = false;
+    final List<String> removedDirectories = new ArrayList<>();
+    synchronized (mediaLibrary)
+    {
+      final Set<String> nestedDirectories = mediaLibrary.getNestedDirectories();
+      final Set<String> nestedMediaFiles = mediaLibrary.getNestedMediaFiles();
+      modified |= nestedDirectories.addAll(addedDirectories);
+      modified |= nestedMediaFiles.addAll(addedMediaFiles);
+      for (String removedPath : removedPaths)
+      {
+        if (nestedDirectories.contains(removedPath))
+        {
+          mediaLibrary.removeDirectoryTree(removedPath);
+          removedDirectories.add(removedPath);
+          modified = true;
+        }
+        else
+        {
+          modified |= nestedMediaFiles.remove(removedPath);
+        }
+      }
+      for (Path path : relevantPaths)
+      {
+        if (path.getParent() != null)
+        {
+          mediaLibrary.getDirectoryStates().remove(path.getParent().toString());
+        }
+      }
+      if (modified)
+      {
+        mediaLibrary.invalidateFileIndex();
+      }
+    }
+    removedDirectories.forEach(this::unwatchTree);
+
+    this.reportUnwatchedDirectories();
+
+    if (modified)
+    {
+      _logger.info(String.format("Applied %d file system changes to the media library", touchedPaths.size()));
+      try
+      {
+        this.mediaLibraryConfiguration.write();
+      }
+      catch (IOException e)
+      {
+        _logger.error("Error writing media library", e);
+      }
+    }
+  }
+
+  /**
+   * Collect a created (or moved in) directory, including its content, which may already exist before it is watched,
+   * and watch its directories.
+   */
+  private void scanDirectory(Path directory, Set<String> directories, Set<String> mediaFiles)
+  {
+    try
+    {
+      Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>()
+      {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        {
+          directories.add(dir.toString());
+          if (!watchKeys.containsKey(dir))
+          {
+            register(dir);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+        {
+          if (FileUtils.isMediaFile(file))
+          {
+            mediaFiles.add(file.toString());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc)
+        {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    catch (IOException e)
+    {
+      _logger.warn("Failed to scan directory " + directory, e);
+    }
+  }
+
+  /**
+   * Stop watching a deleted (or moved out) directory, and its subdirectories
+   */
+  private void unwatchTree(String directory)
+  {
+    for (Path watched : new ArrayList<>(this.watchKeys.keySet()))
+    {
+      if (PathTrie.isAncestorOrSelf(directory, watched.toString(), false))
+      {
+        this.unregister(watched);
+      }
+    }
+  }
+
+  /**
+   * Stop watching
+   */
+  @Override
+  public void close() throws IOException
+  {
+    this.watchService.close();
+  }
+}
@@ -0,0 +1,197 @@
+package listfix.io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces a file by writing a sibling temporary file, which is moved over the file once completely written.
+ * A failure while writing, like a full disk, leaves the original file intact.
+ * The replacement gets the permissions, or DOS attributes, of the replaced file, and its owner and group where allowed.
+ * A file with more than one hard link is overwritten in place from the temporary file instead, not atomically, so all its links keep sharing the content.
+ */
+public class AtomicFileWriter
+{
+  private static final Logger _logger = LogManager.getLogger(AtomicFileWriter.class);
+
+  public static final int BUFFER_SIZE = 256 * 1024;
+
+  /**
+   * Writes the content of a file
+   */
+  public interface IContentWriter
+  {
+    void write(OutputStream outputStream) throws Exception;
+  }
+
+  /**
+   * @param path               File to write, replaced if it exists; a symbolic link is followed
+   * @param sync               Force the content to the storage device before replacing the file
+   * @param preserveTimestamps Keep the timestamps of the replaced file
+   * @param contentWriter      Writes the content, to a buffered stream
+   */
+  public static void write(Path path, boolean sync, boolean preserveTimestamps, IContentWriter contentWriter) throws IOException
+  {
+    final Path target = Files.isSymbolicLink(path) ? path.toRealPath() : path;
+    final Path temporaryFile = target.resolveSibling(String.format(".%s.%x.tmp", target.getFileName(), ThreadLocalRandom.current().nextInt()));
+    boolean moved = false;
+    try
+    {
+      try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+           OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))
+      {
+        contentWriter.write(outputStream);
+        outputStream.flush();
+        if (sync)
+        {
+          channel.force(true);
+        }
+      }
+      catch (IOException e)
+      {
+        throw e;
+      }
+      catch (Exception e)
+      {
+        throw new IOException(String.format("Failed to write \"%s\"", target), e);
+      }
+      final boolean exists = Files.exists(target);
+      final BasicFileAttributes times = preserveTimestamps && exists ? Files.readAttributes(target, BasicFileAttributes.class) : null;
+      if (exists && isHardLinked(target))
+      {
+        overwrite(temporaryFile, target, sync);
+      }
+      else
+      {
+        if (exists)
+        {
+          copyAttributes(target, temporaryFile);
+        }
+        move(temporaryFile, target);
+        moved = true;
+        if (sync)
+        {
+          syncFolder(target.toAbsolutePath().getParent());
+        }
+      }
+      if (times != null)
+      {
+        Files.getFileAttributeView(target, BasicFileAttributeView.class).setTimes(times.lastModifiedTime(), times.lastAccessTime(), times.creationTime());
+      }
+    }
+    finally
+    {
+      if (!moved)
+      {
+        Files.deleteIfExists(temporaryFile);
+      }
+    }
+  }
+
+  private static void move(Path source, Path target) throws IOException
+  {
+    try
+    {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (AtomicMoveNotSupportedException e)
+    {
+      _logger.debug(String.format("Atomic move not supported, replacing \"%s\"", target));
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * @return True if the file has more than one hard link, false if not or if the file system does not tell
+   */
+  private static boolean isHardLinked(Path path)
+  {
+    try
+    {
+      return ((Number) Files.getAttribute(path, "unix:nlink")).intValue() > 1;
+    }
+    catch (UnsupportedOperationException | IllegalArgumentException | IOException e)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * Copy the content of the completely written temporary file over the file, keeping the file itself
+   */
+  private static void overwrite(Path source, Path target, boolean sync) throws IOException
+  {
+    _logger.debug(String.format("Overwriting hard linked \"%s\" in place", target));
+    try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+         FileChannel output = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+    {
+      long position = 0;
+      final long size = input.size();
+      while (position < size)
+      {
+        position += input.transferTo(position, size - position, output);
+      }
+      if (sync)
+      {
+        output.force(true);
+      }
+    }
+  }
+
+  private static void copyAttributes(Path source, Path target) throws IOException
+  {
+    final PosixFileAttributeView posixView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+    if (posixView != null)
+    {
+      final PosixFileAttributes posixAttributes = Files.readAttributes(source, PosixFileAttributes.class);
+      posixView.setPermissions(posixAttributes.permissions());
+      try
+      {
+        posixView.setGroup(posixAttributes.group());
+        posixView.setOwner(posixAttributes.owner());
+      }
+      catch (IOException e)
+      {
+        // Changing the owner requires privileges, the replacement is owned by the user saving it
+        _logger.debug(String.format("Could not copy the owner of \"%s\"", source), e);
+      }
+    }
+    final DosFileAttributeView dosView = Files.getFileAttributeView(target, DosFileAttributeView.class);
+    if (dosView != null && posixView == null)
+    {
+      final DosFileAttributes dosAttributes = Files.readAttributes(source, DosFileAttributes.class);
+      dosView.setHidden(dosAttributes.isHidden());
+      dosView.setSystem(dosAttributes.isSystem());
+      dosView.setArchive(dosAttributes.isArchive());
+    }
+  }
+
+  /**
+   * Persist the rename, where the file system supports syncing a folder
+   */
+  private static void syncFolder(Path folder)
+  {
+    try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ))
+    {
+      channel.force(true);
+    }
+    catch (IOException e)
+    {
+      // Not supported on Windows, where the move is flushed by the file system
+      _logger.debug(String.format("Could not sync folder \"%s\"", folder), e);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package listfix.io;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers file existence from directory listings, so each directory is listed only once instead of checking each file,
+ * which saves a round-trip per file on network shares.
+ * Directories found to be missing are remembered, answering existence of anything below them without any file system access.
+ * Unless the listing is known to match names like the file system does, a name not found in the listing is checked by
+ * {@link Files#exists}, as a case-insensitive or Unicode normalizing file system may still find it.
+ * Thread-safe.
+ */
+public class DirectoryListingCache
+{
+  private final long ttlMillis;
+  private final boolean ignoreCase;
+  private final boolean exactListing;
+  private final ConcurrentHashMap<Path, Listing> listings = new ConcurrentHashMap<>();
+  /**
+   * Missing directories, with the time they were found missing
+   */
+  private final ConcurrentHashMap<Path, Long> missingDirectories = new ConcurrentHashMap<>();
+
+  /**
+   * Cache without expiry, to be used for a single operation, like loading a playlist.
+   * The file system is not assumed to compare names case-sensitively, names not listed are checked by the file system.
+   */
+  public DirectoryListingCache()
+  {
+    this(Long.MAX_VALUE, false, false);
+  }
+
+  /**
+   * @param ttlMillis  Time in milliseconds a listing, or a missing directory, is trusted
+   * @param ignoreCase Compare file names case-insensitive, like the file system does
+   */
+  public DirectoryListingCache(long ttlMillis, boolean ignoreCase)
+  {
+    this(ttlMillis, ignoreCase, true);
+  }
+
+  /**
+   * @param ttlMillis    Time in milliseconds a listing, or a missing directory, is trusted
+   * @param ignoreCase   Compare file names case-insensitive
+   * @param exactListing True if names compare like the file system does, a name not listed does not exist;
+   *                     otherwise names not listed are checked by {@link Files#exists}
+   */
+  public DirectoryListingCache(long ttlMillis, boolean ignoreCase, boolean exactListing)
+  {
+    this.ttlMillis = ttlMillis;
+    this.ignoreCase = ignoreCase;
+    this.exactListing = exactListing;
+  }
+
+  private String key(String fileName)
+  {
+    return this.ignoreCase ? fileName.toLowerCase(Locale.ROOT) : fileName;
+  }
+
+  private boolean isExpired(long time, long now)
+  {
+    return now - time > this.ttlMillis;
+  }
+
+  /**
+   * Equivalent of {@link Files#exists}, except that symbolic links are not checked to resolve
+   *
+   * @param path Absolute path
+   * @return True if the file or directory exists
+   */
+  public boolean exists(Path path)
+  {
+    final Path directory = path.getParent();
+    final Path fileName = path.getFileName();
+    if (directory == null || fileName == null)
+    {
+      return Files.exists(path);
+    }
+    if (this.isInMissingDirectory(directory))
+    {
+      return false;
+    }
+    final Set<String> names = this.list(directory);
+    if (names == null)
+    {
+      return Files.exists(path);
+    }
+    if (names.contains(this.key(fileName.toString())))
+    {
+      return true;
+    }
+    // The name may differ by case or Unicode normalization; nothing matches in an empty or missing directory
+    return !this.exactListing && !names.isEmpty() && Files.exists(path);
+  }
+
+  /**
+   * @param directory Absolute path of a directory
+   * @return True if the directory, or one of its parents, has been found missing
+   */
+  public boolean isInMissingDirectory(Path directory)
+  {
+    if (this.missingDirectories.isEmpty())
+    {
+      return false;
+    }
+    final long now = System.currentTimeMillis();
+    for (Path dir = directory; dir != null; dir = dir.getParent())
+    {
+      final Long missingSince = this.missingDirectories.get(dir);
+      if (missingSince != null)
+      {
+        if (!this.isExpired(missingSince, now))
+        {
+          return true;
+        }
+        this.missingDirectories.remove(dir, missingSince);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return Keys of the directory entry names, empty if the directory does not exist, null if the directory cannot be listed
+   */
+  private Set<String> list(Path directory)
+  {
+    final long now = System.currentTimeMillis();
+    Listing listing = this.listings.get(directory);
+    if (listing == null || listing.isExpired(now))
+    {
+      // Concurrent lookups in the same directory share a single listing
+      final Listing fresh = new Listing();
+      final Listing current = listing == null ?
+        this.listings.putIfAbsent(directory, fresh) :
+        (this.listings.replace(directory, listing, fresh) ? null : this.listings.get(directory));
+      listing = current == null ? fresh : current;
+    }
+    return listing.getNames(directory);
+  }
+
+  private Set<String> readNames(Path directory)
+  {
+    final Set<String> names = new HashSet<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+    {
+      for (Path entry : stream)
+      {
+        names.add(this.key(entry.getFileName().toString()));
+      }
+    }
+    catch (NoSuchFileException | NotDirectoryException e)
+    {
+      this.missingDirectories.put(directory, System.currentTimeMillis());
+      return Collections.emptySet();
+    }
+    catch (IOException | SecurityException e)
+    {
+      // Not listable, like a directory without read permission, fall back to checking each file
+      return null;
+    }
+    return names;
+  }
+
+  private final class Listing
+  {
+    private Set<String> names;
+    private long time = Long.MAX_VALUE;
+    private boolean loaded;
+
+    private synchronized Set<String> getNames(Path directory)
+    {
+      if (!this.loaded)
+      {
+        this.names = DirectoryListingCache.this.readNames(directory);
+        this.time = System.currentTimeMillis();
+        this.loaded = true;
+      }
+      return this.names;
+    }
+
+    private synchronized boolean isExpired(long now)
+    {
+      return this.loaded && DirectoryListingCache.this.isExpired(this.time, now);
+    }
+  }
+}
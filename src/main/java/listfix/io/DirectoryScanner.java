@@ -1,96 +1,374 @@
 package listfix.io;
 
 import listfix.view.support.ProgressWorker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Creates a list of the indexed files and subdirectories contained in a list of input directories.
+ * Directories which have not been modified since a previous scan are not listed again,
+ * instead their files and subdirectories are taken from the results of the previous scan.
+ * <p>
+ * Subdirectories are scanned in parallel, each media directory has its own {@link ForkJoinPool},
+ * so slow (network) media directories are listed concurrently, without starving each other.
+ * The results are merged in sorted depth-first order, independent of the order in which the directories were scanned.
  */
 
 public class DirectoryScanner
 {
-  private List<String> thisDirList;
-  private List<String> thisFileList;
-  private int recursiveCount = 0;
+  private static final Logger _logger = LogManager.getLogger(DirectoryScanner.class);
 
+  /**
+   * Default number of directories listed concurrently per media directory
+   */
+  public static final int DEFAULT_PARALLELISM = 4;
 
-  public void createMediaLibraryDirectoryAndFileList(Collection<String> baseDirs, ProgressWorker task)
+  /**
+   * A modification within this period after the last modified time of a directory, may not update its last modified time
+   * (e.g. FAT has a 2 second resolution), so a directory modified that recently is listed again on the next scan.
+   */
+  private static final long LAST_MODIFIED_RESOLUTION = 2000;
+
+  private static final Set<FileVisitOption> FOLLOW_LINKS = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+
+  private final Map<String, DirectoryState> previousStates;
+  private final Set<String> previousDirectories;
+  private final Map<String, List<String>> previousFilesByDirectory = new HashMap<>();
+  private final Map<String, List<String>> previousSubdirectoriesByDirectory = new HashMap<>();
+  private final int parallelism;
+
+  private Map<String, DirectoryState> directoryStates;
+  private Set<String> visitedDirectories;
+  private MediaLibraryDelta delta;
+  private final AtomicInteger recursiveCount = new AtomicInteger();
+
+  /**
+   * Scanner without previous scan results, listing all directories
+   */
+  public DirectoryScanner()
+  {
+    this(Collections.emptyMap(), Collections.emptyList(), Collections.emptyList(), DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * @param previousStates      Directory states recorded by the previous scan
+   * @param previousDirectories Directories found by the previous scan
+   * @param previousFiles       Media files found by the previous scan
+   * @param parallelism         Maximum number of directories listed concurrently, per media directory
+   */
+  public DirectoryScanner(Map<String, DirectoryState> previousStates, Collection<String> previousDirectories, Collection<String> previousFiles, int parallelism)
+  {
+    this.previousStates = previousStates;
+    this.previousDirectories = new HashSet<>(previousDirectories);
+    this.parallelism = Math.max(1, parallelism);
+    for (String directory : this.previousDirectories)
+    {
+      String parent = new File(directory).getParent();
+      if (parent != null)
+      {
+        this.previousSubdirectoriesByDirectory.computeIfAbsent(parent, key -> new ArrayList<>()).add(directory);
+      }
+    }
+    for (List<String> subdirectories : this.previousSubdirectoriesByDirectory.values())
+    {
+      Collections.sort(subdirectories);
+    }
+    for (String file : previousFiles)
+    {
+      this.previousFilesByDirectory.computeIfAbsent(new File(file).getParent(), key -> new ArrayList<>()).add(file);
+    }
+  }
+
+  /**
+   * Scan the provided directories
+   *
+   * @param baseDirs Media directories to scan
+   * @param task     Progress worker, used for cancellation and to report progress
+   * @return Changes compared to the previous scan, incomplete if the task has been cancelled
+   */
+  public MediaLibraryDelta createMediaLibraryDirectoryAndFileList(Collection<String> baseDirs, ProgressWorker task)
   {
     this.reset();
-    for (String baseDir : baseDirs)
+
+    // Start all media directories, before waiting for any of them
+    final List<ForkJoinPool> pools = new ArrayList<>();
+    final List<ForkJoinTask<ScanResult>> scans = new ArrayList<>();
+    try
     {
-      if (new File(baseDir).exists())
+      for (String baseDir : baseDirs)
       {
-        thisDirList.add(baseDir);
-        this.recursiveDir(baseDir, task);
+        if (new File(baseDir).exists())
+        {
+          ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+          pools.add(pool);
+          scans.add(pool.submit(new ScanTask(baseDir, task)));
+        }
+      }
+      for (ForkJoinTask<ScanResult> scan : scans)
+      {
+        this.merge(scan.join());
       }
     }
+    finally
+    {
+      pools.forEach(ForkJoinPool::shutdownNow);
+    }
+
+    // Directories found by the previous scan, which no longer exist or are no longer part of the media directories
+    for (String directory : this.previousDirectories)
+    {
+      if (!this.visitedDirectories.contains(directory))
+      {
+        this.delta.getRemovedDirectories().add(directory);
+        this.delta.getRemovedFiles().addAll(this.previousFilesByDirectory.getOrDefault(directory, Collections.emptyList()));
+      }
+    }
+    return this.delta;
   }
 
-  private void recursiveDir(String baseDir, ProgressWorker task)
+  /**
+   * Merge the scan results depth-first, in the order of the sorted subdirectories
+   */
+  private void merge(ScanResult result)
   {
-    recursiveCount++;
-    if (!task.getCancelled())
+    if (result == null)
     {
-      task.setMessage("<html><body>Scanning Directory #" + recursiveCount + "<BR>" + (baseDir.length() < 70 ? baseDir : baseDir.substring(0, 70) + "...") + "</body></html>");
+      return; // Cancelled
+    }
+    this.visitedDirectories.add(result.directory);
+    if (!this.previousDirectories.contains(result.directory))
+    {
+      this.delta.getAddedDirectories().add(result.directory);
+    }
+    if (result.state != null)
+    {
+      this.directoryStates.put(result.directory, result.state);
+    }
+    this.delta.getAddedFiles().addAll(result.addedFiles);
+    this.delta.getRemovedFiles().addAll(result.removedFiles);
+    for (ScanResult subdirectory : result.subdirectories)
+    {
+      this.merge(subdirectory);
+    }
+  }
+
+  /**
+   * Scan of a single directory, forking a task for each of its subdirectories.
+   */
+  private class ScanTask extends RecursiveTask<ScanResult>
+  {
+    private final String directory;
+    private final ProgressWorker task;
+
+    private ScanTask(String directory, ProgressWorker task)
+    {
+      this.directory = directory;
+      this.task = task;
+    }
+
+    @Override
+    protected ScanResult compute()
+    {
+      if (this.task.getCancelled())
+      {
+        return null;
+      }
+      final int count = recursiveCount.incrementAndGet();
+      final ScanResult result = new ScanResult(this.directory);
+      final Path dir = Path.of(this.directory);
+
+      long lastModified = 0;
+      try
+      {
+        lastModified = Files.readAttributes(dir, BasicFileAttributes.class).lastModifiedTime().toMillis();
+      }
+      catch (IOException e)
+      {
+        _logger.debug("Failed to read attributes of " + this.directory, e);
+      }
+
+      final DirectoryState previousState = previousStates.get(this.directory);
+      List<String> subdirectories;
+      // Only counted if the last modified time did not change already
+      if (previousState != null && previousDirectories.contains(this.directory) && previousState.getLastModified() == lastModified
+        && previousState.isUnchanged(lastModified, countEntries(dir)))
+      {
+        this.task.setMessage("<html><body>Checking Directory #" + count + "<BR>" + abbreviate(this.directory) + "</body></html>");
+        result.state = previousState;
+        subdirectories = previousSubdirectoriesByDirectory.getOrDefault(this.directory, Collections.emptyList());
+      }
+      else
+      {
+        this.task.setMessage("<html><body>Scanning Directory #" + count + "<BR>" + abbreviate(this.directory) + "</body></html>");
+        subdirectories = listDirectory(dir, lastModified, result);
+      }
+
+      final List<ScanTask> subtasks = new ArrayList<>(subdirectories.size());
+      for (String subdirectory : subdirectories)
+      {
+        subtasks.add(new ScanTask(subdirectory, this.task));
+      }
+      invokeAll(subtasks);
+      for (ScanTask subtask : subtasks)
+      {
+        ScanResult subResult = subtask.join();
+        if (subResult != null)
+        {
+          result.subdirectories.add(subResult);
+        }
+      }
+      return result;
+    }
+  }
 
-      File mediaDir = new File(baseDir);
-      String[] entryList = mediaDir.list();
-      Set<String> fileList = new TreeSet<>();
-      Set<String> dirList = new TreeSet<>();
+  /**
+   * Count the entries of the directory by their names only, cheaper than listing it with their attributes
+   *
+   * @return Number of entries, -1 if the directory could not be read
+   */
+  private static int countEntries(Path dir)
+  {
+    int count = 0;
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir))
+    {
+      for (Path ignored : entries)
+      {
+        ++count;
+      }
+      return count;
+    }
+    catch (IOException | DirectoryIteratorException e)
+    {
+      _logger.debug("Failed to count the entries of " + dir, e);
+      return -1;
+    }
+  }
 
-      if (entryList != null)
+  /**
+   * List the directory, and compare its media files with the previous scan.
+   * The attributes are obtained while walking the directory, which avoids an additional file system request per entry
+   * where the file system provides the attributes with the directory listing (Windows).
+   *
+   * @return Subdirectories in sorted order
+   */
+  private List<String> listDirectory(Path dir, long lastModified, ScanResult result)
+  {
+    final long listedAt = System.currentTimeMillis();
+    final List<String> fileList = new ArrayList<>();
+    final List<String> dirList = new ArrayList<>();
+    final int[] entryCount = {0};
+    final boolean[] listed = {false};
+    try
+    {
+      Files.walkFileTree(dir, FOLLOW_LINKS, 1, new SimpleFileVisitor<>()
       {
-        File tempFile;
-        for (String entryList1 : entryList)
+        @Override
+        public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attrs)
         {
-          tempFile = new File(baseDir, entryList1);
-          if (tempFile.isDirectory())
+          listed[0] = true;
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+        {
+          ++entryCount[0];
+          if (attrs.isDirectory())
           {
-            dirList.add(tempFile.getPath());
+            dirList.add(file.toString());
           }
-          else
+          else if (FileUtils.isMediaFile(file))
           {
-            if (FileUtils.isMediaFile(tempFile))
-            {
-              fileList.add(tempFile.getPath());
-            }
+            fileList.add(file.toString());
           }
+          return FileVisitResult.CONTINUE;
         }
-      }
 
-      thisFileList.addAll(fileList);
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc)
+        {
+          if (file.equals(dir))
+          {
+            _logger.warn("Failed to list directory " + dir, exc);
+            return FileVisitResult.TERMINATE;
+          }
+          ++entryCount[0];
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    catch (IOException e)
+    {
+      _logger.warn("Failed to list directory " + dir, e);
+    }
+
+    if (listed[0])
+    {
+      final boolean trustLastModified = lastModified > 0 && lastModified < listedAt - LAST_MODIFIED_RESOLUTION;
+      result.state = new DirectoryState(trustLastModified ? lastModified : DirectoryState.UNKNOWN_LAST_MODIFIED, entryCount[0]);
+    }
 
-      for (String dir : dirList)
+    Collections.sort(fileList);
+    Collections.sort(dirList);
+    final Set<String> previousFiles = new HashSet<>(this.previousFilesByDirectory.getOrDefault(dir.toString(), Collections.emptyList()));
+    for (String file : fileList)
+    {
+      if (!previousFiles.remove(file))
       {
-        thisDirList.add(dir);
-        recursiveDir(dir, task);
+        result.addedFiles.add(file);
       }
-
-      fileList.clear();
-      dirList.clear();
     }
-  }
+    result.removedFiles.addAll(previousFiles);
+    Collections.sort(result.removedFiles);
 
+    return dirList;
+  }
 
-  public void reset()
+  /**
+   * Scan result of a single directory, and its subdirectories.
+   */
+  private static class ScanResult
   {
-    recursiveCount = 0;
-    thisDirList = new ArrayList<>();
-    thisFileList = new ArrayList<>();
-  }
+    private final String directory;
+    private DirectoryState state;
+    private final List<String> addedFiles = new ArrayList<>();
+    private final List<String> removedFiles = new ArrayList<>();
+    private final List<ScanResult> subdirectories = new ArrayList<>();
 
+    private ScanResult(String directory)
+    {
+      this.directory = directory;
+    }
+  }
 
-  public List<String> getFileList()
+  private static String abbreviate(String path)
   {
-    return this.thisFileList;
+    return path.length() < 70 ? path : path.substring(0, 70) + "...";
   }
 
+  public void reset()
+  {
+    recursiveCount.set(0);
+    directoryStates = new HashMap<>();
+    visitedDirectories = new HashSet<>();
+    delta = new MediaLibraryDelta();
+  }
 
-  public List<String> getDirectoryList()
+  /**
+   * @return State of each directory found by the last scan
+   */
+  public Map<String, DirectoryState> getDirectoryStates()
   {
-    return this.thisDirList;
+    return this.directoryStates;
   }
 }
@@ -0,0 +1,48 @@
+package listfix.io;
+
+/**
+ * State of a scanned media library directory, used to detect if the directory needs to be listed again.
+ */
+public class DirectoryState
+{
+  /**
+   * Last modified time used if it is unknown, or too recent to be trusted.
+   */
+  public static final long UNKNOWN_LAST_MODIFIED = -1;
+
+  private final long lastModified;
+  private final int entryCount;
+
+  /**
+   * @param lastModified Last modified time of the directory in milliseconds since the epoch
+   * @param entryCount   Number of entries (files and subdirectories) in the directory when it was listed
+   */
+  public DirectoryState(long lastModified, int entryCount)
+  {
+    this.lastModified = lastModified;
+    this.entryCount = entryCount;
+  }
+
+  public long getLastModified()
+  {
+    return this.lastModified;
+  }
+
+  public int getEntryCount()
+  {
+    return this.entryCount;
+  }
+
+  /**
+   * A directory its last modified time changes when an entry is added, removed or renamed in it.
+   * The number of entries catches changes where the last modified time was restored, like by a copy keeping timestamps.
+   *
+   * @param lastModified Current last modified time of the directory
+   * @param entryCount   Current number of entries in the directory
+   * @return true if the directory content is known to be unchanged since this state was recorded
+   */
+  public boolean isUnchanged(long lastModified, int entryCount)
+  {
+    return this.lastModified != UNKNOWN_LAST_MODIFIED && this.lastModified == lastModified && this.entryCount == entryCount;
+  }
+}
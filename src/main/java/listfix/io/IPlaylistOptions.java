@@ -15,11 +15,26 @@ public interface IPlaylistOptions
    */
   int getMaxClosestResults();
 
+  /**
+   * Returns the number of playlist entries matched concurrently, when searching closest matches; 0 for the number of processors.
+   */
+  int getClosestMatchParallelism();
+
   /**
    * Returns use case-insensitive / exact path name comparison.
    */
   boolean getCaseInsensitiveExactMatching();
 
+  /**
+   * Returns whether a saved playlist is forced to the storage device before it replaces the original file.
+   */
+  boolean getSyncPlaylistsOnSave();
+
+  /**
+   * Returns whether a saved playlist keeps the timestamps of the file it replaces; its permissions are always kept.
+   */
+  boolean getPreservePlaylistAttributesOnSave();
+
   /**
    * Returns list of user defined playlist directories.
    */
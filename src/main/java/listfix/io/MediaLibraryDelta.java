@@ -0,0 +1,47 @@
+package listfix.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes in the media library, detected by a (re)scan of the media directories.
+ */
+public class MediaLibraryDelta
+{
+  private final List<String> addedDirectories = new ArrayList<>();
+  private final List<String> removedDirectories = new ArrayList<>();
+  private final List<String> addedFiles = new ArrayList<>();
+  private final List<String> removedFiles = new ArrayList<>();
+
+  public List<String> getAddedDirectories()
+  {
+    return this.addedDirectories;
+  }
+
+  public List<String> getRemovedDirectories()
+  {
+    return this.removedDirectories;
+  }
+
+  public List<String> getAddedFiles()
+  {
+    return this.addedFiles;
+  }
+
+  public List<String> getRemovedFiles()
+  {
+    return this.removedFiles;
+  }
+
+  public boolean isEmpty()
+  {
+    return this.addedDirectories.isEmpty() && this.removedDirectories.isEmpty() && this.addedFiles.isEmpty() && this.removedFiles.isEmpty();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%d files added, %d files removed, %d directories added, %d directories removed",
+      this.addedFiles.size(), this.removedFiles.size(), this.addedDirectories.size(), this.removedDirectories.size());
+  }
+}
@@ -62,30 +62,11 @@ public class UnicodeInputStream extends InputStream
     int n, unread;
     n = internalIn.read(bom, 0, bom.length);
 
-    if ((bom[0] == (byte) 0x00) && (bom[1] == (byte) 0x00) && (bom[2] == (byte) 0xFE) && (bom[3] == (byte) 0xFF))
+    final String bomEncoding = getBomEncoding(bom, Math.max(n, 0));
+    if (bomEncoding != null)
     {
-      encoding = "UTF-32BE";
-      unread = n - 4;
-    }
-    else if ((bom[0] == (byte) 0xFF) && (bom[1] == (byte) 0xFE) && (bom[2] == (byte) 0x00) && (bom[3] == (byte) 0x00))
-    {
-      encoding = "UTF-32LE";
-      unread = n - 4;
-    }
-    else if ((bom[0] == (byte) 0xEF) && (bom[1] == (byte) 0xBB) && (bom[2] == (byte) 0xBF))
-    {
-      encoding = "UTF-8";
-      unread = n - 3;
-    }
-    else if ((bom[0] == (byte) 0xFE) && (bom[1] == (byte) 0xFF))
-    {
-      encoding = "UTF-16BE";
-      unread = n - 2;
-    }
-    else if ((bom[0] == (byte) 0xFF) && (bom[1] == (byte) 0xFE))
-    {
-      encoding = "UTF-16LE";
-      unread = n - 2;
+      encoding = bomEncoding;
+      unread = n - getBomLength(bomEncoding);
     }
     else
     {
@@ -102,6 +83,50 @@ public class UnicodeInputStream extends InputStream
     isInited = true;
   }
 
+  /**
+   * @param bytes  First bytes of a stream
+   * @param length Number of bytes available, up to {@link #BOM_SIZE} are inspected
+   * @return Encoding indicated by a Unicode BOM, null if there is no BOM
+   */
+  public static String getBomEncoding(byte[] bytes, int length)
+  {
+    if (length >= 4 && (bytes[0] == (byte) 0x00) && (bytes[1] == (byte) 0x00) && (bytes[2] == (byte) 0xFE) && (bytes[3] == (byte) 0xFF))
+    {
+      return "UTF-32BE";
+    }
+    if (length >= 4 && (bytes[0] == (byte) 0xFF) && (bytes[1] == (byte) 0xFE) && (bytes[2] == (byte) 0x00) && (bytes[3] == (byte) 0x00))
+    {
+      return "UTF-32LE";
+    }
+    if (length >= 3 && (bytes[0] == (byte) 0xEF) && (bytes[1] == (byte) 0xBB) && (bytes[2] == (byte) 0xBF))
+    {
+      return "UTF-8";
+    }
+    if (length >= 2 && (bytes[0] == (byte) 0xFE) && (bytes[1] == (byte) 0xFF))
+    {
+      return "UTF-16BE";
+    }
+    if (length >= 2 && (bytes[0] == (byte) 0xFF) && (bytes[1] == (byte) 0xFE))
+    {
+      return "UTF-16LE";
+    }
+    return null;
+  }
+
+  /**
+   * @param bomEncoding Encoding returned by {@link #getBomEncoding(byte[], int)}
+   * @return Length of the BOM in bytes
+   */
+  public static int getBomLength(String bomEncoding)
+  {
+    return switch (bomEncoding)
+      {
+        case "UTF-32BE", "UTF-32LE" -> 4;
+        case "UTF-8" -> 3;
+        default -> 2;
+      };
+  }
+
   @Override
   public void close() throws IOException
   {
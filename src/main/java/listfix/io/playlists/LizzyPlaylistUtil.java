@@ -3,7 +3,10 @@ package listfix.io.playlists;
 import io.github.borewit.lizzy.playlist.*;
 import listfix.io.FileUtils;
 import listfix.io.filters.SpecificPlaylistFileFilter;
+import listfix.io.progress.ObservableInputStream;
+import listfix.view.support.IProgressObserver;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -19,7 +22,30 @@ public class LizzyPlaylistUtil
    * Playlist extensions
    */
   public static final Set<String> playlistExtensions;
+
+  /**
+   * Minimum size of M3U playlists streamed in chunks
+   */
+  public static final long STREAMING_MIN_SIZE = 1024 * 1024;
   private static final SpecificPlaylistFactory specificPlaylistFactory;
+  /**
+   * Formats often saved with the extension of another format, like a PLS playlist saved as .m3u,
+   * which are read in the detected format whatever the extension
+   */
+  private static final Set<String> MISNAMED_FORMATS = Set.of("m3u", "pls");
+
+  /**
+   * Receives the media of a playlist being read
+   */
+  public interface ISequenceConsumer
+  {
+    /**
+     * @param sequence  Media read
+     * @param keepMedia True if the media may hold more than their source, duration and {@link XmlMedia} metadata,
+     *                  to be saved again to keep it; false for M3U and streamed XML playlists
+     */
+    void accept(Sequence sequence, boolean keepMedia);
+  }
 
   static
   {
@@ -107,7 +133,170 @@ public class LizzyPlaylistUtil
 
   public static SpecificPlaylist readPlaylist(Path playlistPath) throws IOException
   {
-    return specificPlaylistFactory.readFrom(playlistPath);
+    return readPlaylist(playlistPath, null);
+  }
+
+  /**
+   * Read a playlist in a single pass: the provider is selected from the content,
+   * other providers are only tried if the selected provider fails to read the playlist.
+   *
+   * @param playlistPath Playlist file
+   * @param observer     Observer of the read progress, may be null
+   * @return Lizzy playlist
+   * @throws IOException If no provider can read the playlist
+   */
+  public static SpecificPlaylist readPlaylist(Path playlistPath, IProgressObserver<String> observer) throws IOException
+  {
+    return readPlaylist(playlistPath, observer, null);
+  }
+
+  /**
+   * Read a playlist in a single pass, passing its media to the consumer.
+   * M3U playlists of at least {@link #STREAMING_MIN_SIZE} bytes are streamed in chunks, see {@link M3uChunkedReader}.
+   * XSPF, WPL, ASX and iTunes XML playlists are streamed, see {@link XmlPlaylistReader}.
+   *
+   * @param playlistPath     Playlist file
+   * @param observer         Observer of the read progress, may be null
+   * @param sequenceConsumer Receives the media of the playlist, in one or more sequences, may be null
+   * @return Lizzy playlist; if streamed, only holding the media of the first chunk, or no media for XML playlists
+   * @throws IOException If no provider can read the playlist
+   */
+  public static SpecificPlaylist readPlaylist(Path playlistPath, IProgressObserver<String> observer, ISequenceConsumer sequenceConsumer) throws IOException
+  {
+    final List<SpecificPlaylistProvider> candidates = new ArrayList<>(specificPlaylistFactory.findProvidersByExtension(playlistPath.toString()));
+    Exception failure = null;
+    try (InputStream fileStream = Files.newInputStream(playlistPath))
+    {
+      final InputStream observedStream = observer == null ? fileStream : new ObservableInputStream(fileStream, Files.size(playlistPath), observer);
+      final BufferedInputStream inputStream = new BufferedInputStream(observedStream, PlaylistContentDetector.HEADER_SIZE);
+      final SpecificPlaylistProvider provider = selectProvider(candidates, PlaylistContentDetector.detectFormat(inputStream));
+      if (provider != null && sequenceConsumer != null && "m3u".equalsIgnoreCase(provider.getId()) && Files.size(playlistPath) >= STREAMING_MIN_SIZE)
+      {
+        try
+        {
+          final SpecificPlaylist specificPlaylist = M3uChunkedReader.read(inputStream, provider, sequence -> sequenceConsumer.accept(sequence, false));
+          if (specificPlaylist != null)
+          {
+            return specificPlaylist;
+          }
+        }
+        catch (Exception e)
+        {
+          // Part of the media may have been consumed already
+          throw new IOException(String.format("Failed to read from %s", playlistPath.getFileName()), e);
+        }
+      }
+      if (provider != null && sequenceConsumer != null && XmlPlaylistReader.isSupported(provider.getId()))
+      {
+        try
+        {
+          final Sequence sequence = XmlPlaylistReader.read(inputStream, provider.getId());
+          sequenceConsumer.accept(sequence, false);
+          // Identifies the format, the media have been consumed already
+          return provider.toSpecificPlaylist(new Playlist());
+        }
+        catch (Exception e)
+        {
+          // Not well-formed XML, which the more lenient Lizzy provider may still read
+          failure = e;
+          if (!candidates.contains(provider))
+          {
+            candidates.add(0, provider);
+          }
+        }
+      }
+      else if (provider != null)
+      {
+        try
+        {
+          final SpecificPlaylist specificPlaylist = provider.readFrom(inputStream);
+          if (specificPlaylist != null)
+          {
+            return consume(specificPlaylist, sequenceConsumer);
+          }
+        }
+        catch (Exception e)
+        {
+          failure = e;
+        }
+        candidates.remove(provider);
+      }
+    }
+
+    // Not the format the content looked like, try the other providers
+    if (candidates.isEmpty() && failure == null)
+    {
+      candidates.addAll(specificPlaylistFactory.getProviders());
+    }
+    for (SpecificPlaylistProvider provider : candidates)
+    {
+      try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(playlistPath)))
+      {
+        final SpecificPlaylist specificPlaylist = provider.readFrom(inputStream);
+        if (specificPlaylist != null)
+        {
+          return consume(specificPlaylist, sequenceConsumer);
+        }
+      }
+      catch (Exception e)
+      {
+        failure = e;
+      }
+    }
+    throw new IOException(String.format("Failed to read from %s", playlistPath.getFileName()), failure);
+  }
+
+  private static SpecificPlaylist consume(SpecificPlaylist specificPlaylist, ISequenceConsumer sequenceConsumer)
+  {
+    if (sequenceConsumer != null)
+    {
+      sequenceConsumer.accept(specificPlaylist.toPlaylist().getRootSequence(), keepsMedia(specificPlaylist));
+    }
+    return specificPlaylist;
+  }
+
+  /**
+   * @return True if the media of the playlist may hold more than their source and duration, to be saved again to keep it
+   */
+  public static boolean keepsMedia(SpecificPlaylist specificPlaylist)
+  {
+    // The M3U media only hold their source and duration
+    return !"m3u".equalsIgnoreCase(specificPlaylist.getProvider().getId());
+  }
+
+  /**
+   * The detected format only selects among the candidates, as formats sharing a root element,
+   * like a WPL playlist without its processing instruction detected as SMIL, are told apart by their extension.
+   *
+   * @param candidates Providers matching the file extension, in order of preference
+   * @param formatId   Format detected from the content, may be null
+   * @return Provider of the detected format if a candidate, a {@link #MISNAMED_FORMATS misnamed format} or if no candidate;
+   * or else the first candidate
+   */
+  private static SpecificPlaylistProvider selectProvider(List<SpecificPlaylistProvider> candidates, String formatId)
+  {
+    if (formatId != null)
+    {
+      for (SpecificPlaylistProvider provider : candidates)
+      {
+        if (formatId.equalsIgnoreCase(provider.getId()))
+        {
+          return provider;
+        }
+      }
+    }
+    if (formatId != null && (candidates.isEmpty() || MISNAMED_FORMATS.contains(formatId)))
+    {
+      // The content does not match the extension
+      for (SpecificPlaylistProvider provider : specificPlaylistFactory.getProviders())
+      {
+        if (formatId.equalsIgnoreCase(provider.getId()))
+        {
+          return provider;
+        }
+      }
+    }
+    return candidates.isEmpty() ? null : candidates.get(0);
   }
 
   public static SpecificPlaylist writeNewPlaylist(Playlist playlist, Path path, PlaylistFormat playlistFormat, OpenOption... options) throws IOException
@@ -0,0 +1,148 @@
+package listfix.io.playlists;
+
+import io.github.borewit.lizzy.playlist.Sequence;
+import io.github.borewit.lizzy.playlist.SpecificPlaylist;
+import io.github.borewit.lizzy.playlist.SpecificPlaylistProvider;
+import listfix.io.UnicodeInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Streams a large M3U or M3U8 playlist in chunks of {@link #CHUNK_RESOURCES} resources, instead of building the Lizzy object model
+ * of the whole playlist at once. Each chunk is parsed by the Lizzy M3U provider, prefixed with the BOM and the #EXTM3U header of the playlist,
+ * so the media, and a playlist written from these, are identical to reading the playlist at once.
+ * Playlists encoded in UTF-16 or UTF-32 are not streamed, as their lines cannot be split on bytes.
+ */
+public final class M3uChunkedReader
+{
+  static final int CHUNK_RESOURCES = 1000;
+
+  private static final byte[] EXTM3U = "#EXTM3U".getBytes(StandardCharsets.US_ASCII);
+
+  private final SpecificPlaylistProvider provider;
+  private final Consumer<Sequence> sequenceConsumer;
+  private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(64 * 1024);
+  private byte[] prefix;
+  private SpecificPlaylist firstChunkPlaylist;
+
+  private M3uChunkedReader(SpecificPlaylistProvider provider, Consumer<Sequence> sequenceConsumer)
+  {
+    this.provider = provider;
+    this.sequenceConsumer = sequenceConsumer;
+  }
+
+  /**
+   * @param inputStream      Stream positioned at the start of the playlist; not consumed if the playlist cannot be streamed
+   * @param provider         Lizzy M3U provider
+   * @param sequenceConsumer Receives the media of each chunk, in playlist order
+   * @return Playlist of the first chunk, identifying the format; null if the playlist cannot be streamed
+   */
+  public static SpecificPlaylist read(BufferedInputStream inputStream, SpecificPlaylistProvider provider, Consumer<Sequence> sequenceConsumer) throws Exception
+  {
+    final M3uChunkedReader reader = new M3uChunkedReader(provider, sequenceConsumer);
+    return reader.readHeader(inputStream) ? reader.readChunks(inputStream) : null;
+  }
+
+  /**
+   * Determine the prefix of every chunk: the BOM, and the first line if it is the #EXTM3U header
+   *
+   * @return False if the playlist cannot be streamed
+   */
+  private boolean readHeader(BufferedInputStream inputStream) throws IOException
+  {
+    inputStream.mark(PlaylistContentDetector.HEADER_SIZE);
+    final byte[] header = inputStream.readNBytes(PlaylistContentDetector.HEADER_SIZE);
+    inputStream.reset();
+
+    final String bomEncoding = UnicodeInputStream.getBomEncoding(header, header.length);
+    if (bomEncoding != null && !bomEncoding.equals("UTF-8"))
+    {
+      return false;
+    }
+    final int bomLength = bomEncoding == null ? 0 : UnicodeInputStream.getBomLength(bomEncoding);
+    int prefixLength = bomLength;
+    if (header.length - bomLength >= EXTM3U.length && Arrays.equals(header, bomLength, bomLength + EXTM3U.length, EXTM3U, 0, EXTM3U.length))
+    {
+      int endOfLine = bomLength;
+      while (endOfLine < header.length && header[endOfLine] != '\n')
+      {
+        ++endOfLine;
+      }
+      if (endOfLine == header.length)
+      {
+        // Header line longer than inspected
+        return false;
+      }
+      prefixLength = endOfLine + 1;
+    }
+    this.prefix = Arrays.copyOf(header, prefixLength);
+    // The prefix is part of the first chunk
+    inputStream.skipNBytes(prefixLength);
+    this.chunk.write(this.prefix);
+    return true;
+  }
+
+  private SpecificPlaylist readChunks(InputStream inputStream) throws Exception
+  {
+    final byte[] buffer = new byte[64 * 1024];
+    int resources = 0;
+    boolean lineStarted = false;
+    boolean isResourceLine = false;
+    int read;
+    while ((read = inputStream.read(buffer)) > 0)
+    {
+      int chunkStart = 0;
+      for (int i = 0; i < read; ++i)
+      {
+        final byte b = buffer[i];
+        if (b == '\n')
+        {
+          if (isResourceLine && ++resources == CHUNK_RESOURCES)
+          {
+            // Split after a resource line, no state is carried over to the next line
+            this.chunk.write(buffer, chunkStart, i + 1 - chunkStart);
+            chunkStart = i + 1;
+            this.flush();
+            resources = 0;
+          }
+          lineStarted = false;
+          isResourceLine = false;
+        }
+        else if (!lineStarted && b != ' ' && b != '\t' && b != '\r')
+        {
+          lineStarted = true;
+          isResourceLine = b != '#';
+        }
+      }
+      this.chunk.write(buffer, chunkStart, read - chunkStart);
+    }
+    if (resources > 0 || isResourceLine || this.firstChunkPlaylist == null)
+    {
+      this.flush();
+    }
+    return this.firstChunkPlaylist;
+  }
+
+  private void flush() throws Exception
+  {
+    final SpecificPlaylist specificPlaylist = this.provider.readFrom(new ByteArrayInputStream(this.chunk.toByteArray()));
+    if (specificPlaylist == null)
+    {
+      throw new IOException("Failed to read M3U playlist chunk");
+    }
+    if (this.firstChunkPlaylist == null)
+    {
+      this.firstChunkPlaylist = specificPlaylist;
+    }
+    this.sequenceConsumer.accept(specificPlaylist.toPlaylist().getRootSequence());
+    this.chunk.reset();
+    this.chunk.write(this.prefix);
+  }
+}
@@ -0,0 +1,152 @@
+package listfix.io.playlists;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Detects the playlist format from the first bytes of a playlist, so a single provider can parse the playlist in one pass.
+ * Formats sharing a root element are not told apart, like WPL from SMIL without its processing instruction;
+ * the detected format is a hint, checked against the file extension.
+ */
+public final class PlaylistContentDetector
+{
+  /**
+   * Number of bytes inspected
+   */
+  public static final int HEADER_SIZE = 4096;
+
+  /**
+   * Format IDs by lower case XML root element name; "smil" is also the root element of WPL playlists
+   */
+  private static final Map<String, String> XML_ROOT_ELEMENTS = Map.of(
+    "asx", "asx",
+    "smil", "smil",
+    "playlist", "xspf",
+    "winampxml", "b4s",
+    "package", "rmp",
+    "plist", "plist",
+    "hypetape", "hypetape");
+
+  private PlaylistContentDetector()
+  {
+  }
+
+  /**
+   * Detect the format, without consuming the stream
+   *
+   * @param inputStream Stream positioned at the start of the playlist
+   * @return Lizzy playlist format ID, like "m3u", null if not recognized
+   */
+  public static String detectFormat(BufferedInputStream inputStream) throws IOException
+  {
+    inputStream.mark(HEADER_SIZE);
+    final byte[] header = inputStream.readNBytes(HEADER_SIZE);
+    inputStream.reset();
+    return detectFormat(header, header.length);
+  }
+
+  /**
+   * @param header First bytes of a playlist
+   * @param length Number of bytes in the header
+   * @return Lizzy playlist format ID, like "m3u", null if not recognized
+   */
+  public static String detectFormat(byte[] header, int length)
+  {
+    final String text = decode(header, length).stripLeading();
+    if (text.regionMatches(true, 0, "[playlist]", 0, 10))
+    {
+      return "pls";
+    }
+    if (text.startsWith("#EXTM3U"))
+    {
+      return "m3u";
+    }
+    if (text.startsWith("MPCPLAYLIST"))
+    {
+      return "mpcpl";
+    }
+    if (text.startsWith("<"))
+    {
+      return detectXmlFormat(text);
+    }
+    return null;
+  }
+
+  private static String decode(byte[] header, int length)
+  {
+    if (length >= 3 && (header[0] & 0xFF) == 0xEF && (header[1] & 0xFF) == 0xBB && (header[2] & 0xFF) == 0xBF)
+    {
+      return new String(header, 3, length - 3, StandardCharsets.UTF_8);
+    }
+    if (length >= 2 && (header[0] & 0xFF) == 0xFE && (header[1] & 0xFF) == 0xFF)
+    {
+      return new String(header, 2, length - 2, StandardCharsets.UTF_16BE);
+    }
+    if (length >= 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xFE)
+    {
+      return new String(header, 2, length - 2, StandardCharsets.UTF_16LE);
+    }
+    // Only the ASCII markers matter
+    return new String(header, 0, length, StandardCharsets.ISO_8859_1);
+  }
+
+  private static String detectXmlFormat(String text)
+  {
+    int position = 0;
+    while ((position = text.indexOf('<', position)) >= 0 && position + 1 < text.length())
+    {
+      final char next = text.charAt(position + 1);
+      if (next == '?')
+      {
+        // Processing instruction; Windows Media playlists start with <?wpl version="1.0"?>
+        if (text.regionMatches(true, position + 2, "wpl", 0, 3))
+        {
+          return "wpl";
+        }
+        position = skipTo(text, position, "?>");
+      }
+      else if (text.startsWith("<!--", position))
+      {
+        position = skipTo(text, position, "-->");
+      }
+      else if (next == '!')
+      {
+        position = skipTo(text, position, ">");
+      }
+      else
+      {
+        int end = position + 1;
+        while (end < text.length() && isNameChar(text.charAt(end)))
+        {
+          ++end;
+        }
+        String name = text.substring(position + 1, end).toLowerCase(Locale.ROOT);
+        final int prefix = name.indexOf(':');
+        if (prefix >= 0)
+        {
+          name = name.substring(prefix + 1);
+        }
+        return XML_ROOT_ELEMENTS.get(name);
+      }
+      if (position < 0)
+      {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  private static int skipTo(String text, int position, String terminator)
+  {
+    final int end = text.indexOf(terminator, position);
+    return end < 0 ? -1 : end + terminator.length();
+  }
+
+  private static boolean isNameChar(char c)
+  {
+    return Character.isLetterOrDigit(c) || c == ':' || c == '_' || c == '-' || c == '.';
+  }
+}
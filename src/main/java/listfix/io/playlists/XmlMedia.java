@@ -0,0 +1,23 @@
+package listfix.io.playlists;
+
+import io.github.borewit.lizzy.content.Content;
+import io.github.borewit.lizzy.playlist.Media;
+
+/**
+ * Media of an XML playlist entry, with the metadata the Lizzy media does not hold
+ */
+public class XmlMedia extends Media
+{
+  private final XmlTrackMetadata metadata;
+
+  public XmlMedia(Content source, XmlTrackMetadata metadata)
+  {
+    super(source);
+    this.metadata = metadata;
+  }
+
+  public XmlTrackMetadata getMetadata()
+  {
+    return this.metadata;
+  }
+}
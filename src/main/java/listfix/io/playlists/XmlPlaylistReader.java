@@ -0,0 +1,572 @@
+package listfix.io.playlists;
+
+import io.github.borewit.lizzy.content.Content;
+import io.github.borewit.lizzy.playlist.Media;
+import io.github.borewit.lizzy.playlist.Playlist;
+import io.github.borewit.lizzy.playlist.Sequence;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming StAX reader of the XML playlist formats XSPF, WPL, ASX and iTunes XML (plist).
+ * Memory is proportional to the number of entries, not to the document.
+ * The metadata of an entry, like its title, is kept in its {@link XmlMedia}, to be written back by {@link XmlPlaylistWriter}.
+ */
+public final class XmlPlaylistReader
+{
+  /**
+   * Lizzy provider IDs of the supported formats
+   */
+  public static final Set<String> FORMAT_IDS = Set.of("xspf", "wpl", "asx", "plist");
+
+  private static final XMLInputFactory inputFactory = createInputFactory();
+
+  private final XMLStreamReader reader;
+  private final String formatId;
+  private final Sequence sequence = new Playlist().getRootSequence();
+
+  private XmlPlaylistReader(XMLStreamReader reader, String formatId)
+  {
+    this.reader = reader;
+    this.formatId = formatId;
+  }
+
+  private static XMLInputFactory createInputFactory()
+  {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    // Playlists have no business resolving entities
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
+  }
+
+  /**
+   * @param formatId Lizzy provider ID
+   * @return True if the format can be read by this reader
+   */
+  public static boolean isSupported(String formatId)
+  {
+    return formatId != null && FORMAT_IDS.contains(formatId.toLowerCase());
+  }
+
+  /**
+   * Read the media of a playlist; nothing is returned if the document is not well-formed.
+   *
+   * @param inputStream Playlist content
+   * @param formatId    Lizzy provider ID of a supported format
+   * @return Media of the playlist, in playlist order; {@link XmlMedia} for entries with metadata
+   * @throws XMLStreamException If the document is not well-formed
+   */
+  public static Sequence read(InputStream inputStream, String formatId) throws XMLStreamException
+  {
+    final XMLStreamReader streamReader = inputFactory.createXMLStreamReader(inputStream);
+    try
+    {
+      final XmlPlaylistReader playlistReader = new XmlPlaylistReader(streamReader, formatId.toLowerCase());
+      switch (playlistReader.formatId)
+      {
+        case "xspf" -> playlistReader.readXspf();
+        case "wpl" -> playlistReader.readWpl();
+        case "asx" -> playlistReader.readAsx();
+        case "plist" -> playlistReader.readPlist();
+        default -> throw new IllegalArgumentException("Unsupported XML playlist format " + formatId);
+      }
+      return playlistReader.sequence;
+    }
+    finally
+    {
+      streamReader.close();
+    }
+  }
+
+  /**
+   * Entry being read
+   */
+  private final class Track
+  {
+    private String location;
+    private final List<String> attributes = new ArrayList<>();
+    private final List<XmlTrackMetadata.Element> elements = new ArrayList<>();
+    private String title;
+    private Long duration;
+
+    /**
+     * @return Media of the entry, null if it has no location
+     */
+    private Media toMedia()
+    {
+      if (this.location == null || this.location.isBlank())
+      {
+        return null;
+      }
+      final Content content = new Content(this.location.trim());
+      final Media media = this.attributes.isEmpty() && this.elements.isEmpty() ? new Media(content) :
+        new XmlMedia(content, new XmlTrackMetadata(formatId, this.attributes.toArray(new String[0]), this.elements, this.title));
+      if (this.duration != null)
+      {
+        media.setDuration(this.duration);
+      }
+      return media;
+    }
+  }
+
+  private void add(Media media)
+  {
+    if (media != null)
+    {
+      this.sequence.addComponent(media);
+    }
+  }
+
+  /**
+   * XSPF: the first location of each track, a URI
+   */
+  private void readXspf() throws XMLStreamException
+  {
+    Track track = null;
+    while (this.reader.hasNext())
+    {
+      final int event = this.reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT)
+      {
+        if (track == null)
+        {
+          if (this.reader.getLocalName().equals("track"))
+          {
+            track = new Track();
+          }
+          continue;
+        }
+        final XmlTrackMetadata.Element element = this.readElement();
+        if (element == null)
+        {
+          continue;
+        }
+        if (track.location == null && element.getName().equals("location"))
+        {
+          track.location = fromUri(element.getText());
+          continue;
+        }
+        track.elements.add(element);
+        switch (element.getName())
+        {
+          case "title" -> track.title = element.getText();
+          case "duration" -> track.duration = parseMillis(element.getText());
+        }
+      }
+      else if (event == XMLStreamConstants.END_ELEMENT && track != null)
+      {
+        // The children of the track are read by readElement()
+        this.add(track.toMedia());
+        track = null;
+      }
+    }
+  }
+
+  /**
+   * WPL: the source of each media element
+   */
+  private void readWpl() throws XMLStreamException
+  {
+    while (this.reader.hasNext())
+    {
+      if (this.reader.next() == XMLStreamConstants.START_ELEMENT && this.reader.getLocalName().equals("media"))
+      {
+        final Track track = new Track();
+        for (int i = 0; i < this.reader.getAttributeCount(); ++i)
+        {
+          final String name = this.reader.getAttributeLocalName(i);
+          final String value = this.reader.getAttributeValue(i);
+          if (name.equalsIgnoreCase("src"))
+          {
+            track.location = value;
+            continue;
+          }
+          track.attributes.add(name);
+          track.attributes.add(value);
+          if (name.equalsIgnoreCase("trackTitle"))
+          {
+            track.title = value;
+          }
+        }
+        this.add(track.toMedia());
+      }
+    }
+  }
+
+  /**
+   * ASX: the first reference of each entry; element and attribute names are case-insensitive
+   */
+  private void readAsx() throws XMLStreamException
+  {
+    Track track = null;
+    while (this.reader.hasNext())
+    {
+      final int event = this.reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT)
+      {
+        if (track == null)
+        {
+          if (this.reader.getLocalName().equalsIgnoreCase("entry"))
+          {
+            track = new Track();
+            track.attributes.addAll(List.of(this.readAttributes()));
+          }
+          continue;
+        }
+        final XmlTrackMetadata.Element element = this.readElement();
+        if (element == null)
+        {
+          continue;
+        }
+        final String name = element.getName().toLowerCase();
+        if (track.location == null && name.equals("ref"))
+        {
+          track.location = element.getAttribute("href");
+          continue;
+        }
+        track.elements.add(element);
+        switch (name)
+        {
+          case "title" -> track.title = element.getText().trim();
+          case "duration" -> track.duration = parseClockValue(element.getAttribute("value"));
+        }
+      }
+      else if (event == XMLStreamConstants.END_ELEMENT && track != null)
+      {
+        this.add(track.toMedia());
+        track = null;
+      }
+    }
+  }
+
+  /**
+   * @return Attributes of the current element, as name, value pairs
+   */
+  private String[] readAttributes()
+  {
+    final String[] attributes = new String[this.reader.getAttributeCount() * 2];
+    for (int i = 0; i < this.reader.getAttributeCount(); ++i)
+    {
+      attributes[2 * i] = this.reader.getAttributeLocalName(i);
+      attributes[2 * i + 1] = this.reader.getAttributeValue(i);
+    }
+    return attributes;
+  }
+
+  /**
+   * Read the current element, positioned at its start, up to its end
+   *
+   * @return The element, null if it has child elements
+   */
+  private XmlTrackMetadata.Element readElement() throws XMLStreamException
+  {
+    final String name = this.reader.getLocalName();
+    final String[] attributes = this.readAttributes();
+    final StringBuilder text = new StringBuilder();
+    boolean hasChildren = false;
+    int event;
+    while ((event = this.reader.next()) != XMLStreamConstants.END_ELEMENT)
+    {
+      if (event == XMLStreamConstants.START_ELEMENT)
+      {
+        hasChildren = true;
+        this.skipElement();
+      }
+      else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)
+      {
+        text.append(this.reader.getText());
+      }
+    }
+    return hasChildren ? null : new XmlTrackMetadata.Element(name, attributes, text.toString());
+  }
+
+  /**
+   * iTunes XML: the locations of the "Tracks" dictionary, in the order of the "Playlist Items" of the first playlist.
+   * Without playlist items, the tracks in dictionary order.
+   */
+  private void readPlist() throws XMLStreamException
+  {
+    // Advance to the top level dictionary
+    do
+    {
+      if (!this.reader.hasNext())
+      {
+        return;
+      }
+    }
+    while (!(this.reader.next() == XMLStreamConstants.START_ELEMENT && this.reader.getLocalName().equals("dict")));
+    final Map<String, Media> tracks = new LinkedHashMap<>();
+    boolean hasPlaylist = false;
+    String key;
+    while ((key = this.nextKey()) != null)
+    {
+      if (key.equals("Tracks") && this.nextValue("dict"))
+      {
+        String trackId;
+        while ((trackId = this.nextKey()) != null)
+        {
+          if (this.nextValue("dict"))
+          {
+            final Media media = this.readTrack();
+            if (media != null)
+            {
+              tracks.put(trackId, media);
+            }
+          }
+        }
+      }
+      else if (key.equals("Playlists") && this.nextValue("array"))
+      {
+        while (this.nextArrayValue("dict"))
+        {
+          if (hasPlaylist)
+          {
+            this.skipElement();
+            continue;
+          }
+          hasPlaylist = this.readPlaylistItems(tracks);
+        }
+      }
+      else
+      {
+        this.skipValue();
+      }
+    }
+    if (!hasPlaylist)
+    {
+      tracks.values().forEach(this::add);
+    }
+  }
+
+  /**
+   * Read a track dictionary, positioned at its start; its track ID is not kept, the writer numbers the tracks
+   *
+   * @return Media of the track, null if it has no location
+   */
+  private Media readTrack() throws XMLStreamException
+  {
+    final Track track = new Track();
+    String key;
+    while ((key = this.nextKey()) != null)
+    {
+      if (key.equals("Location") && this.nextValue("string"))
+      {
+        track.location = fromUri(this.reader.getElementText());
+      }
+      else if (key.equals("Track ID"))
+      {
+        this.skipValue();
+      }
+      else
+      {
+        this.reader.nextTag();
+        final XmlTrackMetadata.Element value = this.readElement();
+        if (value != null)
+        {
+          track.elements.add(new XmlTrackMetadata.Element("key", new String[0], key));
+          track.elements.add(value);
+          if (key.equals("Name"))
+          {
+            track.title = value.getText();
+          }
+          else if (key.equals("Total Time"))
+          {
+            track.duration = parseMillis(value.getText());
+          }
+        }
+      }
+    }
+    return track.toMedia();
+  }
+
+  /**
+   * @return True if the playlist dictionary has playlist items
+   */
+  private boolean readPlaylistItems(Map<String, Media> tracks) throws XMLStreamException
+  {
+    boolean hasItems = false;
+    String key;
+    while ((key = this.nextKey()) != null)
+    {
+      if (key.equals("Playlist Items") && this.nextValue("array"))
+      {
+        hasItems = true;
+        while (this.nextArrayValue("dict"))
+        {
+          String itemKey;
+          while ((itemKey = this.nextKey()) != null)
+          {
+            if (itemKey.equals("Track ID") && this.nextValue("integer"))
+            {
+              this.add(tracks.get(this.reader.getElementText().trim()));
+            }
+            else
+            {
+              this.skipValue();
+            }
+          }
+        }
+      }
+      else
+      {
+        this.skipValue();
+      }
+    }
+    return hasItems;
+  }
+
+  /**
+   * @return Next key of the current dictionary, null at the end of the dictionary
+   */
+  private String nextKey() throws XMLStreamException
+  {
+    if (this.reader.nextTag() == XMLStreamConstants.START_ELEMENT && this.reader.getLocalName().equals("key"))
+    {
+      return this.reader.getElementText();
+    }
+    return null;
+  }
+
+  /**
+   * Move to the value following a key
+   *
+   * @return True if the value is the expected element; otherwise the value is skipped
+   */
+  private boolean nextValue(String element) throws XMLStreamException
+  {
+    this.reader.nextTag();
+    if (this.reader.getLocalName().equals(element))
+    {
+      return true;
+    }
+    this.skipElement();
+    return false;
+  }
+
+  /**
+   * @return True if positioned at the next element of the current array, false at the end of the array
+   */
+  private boolean nextArrayValue(String element) throws XMLStreamException
+  {
+    while (this.reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+    {
+      if (this.reader.getLocalName().equals(element))
+      {
+        return true;
+      }
+      this.skipElement();
+    }
+    return false;
+  }
+
+  private void skipValue() throws XMLStreamException
+  {
+    this.reader.nextTag();
+    this.skipElement();
+  }
+
+  /**
+   * Skip the current element, positioned at its start, including empty elements like &lt;true/&gt;
+   */
+  private void skipElement() throws XMLStreamException
+  {
+    int depth = 1;
+    while (depth > 0)
+    {
+      final int event = this.reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT)
+      {
+        ++depth;
+      }
+      else if (event == XMLStreamConstants.END_ELEMENT)
+      {
+        --depth;
+      }
+    }
+  }
+
+  /**
+   * @return Milliseconds, null if not a number
+   */
+  static Long parseMillis(String text)
+  {
+    try
+    {
+      return Long.parseLong(text.trim());
+    }
+    catch (NumberFormatException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * @param value ASX duration, like 01:02:03.5, 02:03 or 3.5
+   * @return Milliseconds, null if not a duration
+   */
+  static Long parseClockValue(String value)
+  {
+    if (value == null)
+    {
+      return null;
+    }
+    try
+    {
+      double seconds = 0;
+      for (String part : value.trim().split(":", 3))
+      {
+        seconds = seconds * 60 + Double.parseDouble(part);
+      }
+      return Math.round(seconds * 1000);
+    }
+    catch (NumberFormatException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * @param location URI of an XSPF or iTunes entry
+   * @return File path for file URIs and relative URIs, the location itself for other URIs
+   */
+  static String fromUri(String location)
+  {
+    if (location == null)
+    {
+      return null;
+    }
+    final String trimmed = location.trim();
+    try
+    {
+      if (trimmed.regionMatches(true, 0, "file:", 0, 5))
+      {
+        // iTunes writes file://localhost/path
+        final String uri = trimmed.regionMatches(true, 5, "//localhost/", 0, 12) ? "file:///" + trimmed.substring(17) : trimmed;
+        return Path.of(URI.create(uri)).toString();
+      }
+      final URI uri = URI.create(trimmed);
+      if (uri.getScheme() == null && uri.getPath() != null)
+      {
+        return uri.getPath();
+      }
+    }
+    catch (IllegalArgumentException e)
+    {
+      // Not a valid URI, like an unescaped path
+    }
+    return trimmed;
+  }
+}
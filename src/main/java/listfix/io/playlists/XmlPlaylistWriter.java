@@ -0,0 +1,414 @@
+package listfix.io.playlists;
+
+import io.github.borewit.lizzy.playlist.Media;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Streaming StAX writer of the XML playlist formats XSPF, WPL, ASX and iTunes XML (plist), counterpart of {@link XmlPlaylistReader}.
+ * Entries are written as they are visited, without building a document.
+ * The metadata of an {@link XmlMedia} is written back when saving in the format it was read from;
+ * otherwise only the title and duration of an entry are written, where the format has them.
+ */
+public final class XmlPlaylistWriter
+{
+  private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+  private final XMLStreamWriter writer;
+  private final String formatId;
+
+  private XmlPlaylistWriter(XMLStreamWriter writer, String formatId)
+  {
+    this.writer = writer;
+    this.formatId = formatId;
+  }
+
+  /**
+   * @param formatId Lizzy provider ID
+   * @return True if the format can be written by this writer
+   */
+  public static boolean isSupported(String formatId)
+  {
+    return XmlPlaylistReader.isSupported(formatId);
+  }
+
+  /**
+   * Write a playlist, does not close the output stream
+   *
+   * @param outputStream Stream to write to
+   * @param formatId     Lizzy provider ID of a supported format
+   * @param title        Title of the playlist
+   * @param media        Entries, their source a file path or a URI like https://...
+   */
+  public static void write(OutputStream outputStream, String formatId, String title, List<? extends Media> media) throws IOException
+  {
+    final BufferedOutputStream bufferedStream = new BufferedOutputStream(outputStream, 64 * 1024);
+    try
+    {
+      final XMLStreamWriter streamWriter = outputFactory.createXMLStreamWriter(bufferedStream, "UTF-8");
+      final XmlPlaylistWriter playlistWriter = new XmlPlaylistWriter(streamWriter, formatId.toLowerCase());
+      switch (playlistWriter.formatId)
+      {
+        case "xspf" -> playlistWriter.writeXspf(title, media);
+        case "wpl" -> playlistWriter.writeWpl(title, media);
+        case "asx" -> playlistWriter.writeAsx(title, media);
+        case "plist" -> playlistWriter.writePlist(title, media);
+        default -> throw new IllegalArgumentException("Unsupported XML playlist format " + formatId);
+      }
+      streamWriter.writeCharacters("\n");
+      streamWriter.writeEndDocument();
+      streamWriter.close();
+    }
+    catch (XMLStreamException e)
+    {
+      throw new IOException("Failed to write XML playlist", e);
+    }
+    bufferedStream.flush();
+  }
+
+  /**
+   * @return Metadata of the media read from a playlist in the format written, null if none
+   */
+  private XmlTrackMetadata getOwnMetadata(Media media)
+  {
+    if (media instanceof XmlMedia)
+    {
+      final XmlTrackMetadata metadata = ((XmlMedia) media).getMetadata();
+      if (metadata.getFormatId().equals(this.formatId))
+      {
+        return metadata;
+      }
+    }
+    return null;
+  }
+
+  private static String getTitle(Media media)
+  {
+    return media instanceof XmlMedia ? ((XmlMedia) media).getMetadata().getTitle() : null;
+  }
+
+  private void writeXspf(String title, List<? extends Media> entries) throws XMLStreamException
+  {
+    this.writer.writeStartDocument("UTF-8", "1.0");
+    this.newLine(0);
+    this.writer.writeStartElement("playlist");
+    this.writer.writeAttribute("version", "1");
+    this.writer.writeDefaultNamespace("http://xspf.org/ns/0/");
+    this.writeTextElement(1, "title", title);
+    this.newLine(1);
+    this.writer.writeStartElement("trackList");
+    for (Media media : entries)
+    {
+      this.newLine(2);
+      this.writer.writeStartElement("track");
+      this.writeTextElement(3, "location", toUri(media.getSource().toString(), false));
+      final XmlTrackMetadata metadata = this.getOwnMetadata(media);
+      if (metadata != null)
+      {
+        this.writeElements(3, metadata.getElements());
+      }
+      else
+      {
+        this.writeOptionalElement(3, "title", getTitle(media));
+        this.writeOptionalElement(3, "duration", media.getDuration() == null ? null : media.getDuration().toString());
+      }
+      this.newLine(2);
+      this.writer.writeEndElement();
+    }
+    this.newLine(1);
+    this.writer.writeEndElement();
+    this.newLine(0);
+    this.writer.writeEndElement();
+  }
+
+  private void writeWpl(String title, List<? extends Media> entries) throws XMLStreamException
+  {
+    this.writer.writeProcessingInstruction("wpl", "version=\"1.0\"");
+    this.newLine(0);
+    this.writer.writeStartElement("smil");
+    this.newLine(1);
+    this.writer.writeStartElement("head");
+    this.newLine(2);
+    this.writer.writeEmptyElement("meta");
+    this.writer.writeAttribute("name", "Generator");
+    this.writer.writeAttribute("content", "listFix()");
+    this.writeTextElement(2, "title", title);
+    this.newLine(1);
+    this.writer.writeEndElement();
+    this.newLine(1);
+    this.writer.writeStartElement("body");
+    this.newLine(2);
+    this.writer.writeStartElement("seq");
+    for (Media media : entries)
+    {
+      this.newLine(3);
+      this.writer.writeEmptyElement("media");
+      this.writer.writeAttribute("src", media.getSource().toString());
+      final XmlTrackMetadata metadata = this.getOwnMetadata(media);
+      if (metadata != null)
+      {
+        this.writeAttributes(metadata.getAttributes());
+      }
+      else if (getTitle(media) != null)
+      {
+        this.writer.writeAttribute("trackTitle", getTitle(media));
+      }
+    }
+    this.newLine(2);
+    this.writer.writeEndElement();
+    this.newLine(1);
+    this.writer.writeEndElement();
+    this.newLine(0);
+    this.writer.writeEndElement();
+  }
+
+  private void writeAsx(String title, List<? extends Media> entries) throws XMLStreamException
+  {
+    this.writer.writeStartElement("asx");
+    this.writer.writeAttribute("version", "3.0");
+    this.writeTextElement(1, "title", title);
+    for (Media media : entries)
+    {
+      this.newLine(1);
+      this.writer.writeStartElement("entry");
+      final XmlTrackMetadata metadata = this.getOwnMetadata(media);
+      if (metadata != null)
+      {
+        this.writeAttributes(metadata.getAttributes());
+      }
+      this.newLine(2);
+      this.writer.writeEmptyElement("ref");
+      this.writer.writeAttribute("href", media.getSource().toString());
+      if (metadata != null)
+      {
+        this.writeElements(2, metadata.getElements());
+      }
+      else
+      {
+        this.writeOptionalElement(2, "title", getTitle(media));
+        if (media.getDuration() != null)
+        {
+          this.newLine(2);
+          this.writer.writeEmptyElement("duration");
+          this.writer.writeAttribute("value", toClockValue(media.getDuration()));
+        }
+      }
+      this.newLine(1);
+      this.writer.writeEndElement();
+    }
+    this.newLine(0);
+    this.writer.writeEndElement();
+  }
+
+  /**
+   * iTunes XML: the tracks, identified by their position, followed by a single playlist referencing these
+   */
+  private void writePlist(String title, List<? extends Media> entries) throws XMLStreamException
+  {
+    this.writer.writeStartDocument("UTF-8", "1.0");
+    this.newLine(0);
+    this.writer.writeDTD("<!DOCTYPE plist PUBLIC \"-//Apple Computer//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">");
+    this.newLine(0);
+    this.writer.writeStartElement("plist");
+    this.writer.writeAttribute("version", "1.0");
+    this.newLine(0);
+    this.writer.writeStartElement("dict");
+    this.writeKeyValue(1, "Major Version", "integer", "1");
+    this.writeKeyValue(1, "Minor Version", "integer", "1");
+    this.writeTextElement(1, "key", "Tracks");
+    this.newLine(1);
+    this.writer.writeStartElement("dict");
+    int trackId = 0;
+    for (Media media : entries)
+    {
+      ++trackId;
+      this.writeTextElement(2, "key", Integer.toString(trackId));
+      this.newLine(2);
+      this.writer.writeStartElement("dict");
+      this.writeKeyValue(3, "Track ID", "integer", Integer.toString(trackId));
+      final XmlTrackMetadata metadata = this.getOwnMetadata(media);
+      if (metadata != null)
+      {
+        this.writeElements(3, metadata.getElements());
+      }
+      else
+      {
+        if (getTitle(media) != null)
+        {
+          this.writeKeyValue(3, "Name", "string", getTitle(media));
+        }
+        if (media.getDuration() != null)
+        {
+          this.writeKeyValue(3, "Total Time", "integer", media.getDuration().toString());
+        }
+      }
+      this.writeKeyValue(3, "Location", "string", toUri(media.getSource().toString(), true));
+      this.newLine(2);
+      this.writer.writeEndElement();
+    }
+    this.newLine(1);
+    this.writer.writeEndElement();
+    this.writeTextElement(1, "key", "Playlists");
+    this.newLine(1);
+    this.writer.writeStartElement("array");
+    this.newLine(2);
+    this.writer.writeStartElement("dict");
+    this.writeKeyValue(3, "Name", "string", title);
+    this.writeTextElement(3, "key", "Playlist Items");
+    this.newLine(3);
+    this.writer.writeStartElement("array");
+    for (int i = 1; i <= trackId; ++i)
+    {
+      this.newLine(4);
+      this.writer.writeStartElement("dict");
+      this.writeKeyValue(5, "Track ID", "integer", Integer.toString(i));
+      this.newLine(4);
+      this.writer.writeEndElement();
+    }
+    this.newLine(3);
+    this.writer.writeEndElement();
+    this.newLine(2);
+    this.writer.writeEndElement();
+    this.newLine(1);
+    this.writer.writeEndElement();
+    this.newLine(0);
+    this.writer.writeEndElement();
+    this.newLine(0);
+    this.writer.writeEndElement();
+  }
+
+  private void writeKeyValue(int depth, String key, String type, String value) throws XMLStreamException
+  {
+    this.writeTextElement(depth, "key", key);
+    this.writeTextElement(depth, type, value);
+  }
+
+  private void writeOptionalElement(int depth, String name, String text) throws XMLStreamException
+  {
+    if (text != null)
+    {
+      this.writeTextElement(depth, name, text);
+    }
+  }
+
+  private void writeElements(int depth, List<XmlTrackMetadata.Element> elements) throws XMLStreamException
+  {
+    for (XmlTrackMetadata.Element element : elements)
+    {
+      this.newLine(depth);
+      if (element.getText().isEmpty())
+      {
+        this.writer.writeEmptyElement(element.getName());
+        this.writeAttributes(element.getAttributes());
+      }
+      else
+      {
+        this.writer.writeStartElement(element.getName());
+        this.writeAttributes(element.getAttributes());
+        this.writer.writeCharacters(element.getText());
+        this.writer.writeEndElement();
+      }
+    }
+  }
+
+  /**
+   * @param attributes Name, value pairs
+   */
+  private void writeAttributes(String[] attributes) throws XMLStreamException
+  {
+    for (int i = 0; i < attributes.length; i += 2)
+    {
+      this.writer.writeAttribute(attributes[i], attributes[i + 1]);
+    }
+  }
+
+  private void writeTextElement(int depth, String name, String text) throws XMLStreamException
+  {
+    this.newLine(depth);
+    this.writer.writeStartElement(name);
+    this.writer.writeCharacters(text == null ? "" : text);
+    this.writer.writeEndElement();
+  }
+
+  private void newLine(int depth) throws XMLStreamException
+  {
+    this.writer.writeCharacters("\n");
+    for (int i = 0; i < depth; ++i)
+    {
+      this.writer.writeCharacters("  ");
+    }
+  }
+
+  /**
+   * @param location File path or URI
+   * @param iTunes   Write absolute paths as file://localhost/..., as iTunes does
+   * @return URI of the location; relative paths as relative URIs
+   */
+  static String toUri(String location, boolean iTunes)
+  {
+    if (isUri(location))
+    {
+      return location;
+    }
+    try
+    {
+      final Path path = Path.of(location);
+      if (path.isAbsolute())
+      {
+        final URI uri = path.toUri();
+        return iTunes ? "file://localhost" + uri.getRawPath() : uri.toASCIIString();
+      }
+      String relative = location.replace('\\', '/');
+      if (relative.indexOf(':') >= 0 && (relative.indexOf('/') < 0 || relative.indexOf(':') < relative.indexOf('/')))
+      {
+        // Prevent the first segment from being taken as a scheme
+        relative = "./" + relative;
+      }
+      return new URI(null, null, relative, null).toASCIIString();
+    }
+    catch (InvalidPathException | URISyntaxException e)
+    {
+      return location;
+    }
+  }
+
+  /**
+   * @param millis Duration in milliseconds
+   * @return ASX duration, like 01:02:03.500
+   */
+  static String toClockValue(long millis)
+  {
+    return String.format("%02d:%02d:%02d.%03d", millis / 3600000, millis / 60000 % 60, millis / 1000 % 60, millis % 1000);
+  }
+
+  /**
+   * @return True for URIs with a scheme, like https://..., false for file paths, including Windows paths like C:\...
+   */
+  static boolean isUri(String location)
+  {
+    final int colon = location.indexOf(':');
+    if (colon < 2)
+    {
+      return false;
+    }
+    for (int i = 0; i < colon; ++i)
+    {
+      final char c = location.charAt(i);
+      if (!(Character.isLetterOrDigit(c) || c == '+' || c == '-' || c == '.'))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,105 @@
+package listfix.io.playlists;
+
+import java.util.List;
+
+/**
+ * Metadata of an entry of an XML playlist other than its location, like its title, duration or annotation.
+ * Kept as read, in the vocabulary of its format, so {@link XmlPlaylistWriter} writes it back when saving in the same format.
+ * Elements with child elements, like an XSPF extension, are not kept.
+ */
+public final class XmlTrackMetadata
+{
+  /**
+   * Element with text content only
+   */
+  public static final class Element
+  {
+    private final String name;
+    // Name, value pairs
+    private final String[] attributes;
+    private final String text;
+
+    Element(String name, String[] attributes, String text)
+    {
+      this.name = name;
+      this.attributes = attributes;
+      this.text = text;
+    }
+
+    public String getName()
+    {
+      return this.name;
+    }
+
+    /**
+     * @return Value of the attribute, the name compared ignoring case; null if absent
+     */
+    public String getAttribute(String attributeName)
+    {
+      for (int i = 0; i < this.attributes.length; i += 2)
+      {
+        if (this.attributes[i].equalsIgnoreCase(attributeName))
+        {
+          return this.attributes[i + 1];
+        }
+      }
+      return null;
+    }
+
+    String[] getAttributes()
+    {
+      return this.attributes;
+    }
+
+    public String getText()
+    {
+      return this.text;
+    }
+  }
+
+  private final String formatId;
+  // Name, value pairs, of the WPL media element
+  private final String[] attributes;
+  private final Element[] elements;
+  private final String title;
+
+  XmlTrackMetadata(String formatId, String[] attributes, List<Element> elements, String title)
+  {
+    this.formatId = formatId;
+    this.attributes = attributes;
+    this.elements = elements.toArray(new Element[0]);
+    this.title = title;
+  }
+
+  /**
+   * @return Lizzy provider ID of the format read
+   */
+  public String getFormatId()
+  {
+    return this.formatId;
+  }
+
+  /**
+   * @return Attributes of the entry element other than its location, as name, value pairs
+   */
+  String[] getAttributes()
+  {
+    return this.attributes;
+  }
+
+  /**
+   * @return Child elements of the entry other than its location, in document order; for iTunes XML the keys and values of the track
+   */
+  public List<Element> getElements()
+  {
+    return List.of(this.elements);
+  }
+
+  /**
+   * @return Title of the entry, null if it has none
+   */
+  public String getTitle()
+  {
+    return this.title;
+  }
+}
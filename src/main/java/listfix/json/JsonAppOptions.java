@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import listfix.config.IAppOptions;
 import listfix.config.IApplicationState;
 import listfix.io.Constants;
+import listfix.io.DirectoryScanner;
 import listfix.io.IPlaylistOptions;
 
 import javax.swing.*;
@@ -33,6 +34,11 @@ public class JsonAppOptions implements IPlaylistOptions, IAppOptions
   private int maxClosestResults = 20;
   private String ignoredSmallWords = "an, and, dsp, in, my, of, the, to";
   private boolean caseInsensitiveExactMatching = !Constants.FILE_SYSTEM_IS_CASE_SENSITIVE;
+  private boolean watchMediaLibrary = false;
+  private int mediaLibraryScanParallelism = DirectoryScanner.DEFAULT_PARALLELISM;
+  private int closestMatchParallelism = 0;
+  private boolean syncPlaylistsOnSave = false;
+  private boolean preservePlaylistAttributesOnSave = false;
 
   private final JsonApplicationState applicationState = new JsonApplicationState();
 
@@ -176,6 +182,91 @@ public class JsonAppOptions implements IPlaylistOptions, IAppOptions
     this.caseInsensitiveExactMatching = caseInsensitiveExactMatching;
   }
 
+  /**
+   * @return true if a saved playlist is forced to the storage device before it replaces the original file
+   */
+  @Override
+  public boolean getSyncPlaylistsOnSave()
+  {
+    return syncPlaylistsOnSave;
+  }
+
+  /**
+   * @param syncPlaylistsOnSave The syncPlaylistsOnSave to set
+   */
+  public void setSyncPlaylistsOnSave(boolean syncPlaylistsOnSave)
+  {
+    this.syncPlaylistsOnSave = syncPlaylistsOnSave;
+  }
+
+  /**
+   * @return true if a saved playlist keeps the timestamps of the file it replaces; its permissions are always kept
+   */
+  @Override
+  public boolean getPreservePlaylistAttributesOnSave()
+  {
+    return preservePlaylistAttributesOnSave;
+  }
+
+  /**
+   * @param preservePlaylistAttributesOnSave The preservePlaylistAttributesOnSave to set
+   */
+  public void setPreservePlaylistAttributesOnSave(boolean preservePlaylistAttributesOnSave)
+  {
+    this.preservePlaylistAttributesOnSave = preservePlaylistAttributesOnSave;
+  }
+
+  /**
+   * @return true if the media library is kept up to date by watching its directories
+   */
+  @Override
+  public boolean getWatchMediaLibrary()
+  {
+    return watchMediaLibrary;
+  }
+
+  /**
+   * @param watchMediaLibrary The watchMediaLibrary to set
+   */
+  public void setWatchMediaLibrary(boolean watchMediaLibrary)
+  {
+    this.watchMediaLibrary = watchMediaLibrary;
+  }
+
+  /**
+   * @return The number of directories listed concurrently per media directory, when scanning the media library
+   */
+  @Override
+  public int getMediaLibraryScanParallelism()
+  {
+    return mediaLibraryScanParallelism;
+  }
+
+  /**
+   * @param mediaLibraryScanParallelism The mediaLibraryScanParallelism to set
+   */
+  public void setMediaLibraryScanParallelism(int mediaLibraryScanParallelism)
+  {
+    this.mediaLibraryScanParallelism = mediaLibraryScanParallelism;
+  }
+
+  /**
+   * @return The number of playlist entries matched concurrently, when searching closest matches; 0 for the number of processors
+   */
+  @Override
+  public int getClosestMatchParallelism()
+  {
+    return closestMatchParallelism;
+  }
+
+  /**
+   * @param closestMatchParallelism The closestMatchParallelism to set
+   */
+  public void setClosestMatchParallelism(int closestMatchParallelism)
+  {
+    this.closestMatchParallelism = closestMatchParallelism;
+  }
+
   @Override
   public IApplicationState getApplicationState()
   {
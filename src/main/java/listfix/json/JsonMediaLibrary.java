@@ -1,41 +1,148 @@
 package listfix.json;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import listfix.config.IMediaLibrary;
+import listfix.config.IMediaLibraryFileIndex;
+import listfix.config.IPathSet;
+import listfix.config.MappedPathSet;
+import listfix.config.MediaLibraryFileIndex;
+import listfix.config.MediaLibraryStore;
+import listfix.config.PathTrie;
+import listfix.config.RepairMemory;
+import listfix.io.DirectoryState;
+import listfix.util.FileNameTokenIndex;
 
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.HashMap;
+import java.util.Map;
 
 public class JsonMediaLibrary implements IMediaLibrary
 {
 
-  private final TreeSet<String> directories;
-  private final TreeSet<String> nestedDirectories;
-  private final TreeSet<String> nestedMediaFiles;
+  private final IPathSet directories;
+  private final IPathSet nestedDirectories;
+  private final IPathSet nestedMediaFiles;
+  private IMediaLibraryFileIndex fileIndex;
+  private IMediaLibraryFileIndex storedFileIndex;
+  private FileNameTokenIndex tokenIndex;
+  private MediaLibraryStore store;
+  private Map<String, DirectoryState> directoryStates;
+  private RepairMemory repairMemory;
 
   public JsonMediaLibrary()
   {
-    this.directories = new TreeSet<>();
-    this.nestedDirectories = new TreeSet<>();
-    this.nestedMediaFiles = new TreeSet<>();
+    this.directories = new PathTrie();
+    this.nestedDirectories = new PathTrie();
+    this.nestedMediaFiles = new PathTrie();
+  }
+
+  /**
+   * Media library backed by a media library store.
+   * The filename index of the store is used as long as the nested media files are not modified.
+   *
+   * @param store Memory mapped media library store
+   */
+  public JsonMediaLibrary(MediaLibraryStore store)
+  {
+    this.directories = new MappedPathSet(store.getMediaDirectories());
+    this.nestedDirectories = new MappedPathSet(store.getNestedDirectories());
+    this.nestedMediaFiles = new MappedPathSet(store.getNestedMediaFiles());
+    this.storedFileIndex = store.getFileIndex();
+    this.store = store;
   }
 
   @Override
   @JsonProperty("directories")
-  public Set<String> getMediaDirectories()
+  @JsonDeserialize(as = PathTrie.class)
+  public IPathSet getMediaDirectories()
   {
     return this.directories;
   }
 
   @Override
-  public Set<String> getNestedDirectories()
+  @JsonDeserialize(as = PathTrie.class)
+  public IPathSet getNestedDirectories()
   {
     return this.nestedDirectories;
   }
 
   @Override
-  public Set<String> getNestedMediaFiles()
+  @JsonDeserialize(as = PathTrie.class)
+  public IPathSet getNestedMediaFiles()
   {
     return this.nestedMediaFiles;
   }
+
+  @Override
+  @JsonIgnore
+  public synchronized IMediaLibraryFileIndex getFileIndex()
+  {
+    if (this.fileIndex == null)
+    {
+      this.fileIndex = this.storedFileIndex != null ? this.storedFileIndex : new MediaLibraryFileIndex(this.nestedMediaFiles, this);
+    }
+    return this.fileIndex;
+  }
+
+  @Override
+  @JsonIgnore
+  public synchronized FileNameTokenIndex getFileNameTokenIndex()
+  {
+    if (this.tokenIndex == null)
+    {
+      this.tokenIndex = new FileNameTokenIndex(this.nestedMediaFiles);
+    }
+    return this.tokenIndex;
+  }
+
+  @Override
+  @JsonIgnore
+  public synchronized Map<String, DirectoryState> getDirectoryStates()
+  {
+    if (this.directoryStates == null)
+    {
+      this.directoryStates = this.store == null ? new HashMap<>() : this.store.readDirectoryStates();
+      this.store = null;
+    }
+    return this.directoryStates;
+  }
+
+  @Override
+  @JsonIgnore
+  public RepairMemory getRepairMemory()
+  {
+    return this.repairMemory;
+  }
+
+  @JsonIgnore
+  public void setRepairMemory(RepairMemory repairMemory)
+  {
+    this.repairMemory = repairMemory;
+  }
+
+  /**
+   * Remove a directory, including its subdirectories and media files, from the nested directories and files
+   *
+   * @param directory Directory to remove
+   */
+  public synchronized void removeDirectoryTree(String directory)
+  {
+    this.nestedDirectories.removeTree(directory);
+    this.nestedMediaFiles.removeTree(directory);
+    this.getDirectoryStates().keySet().removeIf(path -> PathTrie.isAncestorOrSelf(directory, path, false));
+  }
+
+  /**
+   * Discard the file and token indexes, to be called after the nested media files have been modified
+   */
+  public synchronized void invalidateFileIndex()
+  {
+    this.fileIndex = null;
+    this.tokenIndex = null;
+    if (this.nestedMediaFiles instanceof MappedPathSet && ((MappedPathSet) this.nestedMediaFiles).isMaterialized())
+    {
+      this.storedFileIndex = null;
+    }
+  }
 }
@@ -2,12 +2,15 @@ package listfix.model;
 
 import listfix.config.IMediaLibrary;
 import listfix.io.IPlaylistOptions;
+import listfix.model.playlists.ClosestMatchCache;
 import listfix.model.playlists.Playlist;
 import listfix.model.playlists.PlaylistFactory;
 import listfix.view.support.DualProgressAdapter;
 import listfix.view.support.IDualProgressObserver;
 import listfix.view.support.IProgressObserver;
 import listfix.view.support.ProgressAdapter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -27,6 +30,8 @@ import java.util.zip.ZipOutputStream;
  */
 public class BatchRepair
 {
+  private static final Logger _logger = LogManager.getLogger(BatchRepair.class);
+
   // The wrappers around the playlists to be repaired.
   private final List<BatchRepairItem> _items = new ArrayList<>();
 
@@ -117,9 +122,12 @@ public class BatchRepair
    */
   public void performClosestMatchRepair(IDualProgressObserver<String> observer, IPlaylistOptions filePathOptions)
   {
+    // Playlists in a batch often share missing entries, match each file name only once
+    final ClosestMatchCache cache = new ClosestMatchCache();
     this.performRepair(observer, filePathOptions, (item, list, progressObserver) -> {
-      item.setClosestMatches(list.findClosestMatches(this.mediaLibrary.getNestedMediaFiles(), progressObserver));
+      item.setClosestMatches(list.findClosestMatches(list.getEntries(), this.mediaLibrary.getFileNameTokenIndex(), cache, progressObserver));
     });
+    _logger.info(String.format("Closest match cache: %d hits, %d misses", cache.getHitCount(), cache.getMissCount()));
   }
 
   public void performRepair(IDualProgressObserver<String> observer, IPlaylistOptions filePathOptions, IRepairItem repairItem)
@@ -256,7 +264,7 @@ public class BatchRepair
     {
       if (isClosestMatchesSave)
       {
-        item.getPlaylist().applyClosestMatchSelections(item.getClosestMatches());
+        item.getPlaylist().applyClosestMatchSelections(item.getClosestMatches(), this.mediaLibrary.getRepairMemory());
       }
       item.getPlaylist().save(item.getPlaylist().getType(), null); // ToDo nest observer
     }
@@ -8,5 +8,10 @@ public enum PlaylistEntryStatus
 
   Missing,
 
-  Found
+  Found,
+
+  /**
+   * Existence not checked yet
+   */
+  Unknown
 }
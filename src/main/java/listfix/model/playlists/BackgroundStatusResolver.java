@@ -0,0 +1,176 @@
+package listfix.model.playlists;
+
+import listfix.io.DirectoryListingCache;
+import listfix.model.enums.PlaylistEntryStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Resolves the status of entries shown before their status was known, in the background.
+ * Entries requested by {@link #prioritize(FilePlaylistEntry)}, like the visible rows of a table, are resolved first,
+ * the most recently requested first; the remaining entries are resolved in playlist order.
+ * The checks are handed to the listener on the given executor, at most every {@link #NOTIFY_INTERVAL_MILLIS} and once when done,
+ * which publishes them to the entries, so the status of an entry changes together with the counters of the playlist.
+ */
+class BackgroundStatusResolver
+{
+  /**
+   * Number of concurrent existence checks, lower than for loading, leaving room for playlists being loaded
+   */
+  private static final int PARALLELISM = 8;
+  private static final int MAX_PRIORITY_REQUESTS = 1024;
+  private static final long NOTIFY_INTERVAL_MILLIS = 200;
+
+  private final List<FilePlaylistEntry> entries;
+  private final Executor notifier;
+  private final DirectoryListingCache existenceCache = new DirectoryListingCache();
+  private final BlockingDeque<FilePlaylistEntry> priority = new LinkedBlockingDeque<>(MAX_PRIORITY_REQUESTS);
+  private final AtomicInteger nextEntry = new AtomicInteger();
+  private final AtomicInteger activeWorkers = new AtomicInteger();
+  private final AtomicBoolean notifyPending = new AtomicBoolean();
+  private final Queue<FilePlaylistEntry.StatusCheck> checks = new ConcurrentLinkedQueue<>();
+  // Entries taken by a worker, their status is published later on the notifier
+  private final Set<FilePlaylistEntry> claimed = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+  private Consumer<List<FilePlaylistEntry.StatusCheck>> listener;
+  private volatile long lastNotified;
+  private volatile boolean cancelled;
+  private volatile boolean finished;
+
+  /**
+   * @param entries  Entries with an unknown status
+   * @param notifier Executor the listener is called on, like the event dispatch thread
+   */
+  BackgroundStatusResolver(List<FilePlaylistEntry> entries, Executor notifier)
+  {
+    this.entries = entries;
+    this.notifier = notifier;
+  }
+
+  /**
+   * @param listener Called on the notifier with the checks since the previous call, to publish by {@link FilePlaylistEntry.StatusCheck#publish()}
+   */
+  void start(Consumer<List<FilePlaylistEntry.StatusCheck>> listener)
+  {
+    this.listener = listener;
+    final int workerCount = Math.max(1, Math.min(PARALLELISM, this.entries.size()));
+    this.activeWorkers.set(workerCount);
+    for (int i = 0; i < workerCount; ++i)
+    {
+      EntryStatusResolver.getExecutor().execute(this::run);
+    }
+  }
+
+  /**
+   * Resolve the status of the entry before the entries not requested
+   */
+  void prioritize(FilePlaylistEntry entry)
+  {
+    while (!this.priority.offerFirst(entry))
+    {
+      // Forget the oldest request
+      this.priority.pollLast();
+    }
+  }
+
+  void cancel()
+  {
+    this.cancelled = true;
+  }
+
+  /**
+   * @return True if all entries have been checked and the last checks are being handed to the listener
+   */
+  boolean isDone()
+  {
+    return this.finished;
+  }
+
+  private void run()
+  {
+    try
+    {
+      FilePlaylistEntry entry;
+      while (!this.cancelled && (entry = this.next()) != null)
+      {
+        this.checks.add(entry.checkUnknownStatus(this.existenceCache));
+        this.statusResolved(false);
+      }
+    }
+    finally
+    {
+      if (this.activeWorkers.decrementAndGet() == 0)
+      {
+        this.statusResolved(true);
+      }
+    }
+  }
+
+  private FilePlaylistEntry next()
+  {
+    FilePlaylistEntry entry;
+    while ((entry = this.priority.pollFirst()) != null)
+    {
+      if (this.claim(entry))
+      {
+        return entry;
+      }
+    }
+    int index;
+    while ((index = this.nextEntry.getAndIncrement()) < this.entries.size())
+    {
+      entry = this.entries.get(index);
+      if (this.claim(entry))
+      {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return True if the entry is still unknown and not taken by a worker yet
+   */
+  private boolean claim(FilePlaylistEntry entry)
+  {
+    return entry.getStatus() == PlaylistEntryStatus.Unknown && this.claimed.add(entry);
+  }
+
+  private void statusResolved(boolean done)
+  {
+    final long now = System.currentTimeMillis();
+    if (!done && now - this.lastNotified < NOTIFY_INTERVAL_MILLIS)
+    {
+      return;
+    }
+    this.lastNotified = now;
+    if (done || this.notifyPending.compareAndSet(false, true))
+    {
+      this.notifier.execute(() -> {
+        this.notifyPending.set(false);
+        this.finished |= done;
+        final List<FilePlaylistEntry.StatusCheck> resolved = new ArrayList<>();
+        FilePlaylistEntry.StatusCheck check;
+        while ((check = this.checks.poll()) != null)
+        {
+          resolved.add(check);
+        }
+        if (!this.cancelled)
+        {
+          this.listener.accept(resolved);
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package listfix.model.playlists;
+
+import listfix.io.IPlaylistOptions;
+import listfix.util.FileNameTokenIndex;
+import listfix.util.FileNameTokenizer;
+import listfix.view.support.IProgressObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the closest matches of entry file names, so playlists sharing missing entries only have them matched once.
+ * Intended to be scoped to a single batch, matching with the same options. Thread-safe; concurrent lookups of the same
+ * file name wait for a single search. Bounded, evicting the oldest file names first.
+ */
+public class ClosestMatchCache
+{
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private final int maxSize;
+  private final ConcurrentHashMap<Key, CompletableFuture<List<PotentialPlaylistEntryMatch>>> matches = new ConcurrentHashMap<>();
+  private final Queue<Key> insertionOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger completedCount = new AtomicInteger();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public ClosestMatchCache()
+  {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * @param maxSize Maximum number of file names to remember
+   */
+  public ClosestMatchCache(int maxSize)
+  {
+    this.maxSize = Math.max(1, maxSize);
+  }
+
+  /**
+   * Same as {@link PlaylistEntry#findClosestMatches(FileNameTokenIndex, IProgressObserver, IPlaylistOptions)},
+   * only searching if the entry file name has not been matched against the same media library snapshot before.
+   *
+   * @return Best matches, a copy owned by the caller; null if cancelled
+   */
+  public List<PotentialPlaylistEntryMatch> findClosestMatches(PlaylistEntry entry, FileNameTokenIndex tokenIndex, IProgressObserver<String> observer, IPlaylistOptions playListOptions)
+  {
+    final Key key = new Key(tokenIndex.getVersion(), FileNameTokenizer.normalizeFileName(entry.getTrackFileName()));
+    final CompletableFuture<List<PotentialPlaylistEntryMatch>> search = new CompletableFuture<>();
+    final CompletableFuture<List<PotentialPlaylistEntryMatch>> cached = this.matches.putIfAbsent(key, search);
+    if (cached != null)
+    {
+      this.hits.incrementAndGet();
+      final List<PotentialPlaylistEntryMatch> result = cached.join();
+      return result == null ? null : new ArrayList<>(result);
+    }
+
+    this.misses.incrementAndGet();
+    final List<PotentialPlaylistEntryMatch> result;
+    try
+    {
+      result = entry.findClosestMatches(tokenIndex, observer, playListOptions);
+    }
+    catch (RuntimeException | Error e)
+    {
+      this.matches.remove(key, search);
+      search.completeExceptionally(e);
+      throw e;
+    }
+    if (result == null)
+    {
+      // Cancelled, the result is incomplete
+      this.matches.remove(key, search);
+      search.complete(null);
+      return null;
+    }
+    search.complete(result);
+    this.insertionOrder.add(key);
+    this.completedCount.incrementAndGet();
+    this.evict();
+    return new ArrayList<>(result);
+  }
+
+  private synchronized void evict()
+  {
+    // Only completed searches count, searches in progress cannot be evicted yet
+    while (this.completedCount.get() > this.maxSize)
+    {
+      final Key eldest = this.insertionOrder.poll();
+      if (eldest == null)
+      {
+        return;
+      }
+      this.matches.remove(eldest);
+      this.completedCount.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return Number of lookups answered from the cache
+   */
+  public long getHitCount()
+  {
+    return this.hits.get();
+  }
+
+  /**
+   * @return Number of lookups requiring a search
+   */
+  public long getMissCount()
+  {
+    return this.misses.get();
+  }
+
+  /**
+   * @return Number of remembered file names
+   */
+  public int size()
+  {
+    return this.matches.size();
+  }
+
+  private static final class Key
+  {
+    private final long version;
+    private final String fileName;
+
+    private Key(long version, String fileName)
+    {
+      this.version = version;
+      this.fileName = fileName;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (this == o)
+      {
+        return true;
+      }
+      if (!(o instanceof Key))
+      {
+        return false;
+      }
+      final Key key = (Key) o;
+      return this.version == key.version && this.fileName.equals(key.fileName);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Objects.hash(this.version, this.fileName);
+    }
+  }
+}
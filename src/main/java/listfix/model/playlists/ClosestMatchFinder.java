@@ -0,0 +1,216 @@
+package listfix.model.playlists;
+
+import listfix.io.IPlaylistOptions;
+import listfix.model.BatchMatchItem;
+import listfix.util.FileNameTokenIndex;
+import listfix.view.support.ConcurrentProgressAdapter;
+import listfix.view.support.IProgressObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the closest matches of multiple playlist entries in parallel, on its own pool of daemon threads, not on the common fork-join pool.
+ * The results are in the order of the entries, independent of the number of threads.
+ */
+public class ClosestMatchFinder
+{
+  /**
+   * Number of threads used for a parallelism of 0
+   */
+  public static final int DEFAULT_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+  private static ThreadPoolExecutor executor;
+
+  private final FileNameTokenIndex tokenIndex;
+  private final IPlaylistOptions playListOptions;
+  private final int parallelism;
+  private final ClosestMatchCache cache;
+
+  /**
+   * @param tokenIndex      Token index of the media library files
+   * @param playListOptions Options, providing the ignored words, the maximum number of results and the parallelism
+   */
+  public ClosestMatchFinder(FileNameTokenIndex tokenIndex, IPlaylistOptions playListOptions)
+  {
+    this(tokenIndex, playListOptions, playListOptions.getClosestMatchParallelism(), null);
+  }
+
+  /**
+   * @param tokenIndex      Token index of the media library files
+   * @param playListOptions Options, providing the ignored words and the maximum number of results
+   * @param parallelism     Number of threads matching entries, 0 for {@link #DEFAULT_PARALLELISM}
+   * @param cache           Cache of matches shared with other searches using the same options, may be null
+   */
+  public ClosestMatchFinder(FileNameTokenIndex tokenIndex, IPlaylistOptions playListOptions, int parallelism, ClosestMatchCache cache)
+  {
+    this.tokenIndex = tokenIndex;
+    this.playListOptions = playListOptions;
+    this.parallelism = parallelism > 0 ? parallelism : DEFAULT_PARALLELISM;
+    this.cache = cache;
+  }
+
+  /**
+   * @param parallelism Number of threads, the pool is resized if the option changed
+   */
+  private static synchronized ExecutorService getExecutor(int parallelism)
+  {
+    if (executor == null)
+    {
+      executor = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new MatchThreadFactory());
+      executor.allowCoreThreadTimeOut(true);
+    }
+    else if (parallelism > executor.getMaximumPoolSize())
+    {
+      executor.setMaximumPoolSize(parallelism);
+      executor.setCorePoolSize(parallelism);
+    }
+    else if (parallelism < executor.getMaximumPoolSize())
+    {
+      executor.setCorePoolSize(parallelism);
+      executor.setMaximumPoolSize(parallelism);
+    }
+    return executor;
+  }
+
+  /**
+   * Find the closest matches of the entries which are neither URLs nor found.
+   *
+   * @param entries  Entries to match
+   * @param observer Progress observer, used to report progress per entry and for cancellation, may be null
+   * @return Entries with at least one match, in the order of the given entries; incomplete if cancelled
+   */
+  public List<BatchMatchItem> findClosestMatches(List<PlaylistEntry> entries, IProgressObserver<String> observer)
+  {
+    final Job job = new Job(entries, observer);
+    final int threadCount = Math.min(this.parallelism, entries.size());
+    if (threadCount <= 1)
+    {
+      job.run();
+      return job.getResults();
+    }
+
+    final ExecutorService executor = getExecutor(this.parallelism);
+    try
+    {
+      final List<Future<?>> workers = new ArrayList<>(threadCount);
+      for (int i = 0; i < threadCount; ++i)
+      {
+        workers.add(executor.submit(job));
+      }
+      for (Future<?> worker : workers)
+      {
+        worker.get();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      job.cancel();
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e)
+    {
+      job.cancel();
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    return job.getResults();
+  }
+
+  /**
+   * Shared by all workers; each worker claims the next unprocessed entry, and stores its result in the slot of that entry
+   */
+  private class Job implements Runnable, IProgressObserver<String>
+  {
+    private final List<PlaylistEntry> entries;
+    private final BatchMatchItem[] results;
+    private final AtomicInteger nextEntry = new AtomicInteger();
+    private final ConcurrentProgressAdapter<String> progress;
+
+    private Job(List<PlaylistEntry> entries, IProgressObserver<String> observer)
+    {
+      this.entries = entries;
+      this.results = new BatchMatchItem[entries.size()];
+      this.progress = new ConcurrentProgressAdapter<>(observer, entries.size());
+    }
+
+    @Override
+    public void run()
+    {
+      int index;
+      while (!this.getCancelled() && (index = this.nextEntry.getAndIncrement()) < this.results.length)
+      {
+        final PlaylistEntry entry = this.entries.get(index);
+        if (!entry.isURL() && !entry.isFound())
+        {
+          // The job itself observes the entry, only for cancellation
+          final List<PotentialPlaylistEntryMatch> matches = cache == null ?
+            entry.findClosestMatches(tokenIndex, this, playListOptions) :
+            cache.findClosestMatches(entry, tokenIndex, this, playListOptions);
+          if (matches != null && !matches.isEmpty())
+          {
+            this.results[index] = new BatchMatchItem(entry, matches);
+          }
+        }
+        this.progress.stepCompleted();
+      }
+    }
+
+    private void cancel()
+    {
+      this.progress.cancel();
+    }
+
+    private List<BatchMatchItem> getResults()
+    {
+      final List<BatchMatchItem> matched = new ArrayList<>();
+      for (BatchMatchItem result : this.results)
+      {
+        if (result != null)
+        {
+          matched.add(result);
+        }
+      }
+      return matched;
+    }
+
+    @Override
+    public void reportProgress(int progress)
+    {
+      // Progress is reported per entry, not per scored media file
+    }
+
+    @Override
+    public void reportProgress(int progress, String state)
+    {
+    }
+
+    @Override
+    public boolean getCancelled()
+    {
+      return this.progress.getCancelled();
+    }
+  }
+
+  private static class MatchThreadFactory implements ThreadFactory
+  {
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+      final Thread thread = new Thread(runnable, "closest-match-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
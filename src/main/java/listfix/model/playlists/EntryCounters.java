@@ -0,0 +1,140 @@
+package listfix.model.playlists;
+
+import listfix.model.enums.PlaylistEntryStatus;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of URL, missing, fixed and unknown entries of a playlist, maintained incrementally as entries are added, removed or change state.
+ * Safe for concurrent updates, like from a parallel repair.
+ */
+class EntryCounters
+{
+  private static final int URL = 1;
+  private static final int MISSING = 2;
+  private static final int FIXED = 4;
+  private static final int UNKNOWN = 8;
+
+  private final AtomicInteger urlCount = new AtomicInteger();
+  private final AtomicInteger missingCount = new AtomicInteger();
+  private final AtomicInteger fixedCount = new AtomicInteger();
+  private final AtomicInteger unknownCount = new AtomicInteger();
+
+  /**
+   * @return The counters the entry contributes to, to be passed to {@link #changed(int, PlaylistEntry)} after changing the entry
+   */
+  static int stateOf(PlaylistEntry entry)
+  {
+    int state = 0;
+    if (entry.isURL())
+    {
+      state |= URL;
+    }
+    else if (entry.getStatus() == PlaylistEntryStatus.Unknown)
+    {
+      state |= UNKNOWN;
+    }
+    else if (!entry.isFound())
+    {
+      state |= MISSING;
+    }
+    if (entry.isFixed())
+    {
+      state |= FIXED;
+    }
+    return state;
+  }
+
+  void add(PlaylistEntry entry)
+  {
+    this.apply(stateOf(entry), 1);
+  }
+
+  void addAll(Collection<? extends PlaylistEntry> entries)
+  {
+    entries.forEach(this::add);
+  }
+
+  void remove(PlaylistEntry entry)
+  {
+    this.apply(stateOf(entry), -1);
+  }
+
+  /**
+   * @param previousState State of the entry before it changed, see {@link #stateOf(PlaylistEntry)}
+   * @param entry         Changed entry
+   */
+  void changed(int previousState, PlaylistEntry entry)
+  {
+    final int state = stateOf(entry);
+    if (state != previousState)
+    {
+      this.apply(previousState, -1);
+      this.apply(state, 1);
+    }
+  }
+
+  /**
+   * Count all entries, after bulk changes of their state
+   */
+  void recount(Collection<? extends PlaylistEntry> entries)
+  {
+    int urls = 0;
+    int missing = 0;
+    int fixed = 0;
+    int unknown = 0;
+    for (PlaylistEntry entry : entries)
+    {
+      final int state = stateOf(entry);
+      urls += state & URL;
+      missing += (state & MISSING) >> 1;
+      fixed += (state & FIXED) >> 2;
+      unknown += (state & UNKNOWN) >> 3;
+    }
+    this.urlCount.set(urls);
+    this.missingCount.set(missing);
+    this.fixedCount.set(fixed);
+    this.unknownCount.set(unknown);
+  }
+
+  private void apply(int state, int delta)
+  {
+    if ((state & URL) != 0)
+    {
+      this.urlCount.addAndGet(delta);
+    }
+    if ((state & MISSING) != 0)
+    {
+      this.missingCount.addAndGet(delta);
+    }
+    if ((state & FIXED) != 0)
+    {
+      this.fixedCount.addAndGet(delta);
+    }
+    if ((state & UNKNOWN) != 0)
+    {
+      this.unknownCount.addAndGet(delta);
+    }
+  }
+
+  int getUrlCount()
+  {
+    return this.urlCount.get();
+  }
+
+  int getMissingCount()
+  {
+    return this.missingCount.get();
+  }
+
+  int getFixedCount()
+  {
+    return this.fixedCount.get();
+  }
+
+  int getUnknownCount()
+  {
+    return this.unknownCount.get();
+  }
+}
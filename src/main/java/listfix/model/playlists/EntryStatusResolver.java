@@ -0,0 +1,155 @@
+package listfix.model.playlists;
+
+import listfix.view.support.ConcurrentProgressAdapter;
+import listfix.view.support.IProgressObserver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the status of loaded playlist entries in parallel.
+ * Checking existence is bound by file system latency, not by CPU, so more checks are in flight than there are processors.
+ * Runs on virtual threads where the JVM supports these, otherwise on a bounded pool of daemon threads.
+ */
+class EntryStatusResolver
+{
+  /**
+   * Maximum number of existence checks in flight for a single playlist
+   */
+  static final int IO_PARALLELISM = 32;
+
+  /**
+   * Below this number of entries, the status is resolved on the calling thread
+   */
+  private static final int MIN_PARALLEL_ENTRIES = 16;
+
+  private static final Logger _logger = LogManager.getLogger(EntryStatusResolver.class);
+
+  private static ExecutorService executor;
+
+  private EntryStatusResolver()
+  {
+  }
+
+  static synchronized ExecutorService getExecutor()
+  {
+    if (executor == null)
+    {
+      executor = createExecutor();
+    }
+    return executor;
+  }
+
+  private static ExecutorService createExecutor()
+  {
+    try
+    {
+      // Java 21+; looked up by reflection, as the application targets an older Java version
+      final ExecutorService virtualThreadExecutor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      _logger.debug("Resolving playlist entry status on virtual threads");
+      return virtualThreadExecutor;
+    }
+    catch (ReflectiveOperationException | RuntimeException e)
+    {
+      final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(IO_PARALLELISM, IO_PARALLELISM, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new StatusThreadFactory());
+      threadPool.allowCoreThreadTimeOut(true);
+      return threadPool;
+    }
+  }
+
+  /**
+   * Resolve the status of the entries; returns when all entries are resolved, or when cancelled.
+   *
+   * @param entries  Entries created without resolving their status
+   * @param observer Progress observer, used to report progress per entry and for cancellation, may be null
+   */
+  static void resolve(List<FilePlaylistEntry> entries, IProgressObserver<String> observer)
+  {
+    final Job job = new Job(entries, observer);
+    final int workerCount = Math.min(IO_PARALLELISM, entries.size());
+    if (entries.size() < MIN_PARALLEL_ENTRIES)
+    {
+      job.run();
+      return;
+    }
+
+    final List<Future<?>> workers = new ArrayList<>(workerCount);
+    try
+    {
+      for (int i = 0; i < workerCount; ++i)
+      {
+        workers.add(getExecutor().submit(job));
+      }
+      // Waiting for the workers makes their updates of the entries visible to this thread
+      for (Future<?> worker : workers)
+      {
+        worker.get();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      job.cancel();
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e)
+    {
+      job.cancel();
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private static class Job implements Runnable
+  {
+    private final List<FilePlaylistEntry> entries;
+    private final AtomicInteger nextEntry = new AtomicInteger();
+    private final ConcurrentProgressAdapter<String> progress;
+
+    private Job(List<FilePlaylistEntry> entries, IProgressObserver<String> observer)
+    {
+      this.entries = entries;
+      this.progress = new ConcurrentProgressAdapter<>(observer, entries.size());
+    }
+
+    @Override
+    public void run()
+    {
+      int index;
+      while (!this.progress.getCancelled() && (index = this.nextEntry.getAndIncrement()) < this.entries.size())
+      {
+        this.entries.get(index).resolveStatus();
+        this.progress.stepCompleted();
+      }
+    }
+
+    private void cancel()
+    {
+      this.progress.cancel();
+    }
+  }
+
+  private static class StatusThreadFactory implements ThreadFactory
+  {
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+      final Thread thread = new Thread(runnable, "entry-status-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -1,75 +1,198 @@
 package listfix.model.playlists;
 
-import io.github.borewit.lizzy.content.Content;
 import io.github.borewit.lizzy.playlist.Media;
 import listfix.config.IMediaLibrary;
+import listfix.config.IMediaLibraryFileIndex;
+import listfix.config.RepairMemory;
+import listfix.io.DirectoryListingCache;
 import listfix.io.FileUtils;
 import listfix.model.enums.PlaylistEntryStatus;
-import listfix.util.ArrayFunctions;
 import listfix.util.OperatingSystem;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collection;
 
 public class FilePlaylistEntry extends PlaylistEntry
 {
-  // This entry's File object.
   private static final boolean isWindows = File.separatorChar == '\\';
-  protected Path trackPath;
-  protected Path playlistPath;
+  // Location of this entry's file, replaced as a whole when it changes.
+  private volatile Location location;
+  // Resolved path, computed on first use and cleared when the location changes.
+  private volatile Path absolutePath;
+  // Location before the first change since the snapshot of the original entries with version originalVersion
+  private Location originalLocation;
+  private long originalVersion;
+
+  /**
+   * Track path, split in its folder and file name.
+   * The folder is shared by all entries of a playlist in the same folder.
+   */
+  private static final class Location
+  {
+    // Null if the track path has no parent
+    private final Path folder;
+    private final String fileName;
+
+    private Location(Path folder, String fileName)
+    {
+      this.folder = folder;
+      this.fileName = fileName;
+    }
+
+    private Path toPath()
+    {
+      return this.folder == null ? Path.of(this.fileName) : this.folder.resolve(this.fileName);
+    }
+
+    private boolean isAbsolute()
+    {
+      return this.folder != null && this.folder.isAbsolute();
+    }
+  }
 
   public FilePlaylistEntry(Playlist playlist, Media media)
+  {
+    this(playlist, media, true);
+  }
+
+  /**
+   * @param resolveStatus Check the existence of the file now; otherwise {@link #resolveStatus()} has to be called
+   */
+  FilePlaylistEntry(Playlist playlist, Media media, boolean resolveStatus)
   {
     super(playlist, media);
-    this.trackPath = convertPath(Path.of(media.getSource().toString()));
-    this.playlistPath = playlist.getPath();
-    // should we skip the exists check?
-    if (this.skipExistsCheck())
+    this.location = this.toLocation(convertPath(Path.of(media.getSource().toString())));
+    if (resolveStatus)
+    {
+      this.resolveStatus();
+    }
+  }
+
+  /**
+   * Construct an entry for a file, without a Lizzy media
+   */
+  public FilePlaylistEntry(Playlist playlist, Path trackPath)
+  {
+    super(playlist, null);
+    this.location = this.toLocation(trackPath);
+    this.resolveStatus();
+  }
+
+  private FilePlaylistEntry(FilePlaylistEntry source)
+  {
+    super(source.playlist, null);
+    this.location = source.location;
+  }
+
+  /**
+   * Resolve the status of a new entry, by checking whether the file exists.
+   * Safe to call from another thread than the one which created the entry, as long as the entry is not shared yet.
+   */
+  void resolveStatus()
+  {
+    final Location existingLocation = this.findExistingLocation(this.location, this.getExistenceCache());
+    if (existingLocation == null)
     {
       _status = PlaylistEntryStatus.Missing;
     }
-    // if we should check, do so...
-    else if (this.exists())
+    else
     {
-      // file was found in its current location
+      this.setLocation(existingLocation);
       _status = PlaylistEntryStatus.Found;
     }
-    else
+  }
+
+  /**
+   * Check the existence of an entry shown before its status was known, on a background thread, without changing the entry.
+   *
+   * @param existenceCache Cache answering the existence of files, may be null
+   * @return Check to publish by {@link StatusCheck#publish()}
+   */
+  StatusCheck checkUnknownStatus(DirectoryListingCache existenceCache)
+  {
+    final Location checkedLocation = this.location;
+    return new StatusCheck(checkedLocation, this.findExistingLocation(checkedLocation, existenceCache));
+  }
+
+  /**
+   * Result of {@link #checkUnknownStatus(DirectoryListingCache)}, not yet visible in the entry
+   */
+  final class StatusCheck
+  {
+    private final Location checkedLocation;
+    // Null if missing
+    private final Location existingLocation;
+
+    private StatusCheck(Location checkedLocation, Location existingLocation)
+    {
+      this.checkedLocation = checkedLocation;
+      this.existingLocation = existingLocation;
+    }
+
+    FilePlaylistEntry getEntry()
+    {
+      return FilePlaylistEntry.this;
+    }
+
+    /**
+     * Set the checked status; does not change the entry if it has been changed since the check.
+     *
+     * @return True if the status has been resolved
+     */
+    boolean publish()
     {
-      // file was not found
-      if (!this.trackPath.isAbsolute())
+      synchronized (FilePlaylistEntry.this)
       {
-        if (OperatingSystem.isWindows())
+        if (_status != PlaylistEntryStatus.Unknown || location != this.checkedLocation)
         {
-          // try one more thing, winamp creates some stupid lists (saves out pseudo-relative lists where the entries are assumed to be on the same drive as where the list is found)
-          // only attempt this hack on windows...
-
-          Path reconstructedTrackPath = playlistPath.getRoot().resolve(trackPath);
-
-          Files.exists(reconstructedTrackPath);
-
-          if (Files.exists(reconstructedTrackPath))
-          {
-            _status = PlaylistEntryStatus.Found;
-            this.trackPath = playlistPath.relativize(reconstructedTrackPath);
-          }
-          else
-          {
-            _status = PlaylistEntryStatus.Missing;
-          }
+          return false;
         }
-        else
+        if (this.existingLocation == null)
         {
           _status = PlaylistEntryStatus.Missing;
         }
+        else
+        {
+          setLocation(this.existingLocation);
+          _status = PlaylistEntryStatus.Found;
+        }
+        return true;
       }
-      else
+    }
+  }
+
+  /**
+   * Defer checking the existence of the file, for {@link #checkUnknownStatus(DirectoryListingCache)}
+   */
+  void setStatusUnknown()
+  {
+    _status = PlaylistEntryStatus.Unknown;
+  }
+
+  /**
+   * @return Location to use if the file exists, null if missing
+   */
+  private Location findExistingLocation(Location track, DirectoryListingCache existenceCache)
+  {
+    if (this.exists(track, existenceCache))
+    {
+      // file was found in its current location
+      return track;
+    }
+    if (!track.isAbsolute() && OperatingSystem.isWindows())
+    {
+      // try one more thing, winamp creates some stupid lists (saves out pseudo-relative lists where the entries are assumed to be on the same drive as where the list is found)
+      // only attempt this hack on windows...
+      final Path playlistPath = this.getPlaylistPath();
+      Path reconstructedTrackPath = playlistPath.getRoot().resolve(track.toPath());
+      if (Files.exists(reconstructedTrackPath))
       {
-        _status = PlaylistEntryStatus.Missing;
+        return this.toLocation(playlistPath.relativize(reconstructedTrackPath));
       }
     }
+    // file was not found
+    return null;
   }
 
   private static Path convertPath(Path path)
@@ -92,6 +215,24 @@ public class FilePlaylistEntry extends PlaylistEntry
     return Path.of(pathAsString);
   }
 
+  private Location toLocation(Path track)
+  {
+    final Path fileName = track.getFileName();
+    if (fileName == null)
+    {
+      // Root folder
+      return new Location(track, "");
+    }
+    final Path folder = track.getParent();
+    return new Location(folder == null || this.playlist == null ? folder : this.playlist.internFolder(folder), fileName.toString());
+  }
+
+  private void setLocation(Location location)
+  {
+    this.location = location;
+    this.absolutePath = null;
+  }
+
   /**
    * Update the filename portion of the track path
    *
@@ -99,7 +240,8 @@ public class FilePlaylistEntry extends PlaylistEntry
    */
   public void setFileName(String filename)
   {
-    this.trackPath = this.trackPath.getParent().resolve(filename);
+    final Location current = this.location;
+    this.changeLocation(new Location(current.folder, filename));
     this.recheckFoundStatus();
   }
 
@@ -110,43 +252,119 @@ public class FilePlaylistEntry extends PlaylistEntry
    */
   public Path getAbsolutePath()
   {
-    return this.trackPath.isAbsolute() ? this.trackPath : this.playlistPath.getParent().resolve(this.trackPath).normalize();
+    Path resolved = this.absolutePath;
+    if (resolved == null)
+    {
+      resolved = this.toAbsolutePath(this.location);
+      this.absolutePath = resolved;
+    }
+    return resolved;
   }
 
-  private boolean skipExistsCheck()
+  private Path toAbsolutePath(Location track)
   {
-    String[] emptyPaths = new String[NonExistentDirectories.size()];
-    NonExistentDirectories.toArray(emptyPaths);
-    return isFound() || ArrayFunctions.containsStringPrefixingAnotherString(emptyPaths, this.getTrackFolder(), false);
+    return track.isAbsolute() ? track.toPath() : this.getPlaylistPath().getParent().resolve(track.toPath()).normalize();
   }
 
+  /**
+   * Keep pointing to the same file after the playlist moved to another folder:
+   * a relative entry is made relative to the new folder, or absolute if the folders have no common root.
+   *
+   * @param previousFolder Folder of the playlist before it moved
+   */
+  void playlistMoved(Path previousFolder)
+  {
+    final Location current = this.location;
+    final Path folder = this.getPlaylistPath().getParent();
+    if (!current.isAbsolute() && previousFolder != null && folder != null)
+    {
+      final Path track = previousFolder.resolve(current.toPath()).normalize();
+      Path rebased;
+      try
+      {
+        rebased = folder.relativize(track);
+      }
+      catch (IllegalArgumentException e)
+      {
+        rebased = track;
+      }
+      this.replaceTrackPath(rebased);
+    }
+    this.absolutePath = null;
+  }
 
-  public boolean findNewLocationFromFileList(Collection<String> fileList, boolean caseInsensitiveExactMatching, boolean useRelativePath)
+  /**
+   * Search the media library for a file with the same name as this entry, and update this entry to that location.
+   *
+   * @param fileIndex                    Filename index of the media library
+   * @param caseInsensitiveExactMatching Compare filenames case-insensitive
+   * @param useRelativePath              Store the new location relative to the playlist
+   * @return true if a file with a matching name was found
+   */
+  public boolean findNewLocationFromFileList(IMediaLibraryFileIndex fileIndex, boolean caseInsensitiveExactMatching, boolean useRelativePath)
   {
-    String fileSearchResult = null;
     String trimmedFileName = this.getTrackFileName().trim();
     boolean caseSensitiveMatching = !isWindows && !caseInsensitiveExactMatching;
-    String candidateFileName;
-    for (String file : fileList)
+    String fileSearchResult = fileIndex.findFirst(trimmedFileName, caseSensitiveMatching);
+    if (fileSearchResult != null)
     {
-      // Get the filename from the media library entry that we're looking at so we can compare it directly to the filename we're searching for.
-      candidateFileName = Path.of(file).getFileName().toString();
+      final Path foundPath = Path.of(fileSearchResult);
+      this.changeTrackPath(useRelativePath ? FileUtils.getRelativePath(foundPath, this.getPlaylistPath()) : foundPath);
+      this.recheckFoundStatus();
+      _isFixed = _status == PlaylistEntryStatus.Found;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Move this entry to a new location
+   *
+   * @param newPath         Absolute path of the new location
+   * @param useRelativePath Store the new location relative to the playlist
+   * @return true if the new location exists, marking this entry fixed
+   */
+  boolean relocate(Path newPath, boolean useRelativePath)
+  {
+    this.changeTrackPath(useRelativePath ? FileUtils.getRelativePath(newPath, this.getPlaylistPath()) : newPath);
+    this.recheckFoundStatus();
+    _isFixed = _status == PlaylistEntryStatus.Found;
+    return _isFixed;
+  }
 
-      if (caseSensitiveMatching ? candidateFileName.equals(trimmedFileName) : candidateFileName.equalsIgnoreCase(trimmedFileName))
+  /**
+   * Repair this entry to where the same missing path has been repaired to before, or else search the media library for a file with the same name.
+   * A repair found in the media library is remembered.
+   *
+   * @param fileIndex                    Filename index of the media library
+   * @param repairMemory                 Previous repairs, may be null
+   * @param caseInsensitiveExactMatching Compare filenames case-insensitive
+   * @param useRelativePath              Store the new location relative to the playlist
+   * @return true if a new location was found
+   */
+  public boolean findNewLocation(IMediaLibraryFileIndex fileIndex, RepairMemory repairMemory, boolean caseInsensitiveExactMatching, boolean useRelativePath)
+  {
+    if (repairMemory == null)
+    {
+      return findNewLocationFromFileList(fileIndex, caseInsensitiveExactMatching, useRelativePath);
+    }
+    final Path missingPath = this.getAbsolutePath();
+    final Path rememberedPath = repairMemory.recall(missingPath);
+    if (rememberedPath != null)
+    {
+      final Location missingLocation = this.location;
+      if (this.relocate(rememberedPath, useRelativePath))
       {
-        fileSearchResult = file;
-        break;
+        return true;
       }
+      this.changeLocation(missingLocation);
     }
-    if (fileSearchResult != null)
+    if (findNewLocationFromFileList(fileIndex, caseInsensitiveExactMatching, useRelativePath))
     {
-      this.trackPath = Path.of(fileSearchResult);
-      if (useRelativePath)
+      if (this.isFound())
       {
-        this.trackPath = FileUtils.getRelativePath(this.trackPath, this.playlistPath);
+        repairMemory.remember(missingPath, this.getAbsolutePath());
       }
-      this.recheckFoundStatus();
-      _isFixed = _status == PlaylistEntryStatus.Found;
       return true;
     }
     return false;
@@ -154,39 +372,105 @@ public class FilePlaylistEntry extends PlaylistEntry
 
   public boolean updatePathToMediaLibraryIfFoundOutside(IMediaLibrary dirLists, boolean caseInsensitiveExactMatching, boolean useRelativePath)
   {
-    if (_status == PlaylistEntryStatus.Found && !ArrayFunctions.containsStringPrefixingAnotherString(dirLists.getMediaDirectories(), this.getTrackFolder(), FilePlaylistEntry.isWindows))
+    if (_status == PlaylistEntryStatus.Found && !dirLists.getMediaDirectories().containsAncestorOf(this.getTrackFolder(), FilePlaylistEntry.isWindows))
     {
-      return findNewLocationFromFileList(dirLists.getNestedMediaFiles(), caseInsensitiveExactMatching, useRelativePath);
+      return findNewLocationFromFileList(dirLists.getFileIndex(), caseInsensitiveExactMatching, useRelativePath);
     }
     return false;
   }
 
   public Path getTrackPath()
   {
-    return this.trackPath;
+    return this.location.toPath();
   }
 
   public void setTrackPath(Path trackPath)
   {
-    this.trackPath = trackPath;
+    this.changeTrackPath(trackPath);
   }
 
   public Path getPlaylistPath()
   {
-    return this.playlistPath;
+    return this.playlist.getPath();
   }
 
   public void update(Path track)
   {
-    this.trackPath = track;
-    Content content = new Content(track.toString());
-    this.media.setSource(content);
+    this.changeTrackPath(track);
+  }
+
+  /**
+   * Replace the track path by the equivalent path written when saving, without recording a change
+   */
+  void replaceTrackPath(Path track)
+  {
+    this.setLocation(this.toLocation(track));
+  }
+
+  private void changeTrackPath(Path track)
+  {
+    this.changeLocation(this.toLocation(track));
+  }
+
+  /**
+   * Change the location, remembering the original location on the first change since the last snapshot of the playlist
+   */
+  private void changeLocation(Location track)
+  {
+    final long snapshotVersion = this.playlist == null ? 0 : this.playlist.getSnapshotVersion();
+    if (this.originalVersion != snapshotVersion)
+    {
+      this.originalLocation = this.location;
+      this.originalVersion = snapshotVersion;
+    }
+    this.setLocation(track);
+  }
+
+  @Override
+  boolean isChangedSince(long snapshotVersion)
+  {
+    return this.originalVersion == snapshotVersion && this.originalLocation != this.location;
+  }
+
+  @Override
+  boolean equalsOriginal(PlaylistEntry original, long snapshotVersion)
+  {
+    if (!(original instanceof FilePlaylistEntry))
+    {
+      return false;
+    }
+    final FilePlaylistEntry originalEntry = (FilePlaylistEntry) original;
+    return originalEntry.originalVersion == snapshotVersion && originalEntry.originalLocation != originalEntry.location ?
+      this.getAbsolutePath().equals(originalEntry.toAbsolutePath(originalEntry.originalLocation)) :
+      this.getAbsolutePath().equals(originalEntry.getAbsolutePath());
+  }
+
+  @Override
+  void restoreOriginal(long snapshotVersion)
+  {
+    if (this.isChangedSince(snapshotVersion))
+    {
+      this.setLocation(this.originalLocation);
+      this.recheckFoundStatus();
+    }
   }
 
   @Override
   protected boolean exists()
   {
-    return Files.exists(this.getAbsolutePath());
+    return this.exists(this.location, this.getExistenceCache());
+  }
+
+  private boolean exists(Location track, DirectoryListingCache existenceCache)
+  {
+    // Not cached, most entries are only checked once while loading
+    final Path absolutePath = this.toAbsolutePath(track);
+    return existenceCache == null ? Files.exists(absolutePath) : existenceCache.exists(absolutePath);
+  }
+
+  private DirectoryListingCache getExistenceCache()
+  {
+    return this.playlist == null ? null : this.playlist.getExistenceCache();
   }
 
   @Override
@@ -195,16 +479,14 @@ public class FilePlaylistEntry extends PlaylistEntry
     super.copyTo(target);
     if (target instanceof FilePlaylistEntry)
     {
-      FilePlaylistEntry filePlaylistEntry = (FilePlaylistEntry) target;
-      filePlaylistEntry.trackPath = this.trackPath;
-      filePlaylistEntry.playlistPath = this.playlistPath;
+      ((FilePlaylistEntry) target).setLocation(this.location);
     }
   }
 
   @Override
   public FilePlaylistEntry clone()
   {
-    FilePlaylistEntry clone = new FilePlaylistEntry(this.playlist, this.media);
+    FilePlaylistEntry clone = new FilePlaylistEntry(this);
     this.copyTo(clone);
     return clone;
   }
@@ -218,14 +500,14 @@ public class FilePlaylistEntry extends PlaylistEntry
   @Override
   public String getTrackFolder()
   {
-    Path parent = this.trackPath.getParent();
+    Path parent = this.location.folder;
     return parent == null ? "" : parent.toString();
   }
 
   @Override
   public String getTrackFileName()
   {
-    return this.trackPath.getFileName().toString();
+    return this.location.fileName;
   }
 
   @Override
@@ -237,7 +519,7 @@ public class FilePlaylistEntry extends PlaylistEntry
   @Override
   public boolean isRelative()
   {
-    return !this.trackPath.isAbsolute();
+    return !this.location.isAbsolute();
   }
 
   @Override
@@ -250,6 +532,6 @@ public class FilePlaylistEntry extends PlaylistEntry
   @Override
   public int hashCode()
   {
-    return this.trackPath.hashCode();
+    return this.getAbsolutePath().hashCode();
   }
 }
@@ -0,0 +1,182 @@
+package listfix.model.playlists;
+
+import listfix.config.IMediaLibrary;
+import listfix.config.IMediaLibraryFileIndex;
+import listfix.config.IPathSet;
+import listfix.config.RepairMemory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Repair stage for moved folders: missing entries are grouped by folder, only one or two entries per folder are searched
+ * in the media library, and the folder move inferred from these is confirmed against the media library for the rest of the group.
+ * A move of a parent folder, like a drive or a music folder, is applied to the following folders before searching any of them.
+ */
+class FolderMoveRepair
+{
+  private static final Logger _logger = LogManager.getLogger(FolderMoveRepair.class);
+  private static final int MAX_PROBES = 2;
+
+  private final IMediaLibraryFileIndex fileIndex;
+  private final IMediaLibrary mediaLibrary;
+  private final IPathSet mediaFiles;
+  private final RepairMemory repairMemory;
+  private final boolean caseInsensitiveExactMatching;
+  private final boolean useRelativePath;
+  /**
+   * Inferred moves, from the old to the new location of a folder
+   */
+  private final Map<Path, Path> moves = new LinkedHashMap<>();
+
+  FolderMoveRepair(IMediaLibrary mediaLibrary, boolean caseInsensitiveExactMatching, boolean useRelativePath)
+  {
+    this.fileIndex = mediaLibrary.getFileIndex();
+    this.mediaLibrary = mediaLibrary;
+    this.mediaFiles = mediaLibrary.getNestedMediaFiles();
+    this.repairMemory = mediaLibrary.getRepairMemory();
+    this.caseInsensitiveExactMatching = caseInsensitiveExactMatching;
+    this.useRelativePath = useRelativePath;
+  }
+
+  /**
+   * Repair the missing entries sharing their folder with other missing entries, or in a folder below an inferred folder move
+   *
+   * @param entries Playlist entries
+   * @return Repaired entries, in playlist order
+   */
+  List<FilePlaylistEntry> repair(List<PlaylistEntry> entries)
+  {
+    final Map<Path, List<FilePlaylistEntry>> groups = new LinkedHashMap<>();
+    for (PlaylistEntry entry : entries)
+    {
+      if (entry instanceof FilePlaylistEntry && !entry.isFound())
+      {
+        final Path folder = ((FilePlaylistEntry) entry).getAbsolutePath().getParent();
+        if (folder != null)
+        {
+          groups.computeIfAbsent(folder, key -> new ArrayList<>()).add((FilePlaylistEntry) entry);
+        }
+      }
+    }
+
+    final Set<FilePlaylistEntry> repaired = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Map.Entry<Path, List<FilePlaylistEntry>> group : groups.entrySet())
+    {
+      this.repairGroup(group.getKey(), group.getValue(), repaired);
+    }
+    _logger.debug(String.format("Repaired %d entries of %d missing folders by %d folder moves", repaired.size(), groups.size(), this.moves.size()));
+
+    final List<FilePlaylistEntry> result = new ArrayList<>(repaired.size());
+    for (PlaylistEntry entry : entries)
+    {
+      if (repaired.contains(entry))
+      {
+        result.add((FilePlaylistEntry) entry);
+      }
+    }
+    return result;
+  }
+
+  private void repairGroup(Path folder, List<FilePlaylistEntry> group, Set<FilePlaylistEntry> repaired)
+  {
+    // Apply a known move of a parent folder first
+    final Path movedFolder = this.findKnownMove(folder);
+    if (movedFolder != null && this.relocateGroup(folder, movedFolder, group, repaired) > 0)
+    {
+      return;
+    }
+    if (group.size() < 2)
+    {
+      // Nothing to gain over searching the entry by itself
+      return;
+    }
+
+    // Search the media library for the first entries of the group
+    for (int i = 0; i < Math.min(MAX_PROBES, group.size()); ++i)
+    {
+      final FilePlaylistEntry probe = group.get(i);
+      if (probe.findNewLocation(this.fileIndex, this.repairMemory, this.caseInsensitiveExactMatching, this.useRelativePath) && probe.isFound())
+      {
+        repaired.add(probe);
+        final Path newFolder = probe.getAbsolutePath().getParent();
+        if (this.relocateGroup(folder, newFolder, group, repaired) > 0)
+        {
+          this.learnMove(folder, newFolder);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Move the entries of the group, which exist in the media library at the new location
+   *
+   * @return Number of moved entries
+   */
+  private int relocateGroup(Path folder, Path newFolder, List<FilePlaylistEntry> group, Set<FilePlaylistEntry> repaired)
+  {
+    int count = 0;
+    for (FilePlaylistEntry entry : group)
+    {
+      if (!entry.isFound())
+      {
+        final Path newPath = newFolder.resolve(entry.getTrackFileName());
+        if (this.containsMediaFile(newPath) && entry.relocate(newPath, this.useRelativePath))
+        {
+          if (this.repairMemory != null)
+          {
+            this.repairMemory.remember(folder.resolve(newPath.getFileName()), newPath);
+          }
+          repaired.add(entry);
+          ++count;
+        }
+      }
+    }
+    return count;
+  }
+
+  private boolean containsMediaFile(Path path)
+  {
+    synchronized (this.mediaLibrary)
+    {
+      return this.mediaFiles.contains(path.toString());
+    }
+  }
+
+  private Path findKnownMove(Path folder)
+  {
+    for (Map.Entry<Path, Path> move : this.moves.entrySet())
+    {
+      if (folder.startsWith(move.getKey()))
+      {
+        return move.getValue().resolve(move.getKey().relativize(folder));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Remember a confirmed folder move; if both folders end with the same folder names,
+   * like an album folder moved to another drive, the move of the parent folders is remembered instead.
+   */
+  private void learnMove(Path folder, Path newFolder)
+  {
+    Path from = folder;
+    Path to = newFolder;
+    while (from.getParent() != null && to.getParent() != null && from.getFileName().equals(to.getFileName()))
+    {
+      from = from.getParent();
+      to = to.getParent();
+    }
+    this.moves.putIfAbsent(from, to);
+  }
+}
@@ -0,0 +1,136 @@
+package listfix.model.playlists;
+
+import listfix.util.SnapshotList;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tracks how far the entries of a playlist diverged from its original entries while they are mutated,
+ * so the modified state is known without comparing the paths of all entries after every mutation.
+ * Positions are compared by identity: replacing and swapping entries update the count of diverged positions in constant time,
+ * other writes to the entry list are detected by its write count, and recounted once by identity.
+ * The locations of the entries are only compared when every position holds its original entry again, after locations have changed.
+ */
+class ModificationJournal
+{
+  private final SnapshotList<PlaylistEntry> entries;
+  private List<PlaylistEntry> original = List.of();
+  // Number of positions, below the size of both lists, not holding their original entry
+  private int divergedPositions;
+  // Write count of the entry list the diverged positions are counted for, -1 to recount
+  private long countedWrites = -1;
+  private volatile boolean locationsChanged;
+  private boolean locationsModified;
+
+  ModificationJournal(SnapshotList<PlaylistEntry> entries)
+  {
+    this.entries = entries;
+  }
+
+  /**
+   * Start tracking against new original entries
+   *
+   * @param original Original entries, equal to the entries if these are a snapshot of these
+   */
+  void reset(List<PlaylistEntry> original)
+  {
+    this.original = original;
+    this.countedWrites = -1;
+    this.locationsChanged = false;
+    this.locationsModified = false;
+  }
+
+  /**
+   * Replace the entry at the given position
+   */
+  void set(int index, PlaylistEntry entry)
+  {
+    final boolean tracked = this.isCounted();
+    if (tracked)
+    {
+      this.divergedPositions -= this.divergesAt(index);
+    }
+    this.entries.set(index, entry);
+    if (tracked)
+    {
+      this.divergedPositions += this.divergesAt(index);
+      this.countedWrites = this.entries.getWriteCount();
+    }
+  }
+
+  /**
+   * Swap the entries at the given positions
+   */
+  void swap(int i, int j)
+  {
+    final boolean tracked = this.isCounted();
+    if (tracked)
+    {
+      this.divergedPositions -= this.divergesAt(i) + this.divergesAt(j);
+    }
+    Collections.swap(this.entries, i, j);
+    if (tracked)
+    {
+      this.divergedPositions += this.divergesAt(i) + this.divergesAt(j);
+      this.countedWrites = this.entries.getWriteCount();
+    }
+  }
+
+  /**
+   * Record that the locations of entries changed, like by a repair; may be called from any thread
+   */
+  void locationsChanged()
+  {
+    this.locationsChanged = true;
+  }
+
+  /**
+   * @param compareLocations Full comparison of the locations of the entries with the original entries, true if equal
+   * @return True if the entries differ from the original entries
+   */
+  boolean isModified(BooleanSupplier compareLocations)
+  {
+    if (!this.isCounted())
+    {
+      this.recount();
+    }
+    if (this.entries.size() != this.original.size() || this.divergedPositions > 0)
+    {
+      return true;
+    }
+    // Every position holds its original entry; the previous comparison holds, unless locations changed since
+    if (this.locationsChanged)
+    {
+      this.locationsChanged = false;
+      this.locationsModified = !compareLocations.getAsBoolean();
+    }
+    return this.locationsModified;
+  }
+
+  private boolean isCounted()
+  {
+    return this.countedWrites == this.entries.getWriteCount();
+  }
+
+  private void recount()
+  {
+    final int size = Math.min(this.entries.size(), this.original.size());
+    int diverged = 0;
+    for (int i = 0; i < size; ++i)
+    {
+      if (this.entries.get(i) != this.original.get(i))
+      {
+        ++diverged;
+      }
+    }
+    this.divergedPositions = diverged;
+    this.countedWrites = this.entries.getWriteCount();
+  }
+
+  private int divergesAt(int index)
+  {
+    return index < this.original.size() && this.entries.get(index) != this.original.get(index) ? 1 : 0;
+  }
+}
@@ -1,18 +1,25 @@
 package listfix.model.playlists;
 
-import io.github.borewit.lizzy.content.Content;
 import io.github.borewit.lizzy.playlist.*;
 import listfix.config.IMediaLibrary;
+import listfix.config.IMediaLibraryFileIndex;
+import listfix.config.RepairMemory;
+import listfix.io.AtomicFileWriter;
+import listfix.io.DirectoryListingCache;
 import listfix.io.FileUtils;
 import listfix.io.IPlaylistOptions;
 import listfix.io.playlists.LizzyPlaylistUtil;
+import listfix.io.playlists.XmlPlaylistWriter;
 import listfix.model.BatchMatchItem;
-import listfix.io.progress.ObservableInputStream;
+import listfix.model.enums.PlaylistEntryStatus;
+import listfix.util.FileNameTokenIndex;
+import listfix.util.SnapshotList;
 import listfix.io.progress.ObservableOutputStream;
 import listfix.view.support.IPlaylistModifiedListener;
 import listfix.view.support.IProgressObserver;
 import listfix.view.support.ProgressAdapter;
 import listfix.view.support.ProgressWorker;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Marker;
@@ -22,7 +29,6 @@ import javax.swing.filechooser.FileSystemView;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -30,7 +36,15 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Playlist
 {
@@ -43,26 +57,51 @@ public class Playlist
 
   private Path playlistPath;
   private SpecificPlaylist specificPlaylist;
-  private final List<PlaylistEntry> _entries = new ArrayList<>();
-  private final List<PlaylistEntry> _originalEntries = new ArrayList<>();
-  private int _fixedCount;
-  private int _urlCount;
-  private int _missingCount;
+  private final SnapshotList<PlaylistEntry> _entries = new SnapshotList<>();
+  // Entries as loaded or last saved, sharing the unchanged entries with _entries
+  private List<PlaylistEntry> _originalEntries = List.of();
+  private long snapshotVersion;
+  private static final AtomicLong snapshotVersions = new AtomicLong();
+  private final ModificationJournal modifications = new ModificationJournal(_entries);
+  // Folders of the entries, each shared by all entries in the same folder
+  private final Map<Path, Path> folders = new ConcurrentHashMap<>();
+  // Write count of the entry list when the entries were last numbered
+  private long numberedWrites = -1;
+  private final EntryCounters counters = new EntryCounters();
+  // Nesting depth of batch updates, and whether the playlist changed during the batch
+  private final AtomicInteger updateDepth = new AtomicInteger();
+  private final AtomicBoolean updatePending = new AtomicBoolean();
   private boolean isModified;
   private boolean isUnsaved;
   private static final Logger _logger = LogManager.getLogger(Playlist.class);
 
   private final IPlaylistOptions playListOptions;
+  private volatile DirectoryListingCache existenceCache;
+  private boolean deferStatus;
+  private volatile BackgroundStatusResolver statusResolver;
+  private Executor statusNotifier;
 
   private final List<IPlaylistModifiedListener> _listeners = new ArrayList<>();
 
   private static final PlaylistFormat defaultPlaylistFormat = PlaylistFormat.m3u;
   private static final String defaultPlaylistExtension = "m3u8";
 
+  /**
+   * Playlists with at least this number of file entries can be loaded before the status of the entries is known
+   */
+  public static final int DEFERRED_STATUS_MIN_ENTRIES = 10000;
+
   public static Playlist load(Path playlistPath, IProgressObserver<String> observer, IPlaylistOptions playListOptions) throws IOException
   {
-    SpecificPlaylist specificPlaylist = LizzyPlaylistUtil.readPlaylist(playlistPath);
-    Playlist playlist = new Playlist(playlistPath, playListOptions, specificPlaylist);
+    return load(playlistPath, observer, playListOptions, false);
+  }
+
+  /**
+   * @param deferStatus Leave the status of the entries of a large playlist unknown, to be resolved by {@link #resolveStatusInBackground(Executor)}
+   */
+  public static Playlist load(Path playlistPath, IProgressObserver<String> observer, IPlaylistOptions playListOptions, boolean deferStatus) throws IOException
+  {
+    Playlist playlist = new Playlist(playlistPath, playListOptions, null, deferStatus);
     playlist.load(observer);
     playlist.isUnsaved = false;
     return playlist;
@@ -71,11 +110,17 @@ public class Playlist
   private void load(IProgressObserver<String> observer) throws IOException
   {
     final List<PlaylistEntry> playlistEntries = new ArrayList<>();
-    this.loadPlaylistEntries(playlistEntries, playlistPath, observer);
-    this.setEntries(playlistEntries);
+    final List<FilePlaylistEntry> unresolved = new ArrayList<>();
+    // Entries are created while reading, large M3U playlists are read in chunks
+    this.specificPlaylist = LizzyPlaylistUtil.readPlaylist(this.playlistPath, observer, (sequence, keepMedia) -> this.addPlaylistEntries(playlistEntries, unresolved, sequence, keepMedia));
+    this.resolveStatus(unresolved, observer);
+    _entries.clear();
+    _entries.addAll(playlistEntries);
+    this.takeSnapshot();
     this.isModified = false;
+    this.countEntries();
     this.refreshStatus();
-
+    this.startStatusResolution();
   }
 
   public static Playlist makeTemporaryPlaylist(IPlaylistOptions playListOptions, io.github.borewit.lizzy.playlist.Playlist playlist) throws IOException
@@ -115,15 +160,22 @@ public class Playlist
    * Currently used when reading playlists with external code.
    */
   public Playlist(Path playlistPath, IPlaylistOptions playListOptions, SpecificPlaylist playlist)
+  {
+    this(playlistPath, playListOptions, playlist, false);
+    toPlaylistEntries(this._entries, playlist.toPlaylist().getRootSequence(), LizzyPlaylistUtil.keepsMedia(playlist), null);
+    countEntries();
+    refreshStatus();
+  }
+
+  private Playlist(Path playlistPath, IPlaylistOptions playListOptions, SpecificPlaylist playlist, boolean deferStatus)
   {
     assert playlistPath != null;
     this.playlistPath = playlistPath;
     this.playListOptions = playListOptions;
     this.specificPlaylist = playlist;
+    this.deferStatus = deferStatus;
     this.isUnsaved = true;
     this.isModified = false;
-    toPlaylistEntries(this._entries, playlist.toPlaylist().getRootSequence());
-    refreshStatus();
   }
 
   private List<PlaylistEntry> getEntriesForFiles(Collection<Path> files, IProgressObserver<String> observer) throws IOException
@@ -139,7 +191,8 @@ public class Playlist
         if (LizzyPlaylistUtil.isPlaylist(trackPath))
         {
           // playlist file
-          loadPlaylistEntries(ents, trackPath, null); // ToDo: nest observable
+          // The media of another playlist are saved in the format of this one
+          toPlaylistEntries(ents, LizzyPlaylistUtil.readPlaylist(trackPath).toPlaylist().getRootSequence(), false, null); // ToDo: nest observable
         }
         else
         {
@@ -162,47 +215,203 @@ public class Playlist
 
   private FilePlaylistEntry makeEntry(Path trackPath)
   {
-    return new FilePlaylistEntry(this, new Media(new Content(normalizeTrackPath(trackPath).toString())));
+    return new FilePlaylistEntry(this, normalizeTrackPath(trackPath));
+  }
+
+  /**
+   * @return Equal folder shared by the entries of this playlist
+   */
+  Path internFolder(Path folder)
+  {
+    final Path interned = this.folders.putIfAbsent(folder, folder);
+    return interned == null ? folder : interned;
+  }
+
+  /**
+   * @return Cache answering the existence of entries while loading, null if not loading
+   */
+  DirectoryListingCache getExistenceCache()
+  {
+    return this.existenceCache;
+  }
+
+  /**
+   * Resolve the status of the entries left unknown by loading, on background threads.
+   * Entries requested by {@link #prioritizeStatus(PlaylistEntry)} are resolved first.
+   *
+   * @param notifier Executor updating the counters and notifying the listeners, like the event dispatch thread
+   */
+  public void resolveStatusInBackground(Executor notifier)
+  {
+    this.statusNotifier = notifier;
+    if (this.statusResolver == null)
+    {
+      this.startStatusResolution();
+    }
   }
 
-  private void loadPlaylistEntries(List<PlaylistEntry> playlistEntries, Path playlistPath, IProgressObserver<String> observer) throws IOException
+  /**
+   * Request the status of an entry to be resolved before the other entries, like an entry becoming visible
+   */
+  public void prioritizeStatus(PlaylistEntry entry)
   {
-    List<SpecificPlaylistProvider> specificPlaylistProviders = SpecificPlaylistFactory.getInstance().findProvidersByExtension(playlistPath.toString());
+    final BackgroundStatusResolver resolver = this.statusResolver;
+    if (resolver != null && entry instanceof FilePlaylistEntry && entry.getStatus() == PlaylistEntryStatus.Unknown)
+    {
+      resolver.prioritize((FilePlaylistEntry) entry);
+    }
+  }
 
-    for (SpecificPlaylistProvider specificPlaylistProvider : specificPlaylistProviders)
+  private List<FilePlaylistEntry> getUnknownEntries()
+  {
+    final List<FilePlaylistEntry> unknown = new ArrayList<>();
+    for (PlaylistEntry entry : this._entries)
     {
-      try (InputStream is = Files.newInputStream(playlistPath))
+      if (entry instanceof FilePlaylistEntry && entry.getStatus() == PlaylistEntryStatus.Unknown)
       {
-        final InputStream observableInputStream = observer == null ? is : new ObservableInputStream(is, Files.size(playlistPath), observer);
-        try
-        {
-          this.specificPlaylist = specificPlaylistProvider.readFrom(observableInputStream);
-          if (this.specificPlaylist != null)
-          {
-            toPlaylistEntries(playlistEntries, this.specificPlaylist.toPlaylist().getRootSequence());
-            break;
-          }
-        }
-        catch (Exception e)
-        {
-          throw new IOException(String.format("Failed to read from %s", playlistPath.getFileName()), e);
-        }
+        unknown.add((FilePlaylistEntry) entry);
+      }
+    }
+    return unknown;
+  }
+
+  private void startStatusResolution()
+  {
+    this.stopStatusResolution();
+    if (this.statusNotifier == null || this.counters.getUnknownCount() == 0)
+    {
+      return;
+    }
+    final BackgroundStatusResolver resolver = new BackgroundStatusResolver(this.getUnknownEntries(), this.statusNotifier);
+    this.statusResolver = resolver;
+    resolver.start(checks -> this.onStatusResolved(resolver, checks));
+  }
+
+  private void stopStatusResolution()
+  {
+    if (this.statusResolver != null)
+    {
+      this.statusResolver.cancel();
+      this.statusResolver = null;
+    }
+  }
+
+  /**
+   * Publish the checked status of the entries still in this playlist, updating the counters with each entry
+   */
+  private void onStatusResolved(BackgroundStatusResolver resolver, List<FilePlaylistEntry.StatusCheck> checks)
+  {
+    if (resolver != this.statusResolver)
+    {
+      // Superseded
+      return;
+    }
+    if (resolver.isDone())
+    {
+      this.statusResolver = null;
+    }
+    int firstIndex = Integer.MAX_VALUE;
+    int lastIndex = -1;
+    for (FilePlaylistEntry.StatusCheck check : checks)
+    {
+      final FilePlaylistEntry entry = check.getEntry();
+      final int index = this.positionOf(entry);
+      if (index < 0)
+      {
+        // Removed meanwhile
+        continue;
+      }
+      final int previousState = EntryCounters.stateOf(entry);
+      if (check.publish())
+      {
+        this.counters.changed(previousState, entry);
+        firstIndex = Math.min(firstIndex, index);
+        lastIndex = Math.max(lastIndex, index);
+      }
+    }
+    if (lastIndex < 0)
+    {
+      return;
+    }
+    for (IPlaylistModifiedListener listener : _listeners)
+    {
+      if (listener != null)
+      {
+        listener.entryStatusResolved(this, firstIndex, lastIndex);
       }
     }
   }
 
-  private void toPlaylistEntries(List<PlaylistEntry> playlistEntries, Sequence sequence)
+  /**
+   * Resolve the status of the entries still unknown, before operations depending on it
+   *
+   * @param observer Progress observer, may be null
+   */
+  public void awaitStatus(IProgressObserver<String> observer)
+  {
+    if (this.counters.getUnknownCount() == 0)
+    {
+      return;
+    }
+    this.stopStatusResolution();
+    EntryStatusResolver.resolve(this.getUnknownEntries(), observer);
+    this.countEntries();
+    this.refreshStatus();
+    // Continue in the background if cancelled
+    this.startStatusResolution();
+  }
+
+  /**
+   * Create the entries first, then resolve the status of the file entries in parallel
+   *
+   * @param keepMedia True to save the media read again, see {@link LizzyPlaylistUtil#keepsMedia(SpecificPlaylist)}
+   * @param observer  Progress observer, used to report progress of resolving the status and for cancellation, may be null
+   */
+  private void toPlaylistEntries(List<PlaylistEntry> playlistEntries, Sequence sequence, boolean keepMedia, IProgressObserver<String> observer)
+  {
+    final List<FilePlaylistEntry> unresolved = new ArrayList<>();
+    addPlaylistEntries(playlistEntries, unresolved, sequence, keepMedia);
+    this.resolveStatus(unresolved, observer);
+  }
+
+  /**
+   * @param unresolved File entries created without resolving their status
+   */
+  private void resolveStatus(List<FilePlaylistEntry> unresolved, IProgressObserver<String> observer)
+  {
+    if (this.deferStatus && unresolved.size() >= DEFERRED_STATUS_MIN_ENTRIES)
+    {
+      unresolved.forEach(FilePlaylistEntry::setStatusUnknown);
+      return;
+    }
+    // List each directory once, instead of checking the existence of every entry
+    this.existenceCache = new DirectoryListingCache();
+    try
+    {
+      EntryStatusResolver.resolve(unresolved, observer);
+    }
+    finally
+    {
+      this.existenceCache = null;
+    }
+  }
+
+  private void addPlaylistEntries(List<PlaylistEntry> playlistEntries, List<FilePlaylistEntry> unresolved, Sequence sequence, boolean keepMedia)
   {
     sequence.getComponents().forEach(component -> {
       if (component instanceof Media)
       {
         Media media = (Media) component;
-        PlaylistEntry playlistEntry = PlaylistEntry.makePlaylistEntry(this, media);
+        PlaylistEntry playlistEntry = PlaylistEntry.makePlaylistEntry(this, media, false, keepMedia);
         playlistEntries.add(playlistEntry);
+        if (playlistEntry instanceof FilePlaylistEntry)
+        {
+          unresolved.add((FilePlaylistEntry) playlistEntry);
+        }
       }
       else if (component instanceof Sequence)
       {
-        toPlaylistEntries(playlistEntries, (Sequence) component);
+        addPlaylistEntries(playlistEntries, unresolved, (Sequence) component, keepMedia);
       }
       else
       {
@@ -258,7 +467,7 @@ public class Playlist
   protected void resetInternalStateAfterSave(IProgressObserver<String> observer)
   {
     // change original _entries
-    replaceEntryListContents(_entries, _originalEntries);
+    this.takeSnapshot();
     this.isModified = false;
     this.isUnsaved = false;
 
@@ -270,6 +479,7 @@ public class Playlist
       {
         entry.setFixed(false);
       }
+      countEntries();
     }
 
     refreshStatus();
@@ -306,15 +516,13 @@ public class Playlist
       if (entry instanceof FilePlaylistEntry)
       {
         // Normalize to absolute path
-        Path trackPath = ((FilePlaylistEntry) entry).trackPath;
-        srcUri = trackPath.isAbsolute() ? trackPath.toString() : this.playlistPath.getParent().resolve(trackPath).toString();
+        srcUri = ((FilePlaylistEntry) entry).getAbsolutePath().toString();
       }
       else
       {
-        srcUri = entry.getMedia().getSource().toString();
+        srcUri = ((UriPlaylistEntry) entry).getURI().toString();
       }
-      Media media = new Media(new Content(srcUri));
-      rootSequence.addComponent(media);
+      rootSequence.addComponent(entry.toMedia(srcUri));
     }
 
     return makeTemporaryPlaylist(this.playListOptions, newPlaylist);
@@ -348,7 +556,19 @@ public class Playlist
   public void setPath(Path playlistPath)
   {
     assert playlistPath != null;
+    final Path previousFolder = this.playlistPath.getParent();
     this.playlistPath = playlistPath;
+    if (!Objects.equals(playlistPath.getParent(), previousFolder))
+    {
+      // Relative entries resolve against the playlist folder, keep them pointing to the same files
+      for (PlaylistEntry entry : _entries)
+      {
+        if (entry instanceof FilePlaylistEntry)
+        {
+          ((FilePlaylistEntry) entry).playlistMoved(previousFolder);
+        }
+      }
+    }
   }
 
   public void addModifiedListener(IPlaylistModifiedListener listener)
@@ -378,19 +598,42 @@ public class Playlist
     }
   }
 
-  private void setEntries(List<PlaylistEntry> aEntries)
+  /**
+   * Take the entries as the original entries, in constant time: the snapshot shares the entries with the playlist,
+   * entries changed later remember their original location.
+   */
+  private void takeSnapshot()
   {
-    replaceEntryListContents(aEntries, _originalEntries);
-    replaceEntryListContents(aEntries, _entries);
+    this._originalEntries = this._entries.snapshot();
+    this.snapshotVersion = snapshotVersions.incrementAndGet();
+    this.modifications.reset(this._originalEntries);
   }
 
-  private void replaceEntryListContents(List<PlaylistEntry> src, List<PlaylistEntry> dest)
+  /**
+   * @return Version of the snapshot of the original entries
+   */
+  long getSnapshotVersion()
   {
-    dest.clear();
-    for (PlaylistEntry src1 : src)
+    return this.snapshotVersion;
+  }
+
+  private boolean equalsOriginalEntries()
+  {
+    if (_entries.size() != _originalEntries.size())
+    {
+      return false;
+    }
+    for (int i = 0; i < _entries.size(); ++i)
     {
-      dest.add((PlaylistEntry) src1.clone());
+      final PlaylistEntry entry = _entries.get(i);
+      final PlaylistEntry original = _originalEntries.get(i);
+      // Unchanged entries of the snapshot are equal without comparing paths
+      if ((entry != original || entry.isChangedSince(this.snapshotVersion)) && !entry.equalsOriginal(original, this.snapshotVersion))
+      {
+        return false;
+      }
     }
+    return true;
   }
 
   public int size()
@@ -400,8 +643,8 @@ public class Playlist
 
   public void updateModifiedStatus()
   {
-    // Run a full comparison against the original entry list we created when we were constructed
-    this.isModified = !_entries.equals(_originalEntries);
+    // Compare against the original entries, only comparing the locations of all entries if every position holds its original entry
+    this.isModified = this.modifications.isModified(this::equalsOriginalEntries);
 
     // if this playlist refers to a file on disk, and aren't a new file, make sure that file still exists...
     if (this.playlistPath != null && !isNew())
@@ -413,45 +656,86 @@ public class Playlist
     this.firePlaylistModified();
   }
 
+  /**
+   * Update the modified state and notify the listeners, deferred to the end of a batch update
+   */
   private void refreshStatus()
   {
-    _urlCount = 0;
-    _missingCount = 0;
-    _fixedCount = 0;
+    if (this.updateDepth.get() > 0)
+    {
+      this.updatePending.set(true);
+      return;
+    }
+    updateModifiedStatus();
+  }
 
-    for (PlaylistEntry entry : _entries)
+  /**
+   * Count the entries, after bulk changes of their state; single entries update the counters incrementally
+   */
+  private void countEntries()
+  {
+    this.counters.recount(this._entries);
+  }
+
+  /**
+   * Start a batch update: until the returned scope is closed, the modified state is not recomputed and the listeners are not notified.
+   * Batch updates may be nested; the playlist is refreshed once, when the outermost scope is closed.
+   *
+   * @return Scope to close when the batch update is done
+   */
+  public BatchUpdate beginUpdate()
+  {
+    this.updateDepth.incrementAndGet();
+    return new BatchUpdate();
+  }
+
+  /**
+   * Scope of a batch update, see {@link #beginUpdate()}
+   */
+  public class BatchUpdate implements AutoCloseable
+  {
+    private boolean closed;
+
+    private BatchUpdate()
     {
-      boolean entryIsUrl = entry.isURL();
-      if (entryIsUrl)
-      {
-        _urlCount++;
-      }
-      else if (!entry.isFound())
+    }
+
+    @Override
+    public void close()
+    {
+      if (this.closed)
       {
-        _missingCount++;
+        return;
       }
-      if (entry.isFixed())
+      this.closed = true;
+      if (updateDepth.decrementAndGet() == 0 && updatePending.getAndSet(false))
       {
-        _fixedCount++;
+        updateModifiedStatus();
       }
     }
-
-    updateModifiedStatus();
   }
 
   public int getFixedCount()
   {
-    return this._fixedCount;
+    return this.counters.getFixedCount();
   }
 
   public int getUrlCount()
   {
-    return this._urlCount;
+    return this.counters.getUrlCount();
   }
 
   public int getMissingCount()
   {
-    return this._missingCount;
+    return this.counters.getMissingCount();
+  }
+
+  /**
+   * @return Number of entries which existence has not been checked yet
+   */
+  public int getUnknownCount()
+  {
+    return this.counters.getUnknownCount();
   }
 
   public boolean isModified()
@@ -491,11 +775,14 @@ public class Playlist
   public void replace(int index, PlaylistEntry newEntry)
   {
 
-    if (!this._entries.get(index).isFound())
+    final PlaylistEntry oldEntry = this._entries.get(index);
+    if (!oldEntry.isFound())
     {
       newEntry.markFixedIfFound();
     }
-    this._entries.set(index, newEntry);
+    this.modifications.set(index, newEntry);
+    this.counters.remove(oldEntry);
+    this.counters.add(newEntry);
     refreshStatus();
   }
 
@@ -508,7 +795,7 @@ public class Playlist
       int rowIx = indexes[ix];
       if (rowIx != ceiling)
       {
-        Collections.swap(_entries, rowIx, rowIx - 1);
+        this.modifications.swap(rowIx, rowIx - 1);
         indexes[ix] = rowIx - 1;
       }
       else
@@ -528,7 +815,7 @@ public class Playlist
       int rowIx = indexes[ix];
       if (rowIx != floor)
       {
-        Collections.swap(this._entries, rowIx, rowIx + 1);
+        this.modifications.swap(rowIx, rowIx + 1);
         indexes[ix] = rowIx + 1;
       }
       else
@@ -542,6 +829,7 @@ public class Playlist
   public int addAllAt(int i, List<PlaylistEntry> entries)
   {
     this._entries.addAll(i, entries);
+    this.counters.addAll(entries);
     refreshStatus();
     return entries.size();
   }
@@ -552,6 +840,7 @@ public class Playlist
     if (newEntries != null)
     {
       this._entries.addAll(newEntries);
+      this.counters.addAll(newEntries);
       refreshStatus();
       return newEntries.size();
     }
@@ -567,6 +856,7 @@ public class Playlist
     if (newEntries != null)
     {
       this._entries.addAll(ix, newEntries);
+      this.counters.addAll(newEntries);
       refreshStatus();
       return newEntries.size();
     }
@@ -581,7 +871,10 @@ public class Playlist
     PlaylistEntry entry = this._entries.get(ix);
     if (entry instanceof FilePlaylistEntry)
     {
+      final int previousState = EntryCounters.stateOf(entry);
       ((FilePlaylistEntry) entry).setFileName(newName);
+      this.counters.changed(previousState, entry);
+      this.modifications.locationsChanged();
     }
     refreshStatus();
   }
@@ -591,139 +884,191 @@ public class Playlist
    *
    * @param mediaLibrary Media library used to reference existing media files
    * @param observer     Progress observer
+   * @return Positions of the repaired entries, in ascending order
    */
-  public List<PlaylistEntry> repair(IMediaLibrary mediaLibrary, IProgressObserver<String> observer)
+  public List<Integer> repair(IMediaLibrary mediaLibrary, IProgressObserver<String> observer)
   {
+    this.awaitStatus(observer);
     ProgressAdapter<String> progress = ProgressAdapter.make(observer);
     progress.setTotal(this._entries.size());
 
     final long start = System.currentTimeMillis();
+    final IMediaLibraryFileIndex fileIndex = mediaLibrary.getFileIndex();
+    final RepairMemory repairMemory = mediaLibrary.getRepairMemory();
+    final boolean caseInsensitiveExactMatching = this.playListOptions.getCaseInsensitiveExactMatching();
+    final boolean relativePaths = this.playListOptions.getSavePlaylistsWithRelativePaths();
 
-    List<PlaylistEntry> fixed = _entries.parallelStream().filter(entry -> {
-      if (observer.getCancelled())
+    List<Integer> fixed;
+    // Listeners are notified once, when the repair is done
+    try (BatchUpdate update = this.beginUpdate())
+    {
+      // Repair moved folders as a whole, before searching entries one by one
+      final Set<PlaylistEntry> movedEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+      movedEntries.addAll(new FolderMoveRepair(mediaLibrary, caseInsensitiveExactMatching, relativePaths).repair(this._entries));
+      if (!movedEntries.isEmpty())
       {
-        _logger.info(markerPlaylistRepair, "Observer cancelled, quit repair");
-        return false;
+        this.modifications.locationsChanged();
+        this.countEntries();
+        this.refreshStatus();
       }
-      progress.stepCompleted();
 
-      final boolean caseInsensitiveExactMatching = this.playListOptions.getCaseInsensitiveExactMatching();
-      final boolean relativePaths = this.playListOptions.getSavePlaylistsWithRelativePaths();
+      fixed = IntStream.range(0, _entries.size()).parallel().filter(position -> {
+        final PlaylistEntry entry = _entries.get(position);
+        if (observer.getCancelled())
+        {
+          _logger.info(markerPlaylistRepair, "Observer cancelled, quit repair");
+          return false;
+        }
+        progress.stepCompleted();
 
-      if (entry instanceof FilePlaylistEntry)
-      {
-        FilePlaylistEntry fileEntry = (FilePlaylistEntry) entry;
-        FilePlaylistEntry filePlaylistEntry = (FilePlaylistEntry) entry;
-        if (filePlaylistEntry.isFound())
+        if (movedEntries.contains(entry))
         {
-          _logger.debug(markerPlaylistRepair, "Found " + fileEntry.getTrackPath());
-          if (filePlaylistEntry.updatePathToMediaLibraryIfFoundOutside(mediaLibrary, caseInsensitiveExactMatching, relativePaths))
-          {
-            this.refreshStatus();
-            return true;
-          }
+          return true;
         }
-        else
+        if (entry instanceof FilePlaylistEntry)
         {
-          _logger.debug(markerPlaylistRepair, "Search " + fileEntry.getStatus() + " file entry " + fileEntry.getTrackPath());
-          filePlaylistEntry.findNewLocationFromFileList(mediaLibrary.getNestedMediaFiles(), caseInsensitiveExactMatching, relativePaths);
-          if (entry.isFound())
+          FilePlaylistEntry fileEntry = (FilePlaylistEntry) entry;
+          FilePlaylistEntry filePlaylistEntry = (FilePlaylistEntry) entry;
+          final int previousState = EntryCounters.stateOf(entry);
+          if (filePlaylistEntry.isFound())
+          {
+            _logger.debug(markerPlaylistRepair, "Found " + fileEntry.getTrackPath());
+            if (filePlaylistEntry.updatePathToMediaLibraryIfFoundOutside(mediaLibrary, caseInsensitiveExactMatching, relativePaths))
+            {
+              this.entryRepaired(previousState, entry);
+              return true;
+            }
+          }
+          else
           {
-            _logger.debug(markerPlaylistRepair, "Found & repaired file entry " + fileEntry.getTrackPath());
-            this.refreshStatus();
-            return true;
+            _logger.debug(markerPlaylistRepair, "Search " + fileEntry.getStatus() + " file entry " + fileEntry.getTrackPath());
+            filePlaylistEntry.findNewLocation(fileIndex, repairMemory, caseInsensitiveExactMatching, relativePaths);
+            if (entry.isFound())
+            {
+              _logger.debug(markerPlaylistRepair, "Found & repaired file entry " + fileEntry.getTrackPath());
+              this.entryRepaired(previousState, entry);
+              return true;
+            }
           }
         }
-      }
-      return false;
-    }).collect(Collectors.toList());
+        return false;
+      }).boxed().collect(Collectors.toList());
+    }
+
+    if (repairMemory != null)
+    {
+      repairMemory.writeOnBackground();
+    }
 
     long timeElapsed = System.currentTimeMillis() - start;
     _logger.info("Repaired playlist in " + timeElapsed + " ms.");
     return fixed;
   }
 
+  /**
+   * Update the state after repairing an entry, may be called concurrently
+   *
+   * @param previousState State of the entry before the repair
+   */
+  private void entryRepaired(int previousState, PlaylistEntry entry)
+  {
+    this.counters.changed(previousState, entry);
+    this.modifications.locationsChanged();
+    this.refreshStatus();
+  }
+
   /**
    * @param dirLists Media library used for repair
    * @param observer Progress observer
    */
   public void batchRepair(IMediaLibrary dirLists, IProgressObserver<String> observer)
   {
-    this.batchRepair(dirLists.getNestedMediaFiles(), dirLists, observer);
+    this.batchRepair(dirLists.getFileIndex(), dirLists, observer);
   }
 
   /**
    * Similar to repair, but doesn't return repaired row information
    *
-   * @param fileList Media library used for repair
-   * @param observer Progress observer
+   * @param fileIndex Filename index of the media library used for repair
+   * @param dirLists  Media library used for repair
+   * @param observer  Progress observer
    */
-  public void batchRepair(Collection<String> fileList, IMediaLibrary dirLists, IProgressObserver<String> observer)
+  public void batchRepair(IMediaLibraryFileIndex fileIndex, IMediaLibrary dirLists, IProgressObserver<String> observer)
   {
+    this.awaitStatus(observer);
     ProgressAdapter<String> progress = ProgressAdapter.make(observer);
     progress.setTotal(_entries.size());
 
     final boolean caseInsensitive = this.playListOptions.getCaseInsensitiveExactMatching();
     final boolean relativePaths = this.playListOptions.getSavePlaylistsWithRelativePaths();
-    boolean isModified = false;
-    for (PlaylistEntry entry : _entries)
+    // Listeners are notified once, when the repair is done
+    try (BatchUpdate update = this.beginUpdate())
     {
-      progress.stepCompleted();
-
-      if (entry instanceof FilePlaylistEntry)
+      boolean isModified = !new FolderMoveRepair(dirLists, caseInsensitive, relativePaths).repair(this._entries).isEmpty();
+      if (isModified)
       {
-        FilePlaylistEntry filePlaylistEntry = (FilePlaylistEntry) entry;
-        if (filePlaylistEntry.isFound())
+        countEntries();
+      }
+      for (PlaylistEntry entry : _entries)
+      {
+        progress.stepCompleted();
+
+        if (entry instanceof FilePlaylistEntry)
         {
-          if (filePlaylistEntry.updatePathToMediaLibraryIfFoundOutside(dirLists, caseInsensitive, relativePaths))
+          FilePlaylistEntry filePlaylistEntry = (FilePlaylistEntry) entry;
+          final int previousState = EntryCounters.stateOf(entry);
+          if (filePlaylistEntry.isFound())
           {
-            isModified = true;
+            if (filePlaylistEntry.updatePathToMediaLibraryIfFoundOutside(dirLists, caseInsensitive, relativePaths))
+            {
+              isModified = true;
+            }
           }
-        }
-        else
-        {
-          filePlaylistEntry.findNewLocationFromFileList(fileList, caseInsensitive, relativePaths);
-          if (!isModified && entry.isFound())
+          else
           {
-            isModified = true;
-          }
+            filePlaylistEntry.findNewLocation(fileIndex, dirLists.getRepairMemory(), caseInsensitive, relativePaths);
+            if (!isModified && entry.isFound())
+            {
+              isModified = true;
+            }
 
+          }
+          this.counters.changed(previousState, entry);
         }
       }
+
+      if (isModified)
+      {
+        this.modifications.locationsChanged();
+        refreshStatus();
+      }
     }
 
-    if (isModified)
+    if (dirLists.getRepairMemory() != null)
     {
-      refreshStatus();
+      dirLists.getRepairMemory().writeOnBackground();
     }
   }
 
-  public List<BatchMatchItem> findClosestMatches(Collection<String> libraryFiles, IProgressObserver<String> observer)
+  public List<BatchMatchItem> findClosestMatches(FileNameTokenIndex tokenIndex, IProgressObserver<String> observer)
   {
-    return findClosestMatches(this._entries, libraryFiles, observer);
+    return findClosestMatches(this._entries, tokenIndex, observer);
   }
 
-  public List<BatchMatchItem> findClosestMatches(List<PlaylistEntry> entries, Collection<String> libraryFiles, IProgressObserver<String> observer)
+  public List<BatchMatchItem> findClosestMatches(List<PlaylistEntry> entries, FileNameTokenIndex tokenIndex, IProgressObserver<String> observer)
   {
-    final long start = System.currentTimeMillis();
+    return findClosestMatches(entries, tokenIndex, null, observer);
+  }
 
-    final ProgressAdapter<String> progress = ProgressAdapter.make(observer);
-    progress.setTotal(entries.size());
+  /**
+   * @param cache Cache of matches shared with other playlists, may be null
+   */
+  public List<BatchMatchItem> findClosestMatches(List<PlaylistEntry> entries, FileNameTokenIndex tokenIndex, ClosestMatchCache cache, IProgressObserver<String> observer)
+  {
+    final long start = System.currentTimeMillis();
 
-    final List<BatchMatchItem> needToBeFixed = new ArrayList<>();
-
-    entries.parallelStream().forEach(entry -> {
-      if (observer.getCancelled()) return;
-      if (!entry.isURL() && !entry.isFound())
-      {
-        List<PotentialPlaylistEntryMatch> matches = entry.findClosestMatches(libraryFiles, null, this.playListOptions);
-        if (!matches.isEmpty())
-        {
-          needToBeFixed.add(new BatchMatchItem(entry, matches));
-        }
-      }
-      progress.stepCompleted();
-    });
+    final ClosestMatchFinder finder = new ClosestMatchFinder(tokenIndex, this.playListOptions, this.playListOptions.getClosestMatchParallelism(), cache);
+    final List<BatchMatchItem> needToBeFixed = finder.findClosestMatches(entries, observer);
 
     long timeElapsed = System.currentTimeMillis() - start;
     _logger.info("Resolved closest matches in " + timeElapsed + " ms.");
@@ -731,23 +1076,42 @@ public class Playlist
     return needToBeFixed;
   }
 
-  public List<BatchMatchItem> findClosestMatchesForSelectedEntries(List<Integer> rowList, Collection<String> libraryFiles, ProgressWorker<List<BatchMatchItem>, String> observer)
+  public List<BatchMatchItem> findClosestMatchesForSelectedEntries(List<Integer> rowList, FileNameTokenIndex tokenIndex, ProgressWorker<List<BatchMatchItem>, String> observer)
   {
     List<PlaylistEntry> entrySelection = rowList.stream().map(this._entries::get).collect(Collectors.toUnmodifiableList());
-    return findClosestMatches(entrySelection, libraryFiles, observer);
+    return findClosestMatches(entrySelection, tokenIndex, observer);
   }
 
-  public List<PlaylistEntry> applyClosestMatchSelections(List<BatchMatchItem> items)
+  public List<Integer> applyClosestMatchSelections(List<BatchMatchItem> items)
   {
-    List<PlaylistEntry> fixed = new ArrayList<>();
+    return applyClosestMatchSelections(items, null);
+  }
+
+  /**
+   * @param items        Closest matches, with the selected match per entry
+   * @param repairMemory Memory to remember the applied repairs in, may be null
+   * @return Positions of the repaired entries
+   */
+  public List<Integer> applyClosestMatchSelections(List<BatchMatchItem> items, RepairMemory repairMemory)
+  {
+    List<Integer> fixed = new ArrayList<>();
     for (BatchMatchItem item : items)
     {
       if (item.getSelectedIx() >= 0)
       {
         final PlaylistEntry playlistEntry = item.getEntry();
+        final int previousState;
         if (playlistEntry instanceof FilePlaylistEntry)
         {
-          ((FilePlaylistEntry) playlistEntry).update(item.getSelectedMatch().getTrack());
+          final FilePlaylistEntry filePlaylistEntry = (FilePlaylistEntry) playlistEntry;
+          previousState = EntryCounters.stateOf(playlistEntry);
+          final Path missingPath = filePlaylistEntry.getAbsolutePath();
+          filePlaylistEntry.update(item.getSelectedMatch().getTrack());
+          this.modifications.locationsChanged();
+          if (repairMemory != null)
+          {
+            repairMemory.remember(missingPath, filePlaylistEntry.getAbsolutePath());
+          }
         }
         else
         {
@@ -755,9 +1119,10 @@ public class Playlist
         }
         playlistEntry.recheckFoundStatus();
         playlistEntry.markFixedIfFound();
+        this.counters.changed(previousState, playlistEntry);
         if (playlistEntry.isFixed())
         {
-          fixed.add(playlistEntry);
+          fixed.add(this.indexOf(playlistEntry));
         }
       }
     }
@@ -765,6 +1130,10 @@ public class Playlist
     if (!fixed.isEmpty())
     {
       refreshStatus();
+      if (repairMemory != null)
+      {
+        repairMemory.writeOnBackground();
+      }
     }
     return fixed;
   }
@@ -774,21 +1143,32 @@ public class Playlist
     return _entries.get(index);
   }
 
+  /**
+   * Remove the entries at the given positions, in a single pass
+   *
+   * @param indexes Positions, sorted by this method
+   */
   public void remove(int[] indexes)
   {
     Arrays.sort(indexes);
-    for (int ix = indexes.length - 1; ix >= 0; ix--)
+    for (int ix = 0; ix < indexes.length; ix++)
     {
-      int rowIx = indexes[ix];
-      _entries.remove(rowIx);
+      if (ix == 0 || indexes[ix] != indexes[ix - 1])
+      {
+        this.counters.remove(_entries.get(indexes[ix]));
+      }
     }
+    _entries.removeIndexes(indexes);
     refreshStatus();
   }
 
   public int remove(PlaylistEntry entry)
   {
-    int result = _entries.indexOf(entry);
-    _entries.remove(entry);
+    int result = this.indexOf(entry);
+    if (result >= 0)
+    {
+      this.counters.remove(_entries.remove(result));
+    }
     refreshStatus();
     return result;
   }
@@ -880,24 +1260,8 @@ public class Playlist
 
   public int removeDuplicates()
   {
-    int removed = 0;
     Set<String> found = new HashSet<>();
-    for (int ix = 0; ix < _entries.size(); )
-    {
-      PlaylistEntry entry = _entries.get(ix);
-      String name = entry.getTrackFileName();
-      if (found.contains(name))
-      {
-        // duplicate found, remove
-        _entries.remove(ix);
-        removed++;
-      }
-      else
-      {
-        found.add(name);
-        ix++;
-      }
-    }
+    int removed = this.removeEntries(entry -> !found.add(entry.getTrackFileName()));
     if (removed > 0)
     {
       refreshStatus();
@@ -905,18 +1269,14 @@ public class Playlist
     return removed;
   }
 
+  /**
+   * Remove the missing entries; entries with a status still unknown are kept, see {@link #awaitStatus(IProgressObserver)}
+   *
+   * @return Number of removed entries
+   */
   public int removeMissing()
   {
-    int removed = 0;
-    for (int ix = _entries.size() - 1; ix >= 0; ix--)
-    {
-      PlaylistEntry entry = _entries.get(ix);
-      if (!entry.isURL() && !entry.isFound())
-      {
-        _entries.remove(ix);
-        removed++;
-      }
-    }
+    int removed = this.removeEntries(entry -> !entry.isURL() && !entry.isFound() && entry.getStatus() != PlaylistEntryStatus.Unknown);
     if (removed > 0)
     {
       refreshStatus();
@@ -924,6 +1284,25 @@ public class Playlist
     return removed;
   }
 
+  /**
+   * Remove the matching entries, in a single pass
+   *
+   * @return Number of removed entries
+   */
+  private int removeEntries(Predicate<PlaylistEntry> filter)
+  {
+    final int size = _entries.size();
+    _entries.removeIf(entry -> {
+      if (filter.test(entry))
+      {
+        this.counters.remove(entry);
+        return true;
+      }
+      return false;
+    });
+    return size - _entries.size();
+  }
+
   public void saveAs(Path destination, PlaylistFormat format, IProgressObserver<String> observer) throws Exception
   {
     // 2014.12.08 - JCaron - Need to make this assignment,
@@ -939,21 +1318,30 @@ public class Playlist
   {
     io.github.borewit.lizzy.playlist.Playlist playlist = new io.github.borewit.lizzy.playlist.Playlist();
     Sequence sequence = playlist.getRootSequence();
+    this.syncEntriesToMedia(sequence::addComponent);
+    this.specificPlaylist = LizzyPlaylistUtil.getProvider(format).toSpecificPlaylist(playlist);
+  }
+
+  /**
+   * Sync the location of every entry to its media
+   *
+   * @param mediaConsumer Receives the media, in playlist order
+   */
+  private void syncEntriesToMedia(Consumer<Media> mediaConsumer)
+  {
     this._entries.forEach(entry -> {
-      Media media = entry.getMedia();
       if (entry.isURL())
       {
-        media.getSource().setURI(((UriPlaylistEntry) entry).getURI());
+        mediaConsumer.accept(entry.toMedia(((UriPlaylistEntry) entry).getURI().toString()));
       }
       else
       {
         FilePlaylistEntry fileEntry = (FilePlaylistEntry) entry;
-        fileEntry.trackPath = normalizeTrackPath(fileEntry.trackPath);
-        media.getSource().setURL(fileEntry.trackPath.toString());
+        final Path trackPath = normalizeTrackPath(fileEntry.getTrackPath());
+        fileEntry.replaceTrackPath(trackPath);
+        mediaConsumer.accept(entry.toMedia(trackPath.toString()));
       }
-      sequence.addComponent(media);
     });
-    this.specificPlaylist = LizzyPlaylistUtil.getProvider(format).toSpecificPlaylist(playlist);
   }
 
   private Path normalizeTrackPath(Path trackPath)
@@ -984,23 +1372,41 @@ public class Playlist
 
   public final void save(PlaylistFormat format, IProgressObserver<String> observer) throws IOException
   {
-    this.syncEntriesToSpecificPlaylist(format);
+    final boolean streamXml = XmlPlaylistWriter.isSupported(format.name());
+    final List<Media> media = new ArrayList<>(this._entries.size());
+    if (streamXml)
+    {
+      // Written by the streaming writer, without building the Lizzy object model
+      this.syncEntriesToMedia(media::add);
+      this.specificPlaylist = LizzyPlaylistUtil.getProvider(format).toSpecificPlaylist(new io.github.borewit.lizzy.playlist.Playlist());
+    }
+    else
+    {
+      this.syncEntriesToSpecificPlaylist(format);
+    }
     _logger.info(String.format("Writing playlist to %s", this.playlistPath));
     // avoid resetting total if part of batch operation
 
     // Guess the future file length, to have progress indication
     long currentFileSize = Files.isRegularFile(this.playlistPath) ? Files.size(this.playlistPath) : this._entries.size() * 65L;
-    try (OutputStream os = Files.newOutputStream(this.playlistPath))
+    // Written to a temporary file replacing the playlist, a failing save leaves the playlist intact
+    try
     {
-      OutputStream observableOutputStream = observer == null ? os : new ObservableOutputStream(os, currentFileSize, observer);
-      try
-      {
-        this.specificPlaylist.writeTo(observableOutputStream);
-      }
-      catch (Exception e)
-      {
-        throw new IOException(String.format("Failed to save \"%s\"", this.playlistPath), e);
-      }
+      AtomicFileWriter.write(this.playlistPath, this.playListOptions.getSyncPlaylistsOnSave(), this.playListOptions.getPreservePlaylistAttributesOnSave(), os -> {
+        OutputStream observableOutputStream = observer == null ? os : new ObservableOutputStream(os, currentFileSize, observer);
+        if (streamXml)
+        {
+          XmlPlaylistWriter.write(observableOutputStream, format.name(), FilenameUtils.getBaseName(this.playlistPath.getFileName().toString()), media);
+        }
+        else
+        {
+          this.specificPlaylist.writeTo(observableOutputStream);
+        }
+      });
+    }
+    catch (IOException e)
+    {
+      throw new IOException(String.format("Failed to save \"%s\"", this.playlistPath), e);
     }
 
     resetInternalStateAfterSave(observer);
@@ -1026,7 +1432,8 @@ public class Playlist
       this.isModified = false;
       isUnsaved = true;
       _entries.clear();
-      _originalEntries.clear();
+      this.takeSnapshot();
+      this.countEntries();
     }
     else if (Files.exists(this.playlistPath))
     {
@@ -1034,7 +1441,11 @@ public class Playlist
     }
     else
     {
-      replaceEntryListContents(_originalEntries, _entries);
+      _originalEntries.forEach(entry -> entry.restoreOriginal(this.snapshotVersion));
+      _entries.clear();
+      _entries.addAll(_originalEntries);
+      this.modifications.locationsChanged();
+      this.countEntries();
     }
     refreshStatus();
   }
@@ -1052,8 +1463,37 @@ public class Playlist
     return path;
   }
 
-  public int indexOf(PlaylistEntry playlistEntry) {
-    return this._entries.indexOf(playlistEntry);
+  /**
+   * Find the position of an entry; entries of this playlist are found by identity, in constant time once the entries are numbered.
+   *
+   * @return Position of the entry, or else of the first equal entry, -1 if not found
+   */
+  public int indexOf(PlaylistEntry playlistEntry)
+  {
+    final int position = this.positionOf(playlistEntry);
+    return position >= 0 ? position : this._entries.indexOf(playlistEntry);
+  }
+
+  /**
+   * @return Position of the entry itself, -1 if not in this playlist
+   */
+  private int positionOf(PlaylistEntry entry)
+  {
+    if (!this.isAt(entry, entry.positionHint) && this.numberedWrites != this._entries.getWriteCount())
+    {
+      // Numbered from the end, so the first position of an entry added more than once wins
+      for (int i = this._entries.size() - 1; i >= 0; --i)
+      {
+        this._entries.get(i).positionHint = i;
+      }
+      this.numberedWrites = this._entries.getWriteCount();
+    }
+    return this.isAt(entry, entry.positionHint) ? entry.positionHint : -1;
+  }
+
+  private boolean isAt(PlaylistEntry entry, int position)
+  {
+    return position >= 0 && position < this._entries.size() && this._entries.get(position) == entry;
   }
 
 }
@@ -2,42 +2,42 @@ package listfix.model.playlists;
 
 import io.github.borewit.lizzy.content.Content;
 import io.github.borewit.lizzy.playlist.Media;
-import listfix.comparators.MatchedPlaylistEntryComparator;
 import listfix.io.IPlaylistOptions;
+import listfix.io.playlists.XmlMedia;
+import listfix.io.playlists.XmlTrackMetadata;
 import listfix.model.enums.PlaylistEntryStatus;
+import listfix.util.BoundedScoreHeap;
+import listfix.util.FileNameTokenIndex;
 import listfix.util.FileNameTokenizer;
 import listfix.view.support.IProgressObserver;
 import listfix.view.support.ProgressAdapter;
 
-import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Pattern;
 
 public abstract class PlaylistEntry implements Cloneable
 {
-  // logger
-  /**
-   * The list of folders we know don't exist.
-   */
-  public static List<String> NonExistentDirectories = new ArrayList<>();
-
-  // Status of this item.
-  protected PlaylistEntryStatus _status = PlaylistEntryStatus.Exists;
+  // Status of this item, may be resolved on a background thread.
+  protected volatile PlaylistEntryStatus _status = PlaylistEntryStatus.Exists;
 
   // Has this item been fixed?
   protected boolean _isFixed;
 
   // The file this entry belongs to.
   protected final Playlist playlist;
-  protected final Media media;
+  // Duration read from the playlist, null if unknown; the Lizzy media is only built when saving.
+  private Long duration;
+  // Metadata read from an XML playlist, like the title, null if none
+  private XmlTrackMetadata metadata;
+  // Media read by a Lizzy provider, reused when saving, so fields like the content type or length are kept; null if not kept
+  private Media media;
 
-  private static final Pattern APOS_PATTERN = Pattern.compile("'");
-  private static final Pattern CAMEL_CASE_PATTERN = Pattern.compile("(([a-z])([A-Z]))");
+  // Position in the playlist when last numbered, see Playlist.indexOf
+  int positionHint = -1;
 
   /**
    * Returns the _status.
@@ -52,12 +52,16 @@ public abstract class PlaylistEntry implements Cloneable
   protected PlaylistEntry(Playlist playlist, Media media)
   {
     this.playlist = playlist;
-    this.media = media;
+    this.duration = media == null ? null : media.getDuration();
+    this.metadata = media instanceof XmlMedia ? ((XmlMedia) media).getMetadata() : null;
   }
 
   protected void copyTo(PlaylistEntry target)
   {
     target._status = this._status;
+    target.duration = this.duration;
+    target.metadata = this.metadata;
+    // The media is not shared, saving sets its source
   }
 
   public void markFixedIfFound()
@@ -68,9 +72,24 @@ public abstract class PlaylistEntry implements Cloneable
     }
   }
 
-  public Media getMedia()
+  /**
+   * Build the Lizzy media of this entry, for saving
+   *
+   * @param source Location of the media
+   */
+  Media toMedia(String source)
   {
-    return this.media;
+    if (this.media != null)
+    {
+      this.media.getSource().setURL(source);
+      return this.media;
+    }
+    final Media media = this.metadata == null ? new Media(new Content(source)) : new XmlMedia(new Content(source), this.metadata);
+    if (this.duration != null)
+    {
+      media.setDuration(this.duration);
+    }
+    return media;
   }
 
   public abstract String getTrackFolder();
@@ -101,45 +120,46 @@ public abstract class PlaylistEntry implements Cloneable
 
   public abstract boolean isRelative();
 
-  private final MatchedPlaylistEntryComparator matchedPlaylistEntryComparator = new MatchedPlaylistEntryComparator();
-
-  public List<PotentialPlaylistEntryMatch> findClosestMatches(Collection<String> mediaFiles, IProgressObserver<String> observer, IPlaylistOptions playListOptions)
+  /**
+   * Search the media library for the files with the most similar names.
+   * Only the media files sharing at least one token with this entry are scored, all other files have a score of 0.
+   *
+   * @param tokenIndex      Token index of the media library files
+   * @param observer        Progress observer, may be null
+   * @param playListOptions Options, providing the ignored words and the maximum number of results
+   * @return Best matches, null if cancelled
+   */
+  public List<PotentialPlaylistEntryMatch> findClosestMatches(FileNameTokenIndex tokenIndex, IProgressObserver<String> observer, IPlaylistOptions playListOptions)
   {
-    List<PotentialPlaylistEntryMatch> matches = new ArrayList<>();
+    FileNameTokenizer tokenizer = new FileNameTokenizer(playListOptions);
+
+    String entryName = FileNameTokenizer.normalizeFileName(getTrackFileName());
+    int[] entryTokenCounts = tokenIndex.getTokenCounts(tokenizer.splitFileName(entryName));
+    long entryLengthScore = tokenIndex.getMaxLengthScore(entryTokenCounts);
+    int[] candidates = tokenIndex.findCandidates(entryTokenCounts);
+
     ProgressAdapter<String> progress = new ProgressAdapter<>(observer);
-    progress.setTotal(mediaFiles.size());
+    progress.setTotal(candidates.length);
 
-    // Remove apostrophes and addAt spaces between lowercase and capital letters so we can tokenize by camel case.
-    String entryName = CAMEL_CASE_PATTERN.matcher(APOS_PATTERN.matcher(getTrackFileName()).replaceAll("")).replaceAll("$2 $3").toLowerCase();
-    File mediaFile;
-    int score;
-    for (String mediaFilePath : mediaFiles)
+    // Only keep the top X highest-rated matches (default is 20), anything more than that has a good chance of using too much memory
+    // on systems w/ huge media libraries, too little RAM, or when fixing excessively large playlists (the things you have to worry
+    // about when people run your software on ancient PCs in Africa =])
+    BoundedScoreHeap topMatches = new BoundedScoreHeap(playListOptions.getMaxClosestResults());
+    for (int candidate : candidates)
     {
       if (observer == null || !observer.getCancelled())
       {
         progress.stepCompleted();
 
-        mediaFile = new File(mediaFilePath);
-
-        // Remove apostrophes and addAt spaces between lowercase and capital letters so we can tokenize by camel case.
-        score = new FileNameTokenizer(playListOptions).score(entryName, CAMEL_CASE_PATTERN.matcher(APOS_PATTERN.matcher(mediaFile.getName()).replaceAll("")).replaceAll("$2 $3").toLowerCase());
+        // Skip scoring candidates which cannot beat the lowest kept match
+        if (topMatches.isFull() && tokenIndex.getMaxScore(entryTokenCounts, entryLengthScore, candidate) <= topMatches.getMinScore())
+        {
+          continue;
+        }
+        int score = tokenIndex.score(entryTokenCounts, candidate);
         if (score > 0)
         {
-          // Only keep the top X highest-rated matches (default is 20), anything more than that has a good chance of using too much memory
-          // on systems w/ huge media libraries, too little RAM, or when fixing excessively large playlists (the things you have to worry
-          // about when people run your software on ancient PCs in Africa =])
-          if (matches.size() < playListOptions.getMaxClosestResults())
-          {
-            matches.add(new PotentialPlaylistEntryMatch(mediaFile.toPath(), score));
-          }
-          else
-          {
-            if (matches.get(playListOptions.getMaxClosestResults() - 1).getScore() < score)
-            {
-              matches.set(playListOptions.getMaxClosestResults() - 1, new PotentialPlaylistEntryMatch(mediaFile.toPath(), score));
-            }
-          }
-          matches.sort(matchedPlaylistEntryComparator);
+          topMatches.offer(candidate, score);
         }
       }
       else
@@ -147,13 +167,65 @@ public abstract class PlaylistEntry implements Cloneable
         return null;
       }
     }
+
+    int[] ranked = topMatches.drain();
+    List<PotentialPlaylistEntryMatch> matches = new ArrayList<>(ranked.length / 2);
+    for (int i = 0; i < ranked.length; i += 2)
+    {
+      matches.add(new PotentialPlaylistEntryMatch(Path.of(tokenIndex.getMediaFile(ranked[i])), ranked[i + 1]));
+    }
     return matches;
   }
 
+  /**
+   * @param snapshotVersion Version of the snapshot of the original entries, see {@link Playlist#getSnapshotVersion()}
+   * @return True if the location of this entry changed since that snapshot
+   */
+  boolean isChangedSince(long snapshotVersion)
+  {
+    return false;
+  }
+
+  /**
+   * @param original        Entry of the snapshot of the original entries
+   * @param snapshotVersion Version of that snapshot
+   * @return True if this entry equals the original entry, as it was when the snapshot was taken
+   */
+  boolean equalsOriginal(PlaylistEntry original, long snapshotVersion)
+  {
+    return this.equals(original);
+  }
+
+  /**
+   * Undo the changes of the location of this entry since the snapshot
+   */
+  void restoreOriginal(long snapshotVersion)
+  {
+  }
+
   @Override
   public abstract Object clone();
 
   public static PlaylistEntry makePlaylistEntry(Playlist playlist, Media media)
+  {
+    return makePlaylistEntry(playlist, media, true, true);
+  }
+
+  /**
+   * @param resolveStatus Check the existence of a file entry now; otherwise {@link FilePlaylistEntry#resolveStatus()} has to be called
+   * @param keepMedia     Keep the media to save it again; otherwise only its source, duration and XML metadata are kept
+   */
+  static PlaylistEntry makePlaylistEntry(Playlist playlist, Media media, boolean resolveStatus, boolean keepMedia)
+  {
+    final PlaylistEntry entry = newPlaylistEntry(playlist, media, resolveStatus);
+    if (keepMedia)
+    {
+      entry.media = media;
+    }
+    return entry;
+  }
+
+  private static PlaylistEntry newPlaylistEntry(Playlist playlist, Media media, boolean resolveStatus)
   {
     Content content = media.getSource();
     try
@@ -168,6 +240,6 @@ public abstract class PlaylistEntry implements Cloneable
     {
       // ignore
     }
-    return new FilePlaylistEntry(playlist, media);
+    return new FilePlaylistEntry(playlist, media, resolveStatus);
   }
 }
@@ -18,4 +18,12 @@ public class PlaylistFactory
   {
     return Playlist.load(playlistPath, observer, playListOptions);
   }
+
+  /**
+   * @param deferStatus Leave the status of the entries of a large playlist unknown, see {@link Playlist#resolveStatusInBackground}
+   */
+  public static Playlist getPlaylist(Path playlistPath, IProgressObserver<String> observer, IPlaylistOptions playListOptions, boolean deferStatus) throws IOException
+  {
+    return Playlist.load(playlistPath, observer, playListOptions, deferStatus);
+  }
 }
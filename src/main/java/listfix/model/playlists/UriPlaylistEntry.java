@@ -24,6 +24,12 @@ public class UriPlaylistEntry extends PlaylistEntry
     }
   }
 
+  private UriPlaylistEntry(UriPlaylistEntry source)
+  {
+    super(source.playlist, null);
+    this.uri = source.uri;
+  }
+
   public URI getURI()
   {
     return this.uri;
@@ -32,7 +38,7 @@ public class UriPlaylistEntry extends PlaylistEntry
   @Override
   public UriPlaylistEntry clone()
   {
-    UriPlaylistEntry urlPlayListEntry = new UriPlaylistEntry(this.playlist, this.media);
+    UriPlaylistEntry urlPlayListEntry = new UriPlaylistEntry(this);
     this.copyTo(urlPlayListEntry);
     return urlPlayListEntry;
   }
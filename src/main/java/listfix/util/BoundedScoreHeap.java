@@ -0,0 +1,124 @@
+package listfix.util;
+
+/**
+ * Keeps the ids with the highest scores, up to a fixed capacity, as a min-heap of primitive (score, id) keys.
+ * On equal scores, the lowest id ranks highest, so the result does not depend on the order of offering.
+ */
+public class BoundedScoreHeap
+{
+  private final long[] heap;
+  private int size;
+
+  /**
+   * @param capacity Maximum number of ids to keep
+   */
+  public BoundedScoreHeap(int capacity)
+  {
+    this.heap = new long[Math.max(0, capacity)];
+  }
+
+  private static long key(int id, int score)
+  {
+    // Higher scores, and lower ids on equal scores, get higher keys
+    return ((long) score << 32) | (Integer.MAX_VALUE - id);
+  }
+
+  private static int id(long key)
+  {
+    return Integer.MAX_VALUE - (int) key;
+  }
+
+  private static int score(long key)
+  {
+    return (int) (key >> 32);
+  }
+
+  public int size()
+  {
+    return this.size;
+  }
+
+  public boolean isFull()
+  {
+    return this.size == this.heap.length;
+  }
+
+  /**
+   * @return Lowest score kept, which a score has to exceed to be kept once the heap is full
+   */
+  public int getMinScore()
+  {
+    return score(this.heap[0]);
+  }
+
+  /**
+   * @param id    Non-negative id
+   * @param score Score of the id
+   * @return True if the id is kept, possibly evicting the lowest ranked id
+   */
+  public boolean offer(int id, int score)
+  {
+    final long key = key(id, score);
+    if (this.size < this.heap.length)
+    {
+      int i = this.size++;
+      while (i > 0)
+      {
+        final int parent = (i - 1) >>> 1;
+        if (this.heap[parent] <= key)
+        {
+          break;
+        }
+        this.heap[i] = this.heap[parent];
+        i = parent;
+      }
+      this.heap[i] = key;
+      return true;
+    }
+    if (this.size == 0 || key <= this.heap[0])
+    {
+      return false;
+    }
+    siftDown(key, this.size);
+    return true;
+  }
+
+  private void siftDown(long key, int size)
+  {
+    int i = 0;
+    int child;
+    while ((child = 2 * i + 1) < size)
+    {
+      if (child + 1 < size && this.heap[child + 1] < this.heap[child])
+      {
+        ++child;
+      }
+      if (key <= this.heap[child])
+      {
+        break;
+      }
+      this.heap[i] = this.heap[child];
+      i = child;
+    }
+    this.heap[i] = key;
+  }
+
+  /**
+   * Empties the heap.
+   *
+   * @return Pairs of (id, score), ordered from the highest to the lowest rank
+   */
+  public int[] drain()
+  {
+    final int[] result = new int[2 * this.size];
+    while (this.size > 0)
+    {
+      final long top = this.heap[0];
+      --this.size;
+      siftDown(this.heap[this.size], this.size);
+      result[2 * this.size] = id(top);
+      result[2 * this.size + 1] = score(top);
+    }
+    return result;
+  }
+}
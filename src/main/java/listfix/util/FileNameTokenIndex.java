@@ -0,0 +1,194 @@
+package listfix.util;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inverted index from the tokens of the media file names to the media files containing them.
+ * Built once per media library snapshot, so a closest match search only needs to score the files sharing a token with
+ * the playlist entry; any other file scores 0 with {@link FileNameTokenizer#score(String, String)}.
+ */
+public class FileNameTokenIndex
+{
+  private static final int[] NO_FILES = new int[0];
+  private static final AtomicLong versions = new AtomicLong();
+
+  private final long version = versions.incrementAndGet();
+  private final String[] mediaFiles;
+  private final TokenDictionary dictionary = new TokenDictionary();
+  /**
+   * File ids by token id
+   */
+  private final int[][] postings;
+  /**
+   * Token counts of all files, as used by {@link TokenScorer}, file id i occupies tokenCounts[offsets[i]] until tokenCounts[offsets[i + 1]]
+   */
+  private final int[] tokenCounts;
+  private final int[] offsets;
+
+  /**
+   * @param mediaFiles Media library files (absolute paths); the iteration order determines the file ids
+   */
+  public FileNameTokenIndex(Collection<String> mediaFiles)
+  {
+    this.mediaFiles = mediaFiles.toArray(new String[0]);
+    this.offsets = new int[this.mediaFiles.length + 1];
+    final IntList tokenCountList = new IntList();
+    final List<IntList> builders = new ArrayList<>();
+    for (int id = 0; id < this.mediaFiles.length; ++id)
+    {
+      final String fileName = FileNameTokenizer.normalizeFileName(new File(this.mediaFiles[id]).getName());
+      final int[] fileTokenCounts = this.dictionary.toTokenCounts(FileNameTokenizer.splitFileName(fileName, Collections.emptySet()), true);
+      for (int i = 0; i < fileTokenCounts.length; i += 2)
+      {
+        final int tokenId = fileTokenCounts[i];
+        if (tokenId == builders.size())
+        {
+          builders.add(new IntList());
+        }
+        builders.get(tokenId).add(id);
+      }
+      tokenCountList.addAll(fileTokenCounts);
+      this.offsets[id + 1] = tokenCountList.size;
+    }
+    this.tokenCounts = tokenCountList.toArray();
+    this.postings = new int[builders.size()][];
+    for (int tokenId = 0; tokenId < this.postings.length; ++tokenId)
+    {
+      this.postings[tokenId] = builders.get(tokenId).toArray();
+    }
+  }
+
+  /**
+   * @return Version of this index, unique per media library snapshot it was built from
+   */
+  public long getVersion()
+  {
+    return this.version;
+  }
+
+  /**
+   * @return Number of indexed media files
+   */
+  public int size()
+  {
+    return this.mediaFiles.length;
+  }
+
+  /**
+   * @param id File id
+   * @return Path of the media file
+   */
+  public String getMediaFile(int id)
+  {
+    return this.mediaFiles[id];
+  }
+
+  /**
+   * Convert the tokens of a playlist entry to token counts of this index.
+   * Tokens not occurring in any media file are omitted, as these do not contribute to any score.
+   *
+   * @param tokens Tokens, as returned by {@link FileNameTokenizer#splitFileName(String)}
+   * @return Token counts, to be passed to {@link #findCandidates(int[])} and {@link #score(int[], int)}
+   */
+  public int[] getTokenCounts(List<String> tokens)
+  {
+    return this.dictionary.toTokenCounts(tokens, false);
+  }
+
+  /**
+   * Find the media files containing at least one of the given tokens
+   *
+   * @param entryTokenCounts Token counts, as returned by {@link #getTokenCounts(List)}
+   * @return File ids in ascending order, which is the iteration order of the media files the index was built from; must not be modified
+   */
+  public int[] findCandidates(int[] entryTokenCounts)
+  {
+    if (entryTokenCounts.length == 2)
+    {
+      return this.postings[entryTokenCounts[0]];
+    }
+    if (entryTokenCounts.length == 0)
+    {
+      return NO_FILES;
+    }
+    final BitSet candidates = new BitSet(this.mediaFiles.length);
+    for (int i = 0; i < entryTokenCounts.length; i += 2)
+    {
+      for (int id : this.postings[entryTokenCounts[i]])
+      {
+        candidates.set(id);
+      }
+    }
+    return candidates.stream().toArray();
+  }
+
+  /**
+   * Upper bound of the score of a media file, cheaper to compute than the score itself
+   *
+   * @param entryTokenCounts Token counts, as returned by {@link #getTokenCounts(List)}
+   * @param entryLengthScore {@link #getMaxLengthScore(int[])} of the entry tokens
+   * @param id               File id
+   * @return Upper bound of {@link #score(int[], int)}
+   */
+  public long getMaxScore(int[] entryTokenCounts, long entryLengthScore, int id)
+  {
+    return TokenScorer.maxScore(entryTokenCounts.length / 2, entryLengthScore, (this.offsets[id + 1] - this.offsets[id]) / 2);
+  }
+
+  /**
+   * @param entryTokenCounts Token counts, as returned by {@link #getTokenCounts(List)}
+   * @return Maximum length part of the score of the entry tokens, to be passed to {@link #getMaxScore(int[], long, int)}
+   */
+  public long getMaxLengthScore(int[] entryTokenCounts)
+  {
+    return TokenScorer.maxLengthScore(entryTokenCounts, this.dictionary.getTokenLengths());
+  }
+
+  /**
+   * Score a media file, without any allocation; equal to {@link FileNameTokenizer#score(String, String)} of the file names.
+   *
+   * @param entryTokenCounts Token counts, as returned by {@link #getTokenCounts(List)}
+   * @param id               File id
+   * @return Score, 0 if the file does not share any token
+   */
+  public int score(int[] entryTokenCounts, int id)
+  {
+    return TokenScorer.score(entryTokenCounts, 0, entryTokenCounts.length,
+      this.tokenCounts, this.offsets[id], this.offsets[id + 1], this.dictionary.getTokenLengths());
+  }
+
+  /**
+   * Growable list of ints
+   */
+  private static final class IntList
+  {
+    private int[] values = new int[4];
+    private int size;
+
+    private void add(int value)
+    {
+      if (this.size == this.values.length)
+      {
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      }
+      this.values[this.size++] = value;
+    }
+
+    private void addAll(int[] values)
+    {
+      if (this.size + values.length > this.values.length)
+      {
+        this.values = Arrays.copyOf(this.values, Math.max(this.size * 2, this.size + values.length));
+      }
+      System.arraycopy(values, 0, this.values, this.size, values.length);
+      this.size += values.length;
+    }
+
+    private int[] toArray()
+    {
+      return Arrays.copyOf(this.values, this.size);
+    }
+  }
+}
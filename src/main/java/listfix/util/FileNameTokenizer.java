@@ -4,28 +4,61 @@ import listfix.io.IPlaylistOptions;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.regex.Pattern;
 
 
 public class FileNameTokenizer
 {
   private static final String separators = " .-_[]{},/\\`'~!@#$%^\"&*()+=|:;";
-  public List<String> ignoreList = new ArrayList<>();
+  private static final boolean[] SEPARATOR_TABLE = new boolean[128];
+  private static final Pattern APOS_PATTERN = Pattern.compile("'");
+  private static final Pattern CAMEL_CASE_PATTERN = Pattern.compile("(([a-z])([A-Z]))");
+  private final Set<String> ignoredWords = new HashSet<>();
+
+  static
+  {
+    for (char c : separators.toCharArray())
+    {
+      SEPARATOR_TABLE[c] = true;
+    }
+  }
 
   public FileNameTokenizer(IPlaylistOptions filePathOptions)
   {
     StringTokenizer tokenMaker = new StringTokenizer(filePathOptions.getIgnoredSmallWords(), " ,;|");
     while (tokenMaker.hasMoreTokens())
     {
-      ignoreList.add(tokenMaker.nextToken());
+      ignoredWords.add(tokenMaker.nextToken());
     }
   }
 
+  /**
+   * Score the similarity of two file names, see {@link TokenScorer}.
+   * For scoring against many file names, use a {@link FileNameTokenIndex}, which tokenizes each file name only once.
+   *
+   * @return Score, 0 if the file names do not share any token
+   */
   public int score(String filename1, String filename2)
   {
-    return scoreMatchingTokens(splitFileName(filename1), splitFileName(filename2));
+    TokenDictionary dictionary = new TokenDictionary();
+    int[] tokens1 = dictionary.toTokenCounts(splitFileName(filename1), true);
+    int[] tokens2 = dictionary.toTokenCounts(splitFileName(filename2), false);
+    return TokenScorer.score(tokens1, tokens2, dictionary.getTokenLengths());
+  }
+
+  /**
+   * Remove apostrophes and add spaces between lowercase and capital letters so we can tokenize by camel case.
+   *
+   * @param fileName File name
+   * @return Lowercase file name, to be passed to {@link #score(String, String)}
+   */
+  public static String normalizeFileName(String fileName)
+  {
+    return CAMEL_CASE_PATTERN.matcher(APOS_PATTERN.matcher(fileName).replaceAll("")).replaceAll("$2 $3").toLowerCase();
   }
 
 
@@ -56,77 +89,57 @@ public class FileNameTokenizer
       return "";
   }
 
-  private List<String> splitFileName(String fileName)
+  /**
+   * Split a file name, without its extension, in the tokens used for scoring, excluding the ignored words.
+   */
+  public List<String> splitFileName(String fileName)
   {
-    fileName = removeExtensionFromFileName(fileName);
-    StringTokenizer tokenMaker = new StringTokenizer(fileName, separators);
-    int tokenCount = tokenMaker.countTokens();
-    List<String> result = new ArrayList<>();
-    String token = "";
-    for (int i = 0; i < tokenCount; i++)
-    {
-      token = tokenMaker.nextToken();
-      if (token.length() > 1 && !ignoreList.contains(token))
-      {
-        result.add(token);
-      }
-    }
-    return result;
+    return splitFileName(fileName, this.ignoredWords);
   }
 
-  private int scoreMatchingTokens(List<String> array1, List<String> array2)
+  /**
+   * Split a file name, without its extension, in tokens.
+   *
+   * @param fileName     File name
+   * @param ignoredWords Tokens to exclude
+   * @return Tokens of at least 2 characters
+   */
+  static List<String> splitFileName(String fileName, Set<String> ignoredWords)
   {
-    HashMap<String, Integer> array1Counts = new HashMap<>();
-    HashMap<String, Integer> array2Counts = new HashMap<>();
-
-    for (String t : array1)
+    int end = fileName.lastIndexOf('.');
+    if (end < 0)
     {
-      if (array1Counts.containsKey(t))
-      {
-        array1Counts.put(t, array1Counts.get(t) + 1);
-      }
-      else
-      {
-        array1Counts.put(t, 1);
-      }
+      end = fileName.length();
     }
-
-    for (String t : array2)
+    List<String> result = new ArrayList<>();
+    int tokenStart = -1;
+    for (int i = 0; i <= end; ++i)
     {
-      if (array1Counts.containsKey(t))
+      if (i == end || isSeparator(fileName.charAt(i)))
       {
-        if (array2Counts.containsKey(t))
+        if (tokenStart >= 0)
         {
-          array2Counts.put(t, array2Counts.get(t) + 1);
-        }
-        else
-        {
-          array2Counts.put(t, 1);
+          if (i - tokenStart > 1)
+          {
+            String token = fileName.substring(tokenStart, i);
+            if (!ignoredWords.contains(token))
+            {
+              result.add(token);
+            }
+          }
+          tokenStart = -1;
         }
       }
-    }
-
-    int result = 0;
-    String token;
-    if (array2Counts.keySet().size() > 0)
-    {
-      result = array2Counts.keySet().size() == 1 ? 1 : (int) Math.pow(3.0, array2Counts.keySet().size());
-      for (String s : array2Counts.keySet())
+      else if (tokenStart < 0)
       {
-        token = s;
-        int array1Count = array1Counts.get(token);
-        int array2Count = array2Counts.get(token);
-        if (array1Count < array2Count)
-        {
-          result = result + ((token.length() - 1) * array1Count);
-        }
-        else
-        {
-          result = result + ((token.length() - 1) * array2Count);
-        }
+        tokenStart = i;
       }
     }
-
     return result;
   }
+
+  private static boolean isSeparator(char c)
+  {
+    return c < SEPARATOR_TABLE.length && SEPARATOR_TABLE[c];
+  }
 }
@@ -0,0 +1,274 @@
+package listfix.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Array backed list, of which an immutable snapshot can be taken in constant time.
+ * The snapshot shares the array with the list; the first modification after taking a snapshot copies the array.
+ *
+ * @param <E> Element type
+ */
+public class SnapshotList<E> extends AbstractList<E> implements RandomAccess
+{
+  private static final Object[] EMPTY = new Object[0];
+
+  private Object[] elements = EMPTY;
+  private int size;
+  private boolean shared;
+  private long writeCount;
+
+  /**
+   * @return Immutable list of the current elements, not affected by later modifications of this list
+   */
+  public List<E> snapshot()
+  {
+    this.shared = true;
+    return new Snapshot<>(this.elements, this.size);
+  }
+
+  /**
+   * @return Number of modifications so far, including replacing elements
+   */
+  public long getWriteCount()
+  {
+    return this.writeCount;
+  }
+
+  /**
+   * Prepare the array for a modification
+   *
+   * @param minCapacity Required capacity
+   */
+  private void beforeWrite(int minCapacity)
+  {
+    ++this.writeCount;
+    if (this.shared || minCapacity > this.elements.length)
+    {
+      final int capacity = minCapacity > this.elements.length ? Math.max(minCapacity, this.elements.length + (this.elements.length >> 1) + 1) : this.elements.length;
+      this.elements = Arrays.copyOf(this.elements, capacity);
+      this.shared = false;
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E get(int index)
+  {
+    checkIndex(index, this.size);
+    return (E) this.elements[index];
+  }
+
+  @Override
+  public int size()
+  {
+    return this.size;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E set(int index, E element)
+  {
+    checkIndex(index, this.size);
+    this.beforeWrite(this.size);
+    final E previous = (E) this.elements[index];
+    this.elements[index] = element;
+    return previous;
+  }
+
+  @Override
+  public void add(int index, E element)
+  {
+    checkIndex(index, this.size + 1);
+    ++this.modCount;
+    this.beforeWrite(this.size + 1);
+    System.arraycopy(this.elements, index, this.elements, index + 1, this.size - index);
+    this.elements[index] = element;
+    ++this.size;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends E> collection)
+  {
+    return this.addAll(this.size, collection);
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends E> collection)
+  {
+    checkIndex(index, this.size + 1);
+    final Object[] added = collection.toArray();
+    if (added.length == 0)
+    {
+      return false;
+    }
+    ++this.modCount;
+    this.beforeWrite(this.size + added.length);
+    System.arraycopy(this.elements, index, this.elements, index + added.length, this.size - index);
+    System.arraycopy(added, 0, this.elements, index, added.length);
+    this.size += added.length;
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E remove(int index)
+  {
+    checkIndex(index, this.size);
+    ++this.modCount;
+    this.beforeWrite(this.size);
+    final E removed = (E) this.elements[index];
+    System.arraycopy(this.elements, index + 1, this.elements, index, this.size - index - 1);
+    this.elements[--this.size] = null;
+    return removed;
+  }
+
+  /**
+   * Remove the elements at the given positions, in a single pass
+   *
+   * @param sortedIndexes Positions in ascending order
+   * @return Number of removed elements
+   */
+  public int removeIndexes(int[] sortedIndexes)
+  {
+    if (sortedIndexes.length == 0)
+    {
+      return 0;
+    }
+    for (int index : sortedIndexes)
+    {
+      checkIndex(index, this.size);
+    }
+    ++this.modCount;
+    this.beforeWrite(this.size);
+    int target = sortedIndexes[0];
+    int next = 0;
+    for (int source = sortedIndexes[0]; source < this.size; ++source)
+    {
+      if (next < sortedIndexes.length && sortedIndexes[next] == source)
+      {
+        // Skip repeated positions too
+        while (next < sortedIndexes.length && sortedIndexes[next] == source)
+        {
+          ++next;
+        }
+        continue;
+      }
+      this.elements[target++] = this.elements[source];
+    }
+    return this.truncate(target);
+  }
+
+  /**
+   * Remove the matching elements, in a single pass
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean removeIf(Predicate<? super E> filter)
+  {
+    int first = 0;
+    while (first < this.size && !filter.test((E) this.elements[first]))
+    {
+      ++first;
+    }
+    if (first == this.size)
+    {
+      return false;
+    }
+    ++this.modCount;
+    this.beforeWrite(this.size);
+    int target = first;
+    for (int source = first + 1; source < this.size; ++source)
+    {
+      final E element = (E) this.elements[source];
+      if (!filter.test(element))
+      {
+        this.elements[target++] = element;
+      }
+    }
+    this.truncate(target);
+    return true;
+  }
+
+  /**
+   * @return Number of elements removed from the end
+   */
+  private int truncate(int newSize)
+  {
+    final int removed = this.size - newSize;
+    Arrays.fill(this.elements, newSize, this.size, null);
+    this.size = newSize;
+    return removed;
+  }
+
+  @Override
+  public void clear()
+  {
+    ++this.modCount;
+    ++this.writeCount;
+    if (this.shared)
+    {
+      this.elements = EMPTY;
+      this.shared = false;
+    }
+    else
+    {
+      Arrays.fill(this.elements, 0, this.size, null);
+    }
+    this.size = 0;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void sort(Comparator<? super E> comparator)
+  {
+    this.beforeWrite(this.size);
+    Arrays.sort((E[]) this.elements, 0, this.size, comparator);
+    ++this.modCount;
+  }
+
+  @Override
+  public Object[] toArray()
+  {
+    return Arrays.copyOf(this.elements, this.size);
+  }
+
+  private static void checkIndex(int index, int bound)
+  {
+    if (index < 0 || index >= bound)
+    {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + bound);
+    }
+  }
+
+  private static class Snapshot<E> extends AbstractList<E> implements RandomAccess
+  {
+    private final Object[] elements;
+    private final int size;
+
+    private Snapshot(Object[] elements, int size)
+    {
+      this.elements = elements;
+      this.size = size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index)
+    {
+      checkIndex(index, this.size);
+      return (E) this.elements[index];
+    }
+
+    @Override
+    public int size()
+    {
+      return this.size;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package listfix.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps file name tokens to int ids, so tokenized file names can be stored and compared as primitive arrays.
+ * Not thread-safe while tokens are being added.
+ */
+public class TokenDictionary
+{
+  private static final int[] NO_TOKENS = new int[0];
+
+  private final Map<String, Integer> ids = new HashMap<>();
+  private int[] lengths = new int[64];
+
+  /**
+   * @return Id of the token, adding it if not yet in the dictionary
+   */
+  public int add(String token)
+  {
+    Integer id = this.ids.get(token);
+    if (id == null)
+    {
+      id = this.ids.size();
+      this.ids.put(token, id);
+      if (id == this.lengths.length)
+      {
+        this.lengths = Arrays.copyOf(this.lengths, id * 2);
+      }
+      this.lengths[id] = token.length();
+    }
+    return id;
+  }
+
+  /**
+   * @return Id of the token, -1 if the token is not in the dictionary
+   */
+  public int find(String token)
+  {
+    final Integer id = this.ids.get(token);
+    return id == null ? -1 : id;
+  }
+
+  public int size()
+  {
+    return this.ids.size();
+  }
+
+  /**
+   * @return Token length by token id, used for scoring
+   */
+  int[] getTokenLengths()
+  {
+    return this.lengths;
+  }
+
+  /**
+   * Convert tokens to an array of (token id, occurrence count) pairs, sorted on token id, as used by {@link TokenScorer}.
+   *
+   * @param tokens Tokens of a file name
+   * @param add    Add unknown tokens to the dictionary; if false, unknown tokens are omitted,
+   *               which does not affect the score against any file name tokenized with this dictionary
+   * @return Token counts
+   */
+  public int[] toTokenCounts(List<String> tokens, boolean add)
+  {
+    if (tokens.isEmpty())
+    {
+      return NO_TOKENS;
+    }
+    final int[] tokenIds = new int[tokens.size()];
+    int count = 0;
+    for (String token : tokens)
+    {
+      final int id = add ? this.add(token) : this.find(token);
+      if (id >= 0)
+      {
+        tokenIds[count++] = id;
+      }
+    }
+    Arrays.sort(tokenIds, 0, count);
+
+    int distinct = 0;
+    for (int i = 0; i < count; ++i)
+    {
+      if (i == 0 || tokenIds[i] != tokenIds[i - 1])
+      {
+        ++distinct;
+      }
+    }
+    final int[] tokenCounts = new int[2 * distinct];
+    int pair = -2;
+    for (int i = 0; i < count; ++i)
+    {
+      if (i == 0 || tokenIds[i] != tokenIds[i - 1])
+      {
+        pair += 2;
+        tokenCounts[pair] = tokenIds[i];
+      }
+      ++tokenCounts[pair + 1];
+    }
+    return tokenCounts;
+  }
+}
@@ -0,0 +1,101 @@
+package listfix.util;
+
+/**
+ * Scores the similarity of two tokenized file names, each an array of (token id, occurrence count) pairs sorted on token id.
+ * A score is the merge of both arrays, without any allocation.
+ */
+public final class TokenScorer
+{
+  private TokenScorer()
+  {
+  }
+
+  /**
+   * The score is 1 for a single shared token, or 3 to the power of the number of distinct shared tokens,
+   * increased for each shared token by its length - 1, times the lowest of both occurrence counts.
+   *
+   * @param a            Token counts of the first file name
+   * @param aFrom        Start index in a (inclusive)
+   * @param aTo          End index in a (exclusive)
+   * @param b            Token counts of the second file name
+   * @param bFrom        Start index in b (inclusive)
+   * @param bTo          End index in b (exclusive)
+   * @param tokenLengths Token length by token id
+   * @return Score, 0 if no token is shared
+   */
+  public static int score(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] tokenLengths)
+  {
+    int shared = 0;
+    int lengthScore = 0;
+    int i = aFrom;
+    int j = bFrom;
+    while (i < aTo && j < bTo)
+    {
+      final int tokenA = a[i];
+      final int tokenB = b[j];
+      if (tokenA < tokenB)
+      {
+        i += 2;
+      }
+      else if (tokenA > tokenB)
+      {
+        j += 2;
+      }
+      else
+      {
+        ++shared;
+        lengthScore += (tokenLengths[tokenA] - 1) * Math.min(a[i + 1], b[j + 1]);
+        i += 2;
+        j += 2;
+      }
+    }
+    if (shared == 0)
+    {
+      return 0;
+    }
+    return sharedTokensScore(shared) + lengthScore;
+  }
+
+  /**
+   * @param shared Number of distinct shared tokens, at least 1
+   * @return Part of the score for the number of shared tokens, increasing with the number of shared tokens
+   */
+  static int sharedTokensScore(int shared)
+  {
+    return shared == 1 ? 1 : (int) Math.pow(3.0, shared);
+  }
+
+  /**
+   * @param a            Token counts of a file name
+   * @param tokenLengths Token length by token id
+   * @return Length part of the score of the tokens against themselves, the maximum against any other file name
+   */
+  public static long maxLengthScore(int[] a, int[] tokenLengths)
+  {
+    long lengthScore = 0;
+    for (int i = 0; i < a.length; i += 2)
+    {
+      lengthScore += (long) (tokenLengths[a[i]] - 1) * a[i + 1];
+    }
+    return lengthScore;
+  }
+
+  /**
+   * Upper bound of the score of two file names, without comparing the tokens.
+   *
+   * @param distinctA      Number of distinct tokens of the first file name
+   * @param maxLengthScore {@link #maxLengthScore(int[], int[])} of the first file name
+   * @param distinctB      Number of distinct tokens of the second file name
+   * @return Upper bound of {@link #score(int[], int[], int[])}
+   */
+  public static long maxScore(int distinctA, long maxLengthScore, int distinctB)
+  {
+    final int shared = Math.min(distinctA, distinctB);
+    return shared == 0 ? 0 : sharedTokensScore(shared) + maxLengthScore;
+  }
+
+  public static int score(int[] a, int[] b, int[] tokenLengths)
+  {
+    return score(a, 0, a.length, b, 0, b.length, tokenLengths);
+  }
+}
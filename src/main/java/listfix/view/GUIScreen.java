@@ -17,7 +17,6 @@ import listfix.model.playlists.PlaylistProviderNotFoundException;
 import listfix.swing.IDocumentChangeListener;
 import listfix.swing.JDocumentTabbedPane;
 import listfix.swing.JPlaylistComponent;
-import listfix.util.ArrayFunctions;
 import listfix.util.ExStack;
 import listfix.util.FileTypeSearch;
 import listfix.view.controls.JTransparentTextArea;
@@ -35,6 +34,7 @@ import javax.swing.JPopupMenu.Separator;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.plaf.FontUIResource;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
@@ -505,6 +505,7 @@ public final class GUIScreen extends JFrame implements IListFixGui
     JMenuItem _clearHistoryMenuItem = new JMenuItem();
     Separator jSeparator4 = new Separator();
     JMenuItem _appOptionsMenuItem = new JMenuItem();
+    JMenuItem _exportMediaLibraryMenuItem = new JMenuItem();
     Separator jSeparator5 = new Separator();
     JMenuItem _exitMenuItem = new JMenuItem();
     JMenu _repairMenu = new JMenu();
@@ -851,6 +852,11 @@ public final class GUIScreen extends JFrame implements IListFixGui
     _appOptionsMenuItem.setToolTipText("Opens the Options Screen");
     _appOptionsMenuItem.addActionListener(evt -> fireOptionsPopup());
     _fileMenu.add(_appOptionsMenuItem);
+
+    _exportMediaLibraryMenuItem.setText("Export Media Library...");
+    _exportMediaLibraryMenuItem.setToolTipText("Exports the media library to a JSON file");
+    _exportMediaLibraryMenuItem.addActionListener(evt -> this.exportMediaLibrary());
+    _fileMenu.add(_exportMediaLibraryMenuItem);
     _fileMenu.add(jSeparator5);
 
     _exitMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F4, InputEvent.ALT_DOWN_MASK));
@@ -1239,7 +1245,8 @@ public final class GUIScreen extends JFrame implements IListFixGui
         protected Playlist doInBackground() throws Exception
         {
           this.setMessage("Please wait while your playlist is opened and analyzed.");
-          Playlist list = PlaylistFactory.getPlaylist(playlistPath, this, GUIScreen.this.getOptions());
+          // Show large playlists before the existence of every entry has been checked
+          Playlist list = PlaylistFactory.getPlaylist(playlistPath, this, GUIScreen.this.getOptions(), true);
           if (getApplicationConfig().getAutoLocateEntriesOnPlaylistLoad())
           {
             list.repair(GUIScreen.this.getMediaLibrary(), this);
@@ -1537,6 +1544,10 @@ public final class GUIScreen extends JFrame implements IListFixGui
     {
       String fmt = "Currently Open: %s%s     Number of entries in list: %d     Number of lost entries: %d     Number of URLs: %d     Number of open playlists: %d";
       String txt = String.format(fmt, list.getFilename(), list.isModified() ? "*" : "", list.size(), list.getMissingCount(), list.getUrlCount(), _playlistTabbedPane.getDocumentCount());
+      if (list.getUnknownCount() > 0)
+      {
+        txt += String.format("     Checking: %d", list.getUnknownCount());
+      }
       statusLabel.setText(txt);
     }
     else
@@ -1714,7 +1725,7 @@ public final class GUIScreen extends JFrame implements IListFixGui
     final String dir = mediaDir.getPath();
 
     // first let's see if this is a subdirectory of any of the media directories already in the list, and error out if so...
-    if (ArrayFunctions.containsStringPrefixingAnotherString(_listFixController.getMediaLibrary().getMediaDirectories(), dir, !ListFixController.FILE_SYSTEM_IS_CASE_SENSITIVE))
+    if (_listFixController.getMediaLibrary().getMediaDirectories().containsAncestorOf(dir, !ListFixController.FILE_SYSTEM_IS_CASE_SENSITIVE))
     {
       JOptionPane.showMessageDialog(this, new JTransparentTextArea("The directory you attempted to add is a subdirectory of one already in your media library, no change was made."),
         "Notification", JOptionPane.INFORMATION_MESSAGE);
@@ -1858,6 +1869,55 @@ public final class GUIScreen extends JFrame implements IListFixGui
     }
   }
 
+  private void exportMediaLibrary()
+  {
+    final JFileChooser chooser = new JFileChooser();
+    chooser.setDialogTitle("Export Media Library");
+    chooser.setFileFilter(new FileNameExtensionFilter("JSON file (*.json)", "json"));
+    chooser.setSelectedFile(new File("mediaLibrary.json"));
+    if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+    {
+      return;
+    }
+    final File jsonFile = chooser.getSelectedFile();
+    if (jsonFile.exists())
+    {
+      int result = JOptionPane.showConfirmDialog(this, new JTransparentTextArea("You picked a file that already exists, should I really overwrite it?"), "File Exists Warning", JOptionPane.YES_NO_OPTION);
+      if (result == JOptionPane.NO_OPTION)
+      {
+        return;
+      }
+    }
+
+    ProgressWorker<Void, Void> worker = new ProgressWorker<>()
+    {
+      @Override
+      protected Void doInBackground() throws IOException
+      {
+        _listFixController.getMediaLibraryConfiguration().exportJson(jsonFile);
+        return null;
+      }
+    };
+    ProgressDialog pd = new ProgressDialog(this, true, worker, "Exporting Media Library...", true, false);
+    pd.setVisible(true);
+
+    try
+    {
+      worker.get();
+    }
+    catch (InterruptedException | CancellationException ex)
+    {
+      _logger.warn("Cancelled");
+    }
+    catch (ExecutionException ex)
+    {
+      _logger.error("Error exporting the media library", ex);
+      JOptionPane.showMessageDialog(this,
+        new JTransparentTextArea(ExStack.textFormatErrorForUser("Sorry, there was an error exporting your media library.", ex.getCause())),
+        "Export Media Library Error", JOptionPane.ERROR_MESSAGE);
+    }
+  }
+
   private void launchListFixProjectUrl()
   {
     BrowserLauncher.launch("https://github.com/Borewit/listFix");
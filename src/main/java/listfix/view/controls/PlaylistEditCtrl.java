@@ -1,7 +1,5 @@
 package listfix.view.controls;
 
-import io.github.borewit.lizzy.content.Content;
-import io.github.borewit.lizzy.playlist.Media;
 import listfix.config.IMediaLibrary;
 import listfix.io.*;
 import listfix.io.datatransfer.PlaylistTransferObject;
@@ -10,9 +8,11 @@ import listfix.io.playlists.LizzyPlaylistUtil;
 import listfix.model.BatchMatchItem;
 import listfix.model.EditFilenameResult;
 import listfix.model.PlaylistEntryList;
+import listfix.model.enums.PlaylistEntryStatus;
 
 import listfix.model.playlists.*;
 import listfix.util.ExStack;
+import listfix.util.FileNameTokenIndex;
 import listfix.view.IListFixGui;
 import listfix.view.dialogs.*;
 import listfix.view.support.IPlaylistModifiedListener;
@@ -58,7 +58,20 @@ public class PlaylistEditCtrl extends JPanel
   protected final IListFixGui listFixGui;
   private boolean refreshPending = false;
 
-  private final IPlaylistModifiedListener listener = this::onPlaylistModified;
+  private final IPlaylistModifiedListener listener = new IPlaylistModifiedListener()
+  {
+    @Override
+    public void playlistModified(Playlist list)
+    {
+      onPlaylistModified(list);
+    }
+
+    @Override
+    public void entryStatusResolved(Playlist list, int firstIndex, int lastIndex)
+    {
+      onEntryStatusResolved(list, firstIndex, lastIndex);
+    }
+  };
 
   public PlaylistEditCtrl(IListFixGui listFixGui)
   {
@@ -92,6 +105,17 @@ public class PlaylistEditCtrl extends JPanel
     this.fireTableDataChanged();
   }
 
+  private void onEntryStatusResolved(Playlist list, int firstIndex, int lastIndex)
+  {
+    _btnNextMissing.setEnabled(list.getMissingCount() > 0);
+    _btnPrevMissing.setEnabled(list.getMissingCount() > 0);
+    // Keep the selection, unlike a data change
+    if (list == playlist && lastIndex < getTableModel().getRowCount())
+    {
+      getTableModel().fireTableRowsUpdated(firstIndex, lastIndex);
+    }
+  }
+
   /**
    * Call fireTableDataChanged() on the GUI thread, and do not call when a pending call is present
    */
@@ -245,13 +269,13 @@ public class PlaylistEditCtrl extends JPanel
   public boolean locateMissingFiles()
   {
     _logger.debug(markerRepair, "Start locateMissingFiles()");
-    ProgressWorker<List<PlaylistEntry>, String> worker = new ProgressWorker<>()
+    ProgressWorker<List<Integer>, String> worker = new ProgressWorker<>()
     {
       @Override
-      protected List<PlaylistEntry> doInBackground()
+      protected List<Integer> doInBackground()
       {
         _logger.debug(markerRepairWorker, "Start repairing in background....");
-        List<PlaylistEntry> result = playlist.repair(PlaylistEditCtrl.this.getMediaLibrary(), this);
+        List<Integer> result = playlist.repair(PlaylistEditCtrl.this.getMediaLibrary(), this);
         _logger.debug(markerRepairWorker, "Repair completed.");
         return result;
       }
@@ -265,7 +289,7 @@ public class PlaylistEditCtrl extends JPanel
           _logger.debug(markerRepair, "Updating UI-table...");
           _uiTable.clearSelection();
 
-          for (Integer fixIx : this.getIndexList(this.get()))
+          for (Integer fixIx : this.get())
           {
             int viewIx = _uiTable.convertRowIndexToView(fixIx);
             _uiTable.addRowSelectionInterval(viewIx, viewIx);
@@ -282,21 +306,6 @@ public class PlaylistEditCtrl extends JPanel
           _logger.error(markerRepair, "Error processing missing files", ex);
         }
       }
-
-      private List<Integer> getIndexList(List<PlaylistEntry> fixedEntries) {
-        final List<Integer> fixedIndexes = new LinkedList<>();
-        final List<PlaylistEntry> copiedList = new LinkedList<>(fixedEntries);
-
-        // Lookup the playlist index of the fixed playlist entries
-        for (int fixIx = 0; fixIx < playlist.size() && !copiedList.isEmpty(); ++fixIx) {
-          if (playlist.get(fixIx) == copiedList.get(0)) {
-            copiedList.remove(0);
-            fixedIndexes.add(fixIx);
-          }
-        }
-        assert fixedIndexes.size() == fixedEntries.size();
-        return fixedIndexes;
-      }
     };
 
     ProgressDialog pd = new ProgressDialog(getParentFrame(), true, worker, "Repairing...");
@@ -407,7 +416,7 @@ public class PlaylistEditCtrl extends JPanel
 
   private void findClosestMatches()
   {
-    final Collection<String> libraryFiles = this.getMediaLibrary().getNestedMediaFiles();
+    final FileNameTokenIndex tokenIndex = this.getMediaLibrary().getFileNameTokenIndex();
     ProgressWorker<List<BatchMatchItem>, String> worker = new ProgressWorker<>()
     {
       @Override
@@ -419,7 +428,7 @@ public class PlaylistEditCtrl extends JPanel
         {
           rowList.add(_uiTable.convertRowIndexToModel(x));
         }
-        return playlist.findClosestMatchesForSelectedEntries(rowList, libraryFiles, this);
+        return playlist.findClosestMatchesForSelectedEntries(rowList, tokenIndex, this);
       }
     };
     this.findClosestMatches(worker);
@@ -430,13 +439,13 @@ public class PlaylistEditCtrl extends JPanel
    */
   public boolean bulkFindClosestMatches()
   {
-    final Collection<String> libraryFiles = listFixGui.getApplicationConfiguration().getMediaLibrary().getNestedMediaFiles();
+    final FileNameTokenIndex tokenIndex = listFixGui.getApplicationConfiguration().getMediaLibrary().getFileNameTokenIndex();
     ProgressWorker<List<BatchMatchItem>, String> worker = new ProgressWorker<>()
     {
       @Override
       protected List<BatchMatchItem> doInBackground()
       {
-        return playlist.findClosestMatches(libraryFiles, this);
+        return playlist.findClosestMatches(tokenIndex, this);
       }
     };
     this.findClosestMatches(worker);
@@ -475,10 +484,9 @@ public class PlaylistEditCtrl extends JPanel
     if (dlg.isAccepted())
     {
       _uiTable.clearSelection();
-      List<PlaylistEntry> fixed = playlist.applyClosestMatchSelections(items);
-      for (PlaylistEntry fixEntry : fixed)
+      List<Integer> fixed = playlist.applyClosestMatchSelections(items, this.getMediaLibrary().getRepairMemory());
+      for (int fixIx : fixed)
       {
-        int fixIx = playlist.indexOf(fixEntry);
         int viewIx = _uiTable.convertRowIndexToView(fixIx);
         _uiTable.addRowSelectionInterval(viewIx, viewIx);
       }
@@ -521,9 +529,7 @@ public class PlaylistEditCtrl extends JPanel
           JOptionPane.showMessageDialog(getParentFrame(), new JTransparentTextArea("You cannot replace a file with a playlist file. Use \"Add File\" instead."), "Replace File Error", JOptionPane.ERROR_MESSAGE);
           return;
         }
-        Media media = new Media();
-        media.setSource(new Content(file.getPath()));
-        PlaylistEntry newEntry = new FilePlaylistEntry(playlist, media);
+        PlaylistEntry newEntry = new FilePlaylistEntry(playlist, file.toPath());
         playlist.replace(rowIx, newEntry);
         getTableModel().fireTableRowsUpdated(rowIx, rowIx);
       }
@@ -543,6 +549,24 @@ public class PlaylistEditCtrl extends JPanel
 
   private void removeMissing()
   {
+    if (this.playlist.getUnknownCount() > 0)
+    {
+      ProgressWorker<Void, String> worker = new ProgressWorker<>()
+      {
+        @Override
+        protected Void doInBackground()
+        {
+          playlist.awaitStatus(this);
+          return null;
+        }
+      };
+      ProgressDialog pd = new ProgressDialog(getParentFrame(), true, worker, "Checking entries...");
+      pd.setVisible(true); // Wait until the worker completed
+      if (worker.isCancelled())
+      {
+        return;
+      }
+    }
     int count = this.playlist.removeMissing();
     if (count > 0)
     {
@@ -962,7 +986,8 @@ public class PlaylistEditCtrl extends JPanel
 
   private boolean entryNotFound(int modelRow)
   {
-    return !playlist.get(modelRow).isFound() && !playlist.get(modelRow).isURL();
+    final PlaylistEntry entry = playlist.get(modelRow);
+    return !entry.isFound() && !entry.isURL() && entry.getStatus() != PlaylistEntryStatus.Unknown;
   }
 
   private void _btnPrevMissingActionPerformed()
@@ -1143,6 +1168,7 @@ public class PlaylistEditCtrl extends JPanel
     if (this.playlist != null)
     {
       this.playlist.addModifiedListener(this.listener);
+      this.playlist.resolveStatusInBackground(SwingUtilities::invokeLater);
     }
 
     _uiTable.setDragEnabled(true);
@@ -1501,19 +1527,18 @@ public class PlaylistEditCtrl extends JPanel
         {
           PlaylistEntryList data = (PlaylistEntryList) t.getTransferData(_playlistEntryListFlavor);
           List<PlaylistEntry> entries = data.getList();
-          int removedAt;
           int insertAtUpdated = dl.getRow();
-          for (PlaylistEntry entry : entries)
+          int[] removedAt = entries.stream().mapToInt(playlist::indexOf).filter(ix -> ix >= 0).distinct().toArray();
+          for (int ix : removedAt)
           {
-            // remove them all, we'll re-addAt them in bulk...
-            removedAt = playlist.remove(entry);
-
-            // Was the thing we just removed above where we're inserting?
-            if (removedAt < insertAtUpdated)
+            // Was the thing we remove above where we're inserting?
+            if (ix < insertAtUpdated)
             {
               insertAtUpdated--;
             }
           }
+          // remove them all in one pass, we'll re-addAt them in bulk...
+          playlist.remove(removedAt);
 
           playlist.addAllAt(insertAtUpdated, entries);
 
@@ -1,5 +1,6 @@
 package listfix.view.controls;
 
+import listfix.model.enums.PlaylistEntryStatus;
 import listfix.model.playlists.Playlist;
 import listfix.model.playlists.PlaylistEntry;
 import listfix.view.support.ImageIcons;
@@ -63,6 +64,12 @@ class PlaylistTableModel extends AbstractTableModel
         {
           return ImageIcons.IMG_FOUND;
         }
+        else if (entry.getStatus() == PlaylistEntryStatus.Unknown)
+        {
+          // Only visible rows are rendered, check these first
+          playlist.prioritizeStatus(entry);
+          return null;
+        }
         else
         {
           return ImageIcons.IMG_MISSING;
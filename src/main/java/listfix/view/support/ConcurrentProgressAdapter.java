@@ -0,0 +1,69 @@
+package listfix.view.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counterpart of {@link ProgressAdapter}, for steps completed by multiple worker threads.
+ * Progress is only reported when the percentage increases, and never decreases.
+ */
+public class ConcurrentProgressAdapter<T>
+{
+  private final IProgressObserver<T> observer;
+  private final long total;
+  private final AtomicLong completed = new AtomicLong();
+  private volatile int percentComplete;
+  private volatile boolean cancelled;
+
+  /**
+   * @param observer Observer, may be null
+   * @param total    Number of steps
+   */
+  public ConcurrentProgressAdapter(IProgressObserver<T> observer, long total)
+  {
+    this.observer = observer;
+    this.total = total;
+  }
+
+  public void stepCompleted()
+  {
+    if (this.observer == null || this.total <= 0)
+    {
+      return;
+    }
+    final int percent = (int) (this.completed.incrementAndGet() * 100 / this.total);
+    if (percent > this.percentComplete)
+    {
+      // Serialize reporting, so the reported progress never decreases
+      synchronized (this)
+      {
+        if (percent > this.percentComplete)
+        {
+          this.percentComplete = percent;
+          this.observer.reportProgress(percent);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return True once the observer has been cancelled, or {@link #cancel()} has been called
+   */
+  public boolean getCancelled()
+  {
+    if (!this.cancelled && this.observer != null && this.observer.getCancelled())
+    {
+      this.cancelled = true;
+    }
+    return this.cancelled;
+  }
+
+  public void cancel()
+  {
+    this.cancelled = true;
+  }
+
+  public int getPercentComplete()
+  {
+    return this.percentComplete;
+  }
+}
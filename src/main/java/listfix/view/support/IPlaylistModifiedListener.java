@@ -5,4 +5,15 @@ import listfix.model.playlists.Playlist;
 public interface IPlaylistModifiedListener
 {
   void playlistModified(Playlist list);
+
+  /**
+   * Called instead of {@link #playlistModified(Playlist)} when only the status of entries, loaded with an unknown status, has been resolved
+   *
+   * @param firstIndex Index of the first entry resolved
+   * @param lastIndex  Index of the last entry resolved; the entries in between may be unchanged
+   */
+  default void entryStatusResolved(Playlist list, int firstIndex, int lastIndex)
+  {
+    playlistModified(list);
+  }
 }
@@ -2,6 +2,7 @@ module listFix.app {
   requires com.fasterxml.jackson.databind;
   requires org.apache.logging.log4j;
   requires java.desktop;
+  requires java.xml;
   requires io.github.borewit.lizzy;
   requires org.apache.commons.io;
   requires say.swing.JFontChooser;
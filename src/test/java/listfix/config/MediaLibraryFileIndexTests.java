@@ -0,0 +1,63 @@
+package listfix.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MediaLibraryFileIndexTests
+{
+  private static String path(String... elements)
+  {
+    return Path.of("/", elements).toString();
+  }
+
+  private static MediaLibraryFileIndex makeIndex()
+  {
+    Set<String> mediaFiles = new TreeSet<>();
+    mediaFiles.add(path("music", "Madonna", "Like a Prayer.mp3"));
+    mediaFiles.add(path("music", "Madonna", "Vogue.mp3"));
+    mediaFiles.add(path("music", "Compilation", "Vogue.mp3"));
+    mediaFiles.add(path("music", "Cesaria Evora", "01. Sodade.flac"));
+    return new MediaLibraryFileIndex(mediaFiles);
+  }
+
+  @Test
+  public void findCaseSensitive()
+  {
+    MediaLibraryFileIndex index = makeIndex();
+    assertEquals(path("music", "Madonna", "Like a Prayer.mp3"), index.findFirst("Like a Prayer.mp3", true));
+    assertNull(index.findFirst("like a prayer.MP3", true), "Case-sensitive lookup should not match different case");
+    assertNull(index.findFirst("Express Yourself.mp3", true));
+  }
+
+  @Test
+  public void findCaseInsensitive()
+  {
+    MediaLibraryFileIndex index = makeIndex();
+    assertEquals(path("music", "Madonna", "Like a Prayer.mp3"), index.findFirst("like a prayer.MP3", false));
+    assertEquals(path("music", "Cesaria Evora", "01. Sodade.flac"), index.findFirst("01. SODADE.FLAC", false));
+  }
+
+  @Test
+  public void findPreservesLibraryOrder()
+  {
+    MediaLibraryFileIndex index = makeIndex();
+    List<String> matches = index.find("Vogue.mp3", true);
+    assertEquals(2, matches.size());
+    assertEquals(path("music", "Compilation", "Vogue.mp3"), matches.get(0), "First match should be the first one in library order");
+    assertEquals(path("music", "Madonna", "Vogue.mp3"), matches.get(1));
+  }
+
+  @Test
+  public void foldCase()
+  {
+    assertEquals(MediaLibraryFileIndex.foldCase("Stra\u00DFe \u00C4\u00D6\u00DC.mp3"), MediaLibraryFileIndex.foldCase("STRA\u00DFE \u00E4\u00F6\u00FC.MP3"));
+    assertTrue("\u01C5".equalsIgnoreCase("\u01C6"));
+    assertEquals(MediaLibraryFileIndex.foldCase("\u01C5"), MediaLibraryFileIndex.foldCase("\u01C6"));
+  }
+}
@@ -0,0 +1,145 @@
+package listfix.config;
+
+import listfix.io.DirectoryState;
+import listfix.json.JsonMediaLibrary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MediaLibraryStoreTests
+{
+  private static final long PAST = 1_000_000_000_000L;
+
+  @TempDir
+  public Path tempDir;
+
+  private static String path(String... elements)
+  {
+    return File.separator + String.join(File.separator, elements);
+  }
+
+  private JsonMediaLibrary makeMediaLibrary()
+  {
+    JsonMediaLibrary mediaLibrary = new JsonMediaLibrary();
+    mediaLibrary.getMediaDirectories().add(path("music"));
+    mediaLibrary.getNestedDirectories().add(path("music"));
+    for (int album = 1; album <= 5; ++album)
+    {
+      mediaLibrary.getNestedDirectories().add(path("music", "Album " + album));
+      for (int track = 1; track <= 12; ++track)
+      {
+        mediaLibrary.getNestedMediaFiles().add(path("music", "Album " + album, String.format("%02d. Track.mp3", track)));
+      }
+    }
+    mediaLibrary.getNestedMediaFiles().add(path("music", "C\u00E9saria \u00C9vora", "Sodade \uD83C\uDFB5.flac"));
+    return mediaLibrary;
+  }
+
+  private MediaLibraryStore writeAndOpen(IMediaLibrary mediaLibrary) throws IOException
+  {
+    Path storeFile = this.tempDir.resolve("mediaLibrary.bin");
+    MediaLibraryStore.write(storeFile, mediaLibrary);
+    return MediaLibraryStore.open(storeFile);
+  }
+
+  @Test
+  public void roundTrip() throws IOException
+  {
+    JsonMediaLibrary mediaLibrary = makeMediaLibrary();
+    MediaLibraryStore store = writeAndOpen(mediaLibrary);
+
+    assertEquals(new ArrayList<>(mediaLibrary.getMediaDirectories()), toList(store.getMediaDirectories()));
+    assertEquals(new ArrayList<>(mediaLibrary.getNestedDirectories()), toList(store.getNestedDirectories()));
+    assertEquals(new ArrayList<>(mediaLibrary.getNestedMediaFiles()), toList(store.getNestedMediaFiles()));
+
+    List<String> files = new ArrayList<>(mediaLibrary.getNestedMediaFiles());
+    for (int i = 0; i < files.size(); ++i)
+    {
+      assertEquals(files.get(i), store.getNestedMediaFiles().get(i));
+    }
+  }
+
+  @Test
+  public void contains() throws IOException
+  {
+    JsonMediaLibrary mediaLibrary = makeMediaLibrary();
+    MediaLibraryStore store = writeAndOpen(mediaLibrary);
+    for (String file : mediaLibrary.getNestedMediaFiles())
+    {
+      assertTrue(store.getNestedMediaFiles().contains(file), file);
+    }
+    assertFalse(store.getNestedMediaFiles().contains(path("music", "Album 3", "13. Track.mp3")));
+    assertFalse(store.getNestedMediaFiles().contains(path("aaa.mp3")));
+    assertFalse(store.getNestedMediaFiles().contains(path("zzz.mp3")));
+  }
+
+  @Test
+  public void emptyMediaLibrary() throws IOException
+  {
+    MediaLibraryStore store = writeAndOpen(new JsonMediaLibrary());
+    assertEquals(0, store.getNestedMediaFiles().size());
+    assertFalse(store.getNestedMediaFiles().iterator().hasNext());
+    assertFalse(store.getNestedMediaFiles().contains(path("music", "track.mp3")));
+    assertNull(store.getFileIndex().findFirst("track.mp3", false));
+  }
+
+  @Test
+  public void fileIndex() throws IOException
+  {
+    MediaLibraryStore store = writeAndOpen(makeMediaLibrary());
+    List<String> matches = store.getFileIndex().find("07. Track.mp3", true);
+    assertEquals(5, matches.size());
+    assertEquals(path("music", "Album 1", "07. Track.mp3"), matches.get(0), "Matches should be in library order");
+    assertEquals(path("music", "Album 5", "07. Track.mp3"), matches.get(4));
+    assertTrue(store.getFileIndex().find("07. TRACK.MP3", true).isEmpty());
+    assertEquals(5, store.getFileIndex().find("07. TRACK.MP3", false).size());
+    assertEquals(path("music", "C\u00E9saria \u00C9vora", "Sodade \uD83C\uDFB5.flac"), store.getFileIndex().findFirst("sodade \uD83C\uDFB5.FLAC", false));
+  }
+
+  @Test
+  public void directoryStates() throws IOException
+  {
+    JsonMediaLibrary mediaLibrary = makeMediaLibrary();
+    mediaLibrary.getDirectoryStates().put(path("music", "Album 2"), new DirectoryState(PAST, 12));
+    mediaLibrary.getDirectoryStates().put(path("music", "Album 3"), new DirectoryState(DirectoryState.UNKNOWN_LAST_MODIFIED, 12));
+    mediaLibrary.getDirectoryStates().put(path("music", "Album 9"), new DirectoryState(PAST, 1));
+    MediaLibraryStore store = writeAndOpen(mediaLibrary);
+
+    Map<String, DirectoryState> directoryStates = new JsonMediaLibrary(store).getDirectoryStates();
+    assertEquals(1, directoryStates.size(), "Unknown states, and states of directories not in the library, should not be stored");
+    assertTrue(directoryStates.get(path("music", "Album 2")).isUnchanged(PAST, 12));
+    assertFalse(directoryStates.get(path("music", "Album 2")).isUnchanged(PAST, 13));
+    assertEquals(12, directoryStates.get(path("music", "Album 2")).getEntryCount());
+  }
+
+  @Test
+  public void mappedPathSetCopyOnWrite() throws IOException
+  {
+    JsonMediaLibrary mediaLibrary = makeMediaLibrary();
+    MediaLibraryStore store = writeAndOpen(mediaLibrary);
+    MappedPathSet mappedFiles = new MappedPathSet(store.getNestedMediaFiles());
+
+    assertEquals(mediaLibrary.getNestedMediaFiles(), mappedFiles);
+    assertFalse(mappedFiles.isMaterialized());
+
+    mappedFiles.removeIf(file -> file.startsWith(path("music", "Album 2")));
+    assertTrue(mappedFiles.isMaterialized());
+    assertEquals(mediaLibrary.getNestedMediaFiles().size() - 12, mappedFiles.size());
+    assertEquals(mediaLibrary.getNestedMediaFiles().size(), store.getNestedMediaFiles().size(), "Store should not be affected");
+  }
+
+  private static List<String> toList(Iterable<String> paths)
+  {
+    List<String> list = new ArrayList<>();
+    paths.forEach(list::add);
+    return list;
+  }
+}
@@ -0,0 +1,107 @@
+package listfix.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathTrieTests
+{
+  private static String path(String... elements)
+  {
+    return File.separator + String.join(File.separator, elements);
+  }
+
+  /**
+   * Generates paths with names which are prefixes of each other, followed by characters ordered before and after the separator
+   */
+  private static List<String> randomPaths(Random random, int count)
+  {
+    final String[] names = {"a", "a b", "a-b", "a.mp3", "ab", "A", "01", "01.mp3", "01 (live).mp3", "z", "\u00E9", "a~"};
+    final List<String> paths = new ArrayList<>();
+    for (int i = 0; i < count; ++i)
+    {
+      final String[] elements = new String[1 + random.nextInt(4)];
+      for (int e = 0; e < elements.length; ++e)
+      {
+        elements[e] = names[random.nextInt(names.length)];
+      }
+      paths.add(path(elements));
+    }
+    return paths;
+  }
+
+  @Test
+  public void sameAsTreeSet()
+  {
+    final Random random = new Random(42);
+    final TreeSet<String> expected = new TreeSet<>();
+    final PathTrie trie = new PathTrie();
+    for (String path : randomPaths(random, 3000))
+    {
+      assertEquals(expected.add(path), trie.add(path), path);
+    }
+    assertEquals(expected.size(), trie.size());
+    assertEquals(new ArrayList<>(expected), new ArrayList<>(trie), "Iteration order should equal the natural order");
+
+    for (String path : randomPaths(random, 1000))
+    {
+      assertEquals(expected.contains(path), trie.contains(path), path);
+      assertEquals(expected.remove(path), trie.remove(path), path);
+    }
+    assertEquals(expected.size(), trie.size());
+    assertEquals(new ArrayList<>(expected), new ArrayList<>(trie));
+  }
+
+  @Test
+  public void removeTree()
+  {
+    final PathTrie trie = new PathTrie(Arrays.asList(
+      path("music"),
+      path("music", "Album"),
+      path("music", "Album", "01.mp3"),
+      path("music", "Album", "CD1", "01.mp3"),
+      path("music", "Album (Deluxe)", "01.mp3"),
+      path("music2", "01.mp3")));
+    assertEquals(3, trie.removeTree(path("music", "Album")));
+    assertEquals(Arrays.asList(path("music"), path("music", "Album (Deluxe)", "01.mp3"), path("music2", "01.mp3")), new ArrayList<>(trie));
+    assertEquals(0, trie.removeTree(path("music", "Album")));
+    assertEquals(2, trie.removeTree(path("music")));
+    assertEquals(Collections.singletonList(path("music2", "01.mp3")), new ArrayList<>(trie));
+  }
+
+  @Test
+  public void iteratorRemove()
+  {
+    final List<String> paths = randomPaths(new Random(7), 500);
+    final TreeSet<String> expected = new TreeSet<>(paths);
+    final PathTrie trie = new PathTrie(paths);
+    final Iterator<String> iterator = trie.iterator();
+    int i = 0;
+    while (iterator.hasNext())
+    {
+      final String path = iterator.next();
+      if (i++ % 3 == 0)
+      {
+        iterator.remove();
+        expected.remove(path);
+      }
+    }
+    assertEquals(new ArrayList<>(expected), new ArrayList<>(trie));
+    assertEquals(expected.size(), trie.size());
+  }
+
+  @Test
+  public void containsAncestorOf()
+  {
+    final PathTrie trie = new PathTrie(Collections.singletonList(path("Music", "Rock")));
+    assertTrue(trie.containsAncestorOf(path("Music", "Rock"), false));
+    assertTrue(trie.containsAncestorOf(path("Music", "Rock", "Album", "01.mp3"), false));
+    assertFalse(trie.containsAncestorOf(path("Music", "Rock and Roll", "01.mp3"), false), "A name prefix is not an ancestor");
+    assertFalse(trie.containsAncestorOf(path("Music"), false));
+    assertFalse(trie.containsAncestorOf(path("music", "rock", "01.mp3"), false));
+    assertTrue(trie.containsAncestorOf(path("music", "rock", "01.mp3"), true));
+  }
+}
@@ -0,0 +1,49 @@
+package listfix.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepairMemoryTests
+{
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void rememberedRepairsArePersisted() throws IOException
+  {
+    final Path file = this.tempDir.resolve("repairMemory.bin");
+    final Path missing = this.tempDir.resolve("old").resolve("01 - Song.mp3");
+    final Path repaired = Files.createFile(this.tempDir.resolve("01 - Song.mp3"));
+
+    final RepairMemory memory = new RepairMemory(file, false);
+    assertNull(memory.recall(missing));
+    memory.remember(missing, repaired);
+    memory.write();
+
+    final RepairMemory reloaded = new RepairMemory(file, false);
+    assertEquals(1, reloaded.size());
+    assertEquals(repaired, reloaded.recall(missing));
+    assertNull(reloaded.recall(this.tempDir.resolve("OLD").resolve("01 - Song.mp3")), "Case-sensitive lookup");
+    assertEquals(repaired, new RepairMemory(file, true).recall(this.tempDir.resolve("OLD").resolve("01 - SONG.mp3")));
+  }
+
+  @Test
+  public void repairsToDeletedFilesAreForgotten() throws IOException
+  {
+    final Path file = this.tempDir.resolve("repairMemory.bin");
+    final Path missing = this.tempDir.resolve("old").resolve("02 - Song.mp3");
+    final Path repaired = Files.createFile(this.tempDir.resolve("02 - Song.mp3"));
+
+    final RepairMemory memory = new RepairMemory(file, false);
+    memory.remember(missing, repaired);
+    Files.delete(repaired);
+    assertNull(memory.recall(missing));
+    assertEquals(0, memory.size());
+  }
+}
@@ -0,0 +1,88 @@
+package listfix.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AtomicFileWriterTests
+{
+  @TempDir
+  Path tempDir;
+
+  private List<Path> listFolder() throws IOException
+  {
+    try (Stream<Path> files = Files.list(this.tempDir))
+    {
+      return files.collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void replacesFile() throws IOException
+  {
+    final Path playlist = this.tempDir.resolve("playlist.m3u8");
+    Files.writeString(playlist, "old.mp3\n");
+    final FileTime lastModified = FileTime.from(Instant.parse("2020-01-02T03:04:05Z"));
+    Files.setLastModifiedTime(playlist, lastModified);
+
+    AtomicFileWriter.write(playlist, true, false, out -> out.write("new.mp3\n".getBytes(StandardCharsets.UTF_8)));
+    assertEquals("new.mp3\n", Files.readString(playlist));
+    assertNotEquals(lastModified, Files.getLastModifiedTime(playlist));
+
+    Files.setLastModifiedTime(playlist, lastModified);
+    AtomicFileWriter.write(playlist, false, true, out -> out.write("newer.mp3\n".getBytes(StandardCharsets.UTF_8)));
+    assertEquals("newer.mp3\n", Files.readString(playlist));
+    assertEquals(lastModified, Files.getLastModifiedTime(playlist));
+    assertEquals(List.of(playlist), this.listFolder(), "No temporary file left");
+  }
+
+  @Test
+  public void failureLeavesFileIntact() throws IOException
+  {
+    final Path playlist = this.tempDir.resolve("playlist.m3u8");
+    Files.writeString(playlist, "old.mp3\n");
+
+    final IOException exception = assertThrows(IOException.class, () -> AtomicFileWriter.write(playlist, false, false, out -> {
+      out.write("partial".getBytes(StandardCharsets.UTF_8));
+      throw new IllegalStateException("Disk full");
+    }));
+    assertEquals("Disk full", exception.getCause().getMessage());
+    assertEquals("old.mp3\n", Files.readString(playlist));
+    assertEquals(List.of(playlist), this.listFolder(), "No temporary file left");
+  }
+
+  @Test
+  public void keepsPermissionsAndHardLinks() throws IOException
+  {
+    final Path playlist = this.tempDir.resolve("playlist.m3u8");
+    Files.writeString(playlist, "old.mp3\n");
+    if (Files.getFileAttributeView(playlist, PosixFileAttributeView.class) == null)
+    {
+      // Hard links are only detected on POSIX file systems
+      return;
+    }
+    Files.setPosixFilePermissions(playlist, PosixFilePermissions.fromString("rw-r-----"));
+
+    AtomicFileWriter.write(playlist, false, false, out -> out.write("new.mp3\n".getBytes(StandardCharsets.UTF_8)));
+    assertEquals(PosixFilePermissions.fromString("rw-r-----"), Files.getPosixFilePermissions(playlist), "Kept without preserving timestamps");
+
+    final Path link = Files.createLink(this.tempDir.resolve("link.m3u8"), playlist);
+    AtomicFileWriter.write(playlist, true, false, out -> out.write("newer.mp3\n".getBytes(StandardCharsets.UTF_8)));
+    assertEquals("newer.mp3\n", Files.readString(playlist));
+    assertEquals("newer.mp3\n", Files.readString(link));
+    assertEquals(2, this.listFolder().size(), "No temporary file left");
+  }
+}
@@ -0,0 +1,103 @@
+package listfix.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirectoryListingCacheTests
+{
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void existsFromListing() throws IOException
+  {
+    final Path album = Files.createDirectories(this.tempDir.resolve("Album"));
+    final Path track = Files.createFile(album.resolve("01 - Track.mp3"));
+
+    final DirectoryListingCache cache = new DirectoryListingCache(Long.MAX_VALUE, false);
+    assertTrue(cache.exists(track));
+    assertTrue(cache.exists(album));
+    assertFalse(cache.exists(album.resolve("02 - Track.mp3")));
+    assertFalse(cache.exists(album.resolve("01 - TRACK.mp3")));
+    assertTrue(new DirectoryListingCache(Long.MAX_VALUE, true).exists(album.resolve("01 - TRACK.mp3")));
+
+    // Without expiry, the listing is not refreshed
+    Files.createFile(album.resolve("02 - Track.mp3"));
+    assertFalse(cache.exists(album.resolve("02 - Track.mp3")));
+    assertTrue(new DirectoryListingCache(0, false).exists(album.resolve("02 - Track.mp3")));
+  }
+
+  @Test
+  public void namesNotListedAreCheckedByTheFileSystem() throws IOException
+  {
+    final Path album = Files.createDirectories(this.tempDir.resolve("Album"));
+    final Path track = Files.createFile(album.resolve("01 - Track.mp3"));
+    final Path otherCase = album.resolve("01 - TRACK.mp3");
+
+    // Found where the file system finds it, like on a case-insensitive volume
+    final DirectoryListingCache cache = new DirectoryListingCache();
+    assertTrue(cache.exists(track));
+    assertEquals(Files.exists(otherCase), cache.exists(otherCase));
+
+    // A name missing from the listing is not taken as missing
+    final Path added = Files.createFile(album.resolve("02 - Track.mp3"));
+    assertTrue(cache.exists(added));
+    assertFalse(new DirectoryListingCache().exists(album.resolve("03 - Track.mp3")));
+  }
+
+  @Test
+  public void missingDirectories() throws IOException
+  {
+    final Path missing = this.tempDir.resolve("Missing");
+    final DirectoryListingCache cache = new DirectoryListingCache(Long.MAX_VALUE, false);
+    assertFalse(cache.exists(missing.resolve("01.mp3")));
+    assertTrue(cache.isInMissingDirectory(missing));
+    assertTrue(cache.isInMissingDirectory(missing.resolve("CD1")), "Subdirectories of a missing directory are missing");
+    assertFalse(cache.isInMissingDirectory(this.tempDir));
+
+    Files.createDirectories(missing.resolve("CD1"));
+    Files.createFile(missing.resolve("CD1").resolve("01.mp3"));
+    assertFalse(cache.exists(missing.resolve("CD1").resolve("01.mp3")));
+    assertTrue(new DirectoryListingCache(0, false).exists(missing.resolve("CD1").resolve("01.mp3")));
+  }
+
+  @Test
+  public void concurrentLookups() throws Exception
+  {
+    final Path album = Files.createDirectories(this.tempDir.resolve("Album"));
+    for (int i = 0; i < 20; ++i)
+    {
+      Files.createFile(album.resolve(i + ".mp3"));
+    }
+    final DirectoryListingCache cache = new DirectoryListingCache(Long.MAX_VALUE, false);
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try
+    {
+      final List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < 40; ++i)
+      {
+        final Path track = album.resolve(i + ".mp3");
+        results.add(executor.submit(() -> cache.exists(track)));
+      }
+      for (int i = 0; i < results.size(); ++i)
+      {
+        assertEquals(i < 20, results.get(i).get());
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+}
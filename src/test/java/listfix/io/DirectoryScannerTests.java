@@ -0,0 +1,120 @@
+package listfix.io;
+
+import listfix.view.support.ProgressWorker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirectoryScannerTests
+{
+  private static final long PAST = 1_000_000_000_000L;
+
+  @TempDir
+  public File tempDir;
+
+  private final ProgressWorker<Void, Void> task = new ProgressWorker<>()
+  {
+    @Override
+    protected Void doInBackground()
+    {
+      return null;
+    }
+  };
+
+  private static File createFile(File dir, String name) throws IOException
+  {
+    File file = new File(dir, name);
+    assertTrue(file.createNewFile());
+    return file;
+  }
+
+  @Test
+  public void incrementalRefresh() throws IOException
+  {
+    File album1 = new File(tempDir, "Album 1");
+    File album2 = new File(tempDir, "Album 2");
+    assertTrue(album1.mkdir());
+    assertTrue(album2.mkdir());
+    createFile(album1, "01.mp3");
+    createFile(album2, "01.mp3");
+    createFile(album2, "cover.jpg");
+    assertTrue(tempDir.setLastModified(PAST));
+    assertTrue(album1.setLastModified(PAST));
+    assertTrue(album2.setLastModified(PAST));
+
+    List<String> mediaDirs = Collections.singletonList(tempDir.getPath());
+    DirectoryScanner scanner = new DirectoryScanner();
+    MediaLibraryDelta delta = scanner.createMediaLibraryDirectoryAndFileList(mediaDirs, task);
+    assertEquals(3, delta.getAddedDirectories().size());
+    assertEquals(2, delta.getAddedFiles().size());
+    Map<String, DirectoryState> states = scanner.getDirectoryStates();
+    assertEquals(2, states.get(album2.getPath()).getEntryCount());
+
+    List<String> directories = new ArrayList<>(delta.getAddedDirectories());
+    List<String> files = new ArrayList<>(delta.getAddedFiles());
+
+    // A file added while keeping the modification time of the directory is noticed by the number of entries
+    createFile(album1, "02.mp3");
+    assertTrue(album1.setLastModified(PAST));
+    // Modified directory is listed again
+    createFile(album2, "02.mp3");
+    assertTrue(new File(album2, "01.mp3").delete());
+    assertTrue(album2.setLastModified(PAST + 60_000));
+
+    scanner = new DirectoryScanner(states, directories, files, 2);
+    delta = scanner.createMediaLibraryDirectoryAndFileList(mediaDirs, task);
+    assertEquals(List.of(new File(album1, "02.mp3").getPath(), new File(album2, "02.mp3").getPath()), delta.getAddedFiles());
+    assertEquals(Collections.singletonList(new File(album2, "01.mp3").getPath()), delta.getRemovedFiles());
+    assertTrue(delta.getAddedDirectories().isEmpty());
+    assertTrue(delta.getRemovedDirectories().isEmpty());
+  }
+
+  @Test
+  public void removedMediaDirectory() throws IOException
+  {
+    File album = new File(tempDir, "Album");
+    assertTrue(album.mkdir());
+    createFile(album, "01.mp3");
+
+    List<String> mediaDirs = Collections.singletonList(album.getPath());
+    DirectoryScanner scanner = new DirectoryScanner();
+    MediaLibraryDelta delta = scanner.createMediaLibraryDirectoryAndFileList(mediaDirs, task);
+
+    scanner = new DirectoryScanner(scanner.getDirectoryStates(), delta.getAddedDirectories(), delta.getAddedFiles(), 2);
+    delta = scanner.createMediaLibraryDirectoryAndFileList(Collections.emptyList(), task);
+    assertEquals(Collections.singletonList(album.getPath()), delta.getRemovedDirectories());
+    assertEquals(Collections.singletonList(new File(album, "01.mp3").getPath()), delta.getRemovedFiles());
+    assertTrue(scanner.getDirectoryStates().isEmpty());
+  }
+
+  @Test
+  public void deterministicOrder() throws IOException
+  {
+    for (int artist = 0; artist < 8; ++artist)
+    {
+      for (int album = 0; album < 8; ++album)
+      {
+        File albumDir = new File(tempDir, "Artist " + artist + File.separator + "Album " + album);
+        assertTrue(albumDir.mkdirs());
+        for (int track = 0; track < 4; ++track)
+        {
+          createFile(albumDir, track + ".mp3");
+        }
+      }
+    }
+    List<String> mediaDirs = Collections.singletonList(tempDir.getPath());
+    MediaLibraryDelta sequential = new DirectoryScanner(Collections.emptyMap(), Collections.emptyList(), Collections.emptyList(), 1).createMediaLibraryDirectoryAndFileList(mediaDirs, task);
+    MediaLibraryDelta parallel = new DirectoryScanner(Collections.emptyMap(), Collections.emptyList(), Collections.emptyList(), 8).createMediaLibraryDirectoryAndFileList(mediaDirs, task);
+    assertEquals(8 * 8 * 4, parallel.getAddedFiles().size());
+    assertEquals(sequential.getAddedFiles(), parallel.getAddedFiles());
+    assertEquals(sequential.getAddedDirectories(), parallel.getAddedDirectories());
+  }
+}
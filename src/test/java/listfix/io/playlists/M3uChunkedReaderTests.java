@@ -0,0 +1,145 @@
+package listfix.io.playlists;
+
+import io.github.borewit.lizzy.content.Content;
+import io.github.borewit.lizzy.content.type.ContentType;
+import io.github.borewit.lizzy.playlist.Media;
+import io.github.borewit.lizzy.playlist.Playlist;
+import io.github.borewit.lizzy.playlist.SpecificPlaylist;
+import io.github.borewit.lizzy.playlist.SpecificPlaylistProvider;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class M3uChunkedReaderTests
+{
+  /**
+   * Minimal M3U provider, marking the media of extended playlists, so a lost header would be noticed
+   */
+  private static class TestM3uProvider implements SpecificPlaylistProvider
+  {
+    private int readCount;
+
+    @Override
+    public String getId()
+    {
+      return "m3u";
+    }
+
+    @Override
+    public ContentType[] getContentTypes()
+    {
+      return new ContentType[0];
+    }
+
+    @Override
+    public SpecificPlaylist readFrom(InputStream in) throws Exception
+    {
+      ++this.readCount;
+      String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      if (text.startsWith("\uFEFF"))
+      {
+        text = "bom:" + text.substring(1);
+      }
+      final boolean bom = text.startsWith("bom:");
+      final Playlist playlist = new Playlist();
+      boolean extended = false;
+      String title = null;
+      for (String line : (bom ? text.substring(4) : text).split("\r?\n"))
+      {
+        if (line.startsWith("#EXTM3U"))
+        {
+          extended = true;
+        }
+        else if (line.startsWith("#EXTINF:"))
+        {
+          title = line.substring(line.indexOf(',') + 1);
+        }
+        else if (!line.isBlank() && !line.startsWith("#"))
+        {
+          final String prefix = (bom ? "bom:" : "") + (extended ? "ext:" + title + ":" : "");
+          playlist.getRootSequence().addComponent(new Media(new Content(prefix + line.trim())));
+          title = null;
+        }
+      }
+      return new SpecificPlaylist()
+      {
+        @Override
+        public SpecificPlaylistProvider getProvider()
+        {
+          return TestM3uProvider.this;
+        }
+
+        @Override
+        public void writeTo(OutputStream o)
+        {
+        }
+
+        @Override
+        public Playlist toPlaylist()
+        {
+          return playlist;
+        }
+      };
+    }
+
+    @Override
+    public SpecificPlaylist toSpecificPlaylist(Playlist p)
+    {
+      return null;
+    }
+  }
+
+  private static List<String> readAtOnce(byte[] content) throws Exception
+  {
+    final List<String> locations = new ArrayList<>();
+    new TestM3uProvider().readFrom(new ByteArrayInputStream(content)).toPlaylist().getRootSequence().getComponents()
+      .forEach(component -> locations.add(((Media) component).getSource().toString()));
+    return locations;
+  }
+
+  private static String makePlaylist(String header, int count)
+  {
+    final StringBuilder playlist = new StringBuilder(header);
+    for (int i = 0; i < count; ++i)
+    {
+      playlist.append("#EXTINF:").append(i).append(",Artist - Title ").append(i).append("\r\n");
+      playlist.append(i % 7 == 0 ? "  " : "").append("music/").append(i).append(".mp3\r\n");
+    }
+    // Last line not terminated
+    return playlist.append("music/last.mp3").toString();
+  }
+
+  @Test
+  public void chunksMatchReadingAtOnce() throws Exception
+  {
+    for (String header : new String[]{"#EXTM3U\r\n", "\uFEFF#EXTM3U\n", "", "\uFEFF"})
+    {
+      final byte[] content = makePlaylist(header, 2 * M3uChunkedReader.CHUNK_RESOURCES + 10).getBytes(StandardCharsets.UTF_8);
+      final TestM3uProvider provider = new TestM3uProvider();
+      final List<String> locations = new ArrayList<>();
+      final SpecificPlaylist first = M3uChunkedReader.read(new BufferedInputStream(new ByteArrayInputStream(content)), provider, sequence ->
+        sequence.getComponents().forEach(component -> locations.add(((Media) component).getSource().toString())));
+
+      assertNotNull(first);
+      assertEquals(3, provider.readCount, "Number of chunks");
+      assertEquals(readAtOnce(content), locations);
+    }
+  }
+
+  @Test
+  public void utf16IsNotStreamed() throws Exception
+  {
+    final byte[] content = makePlaylist("\uFEFF#EXTM3U\n", 10).getBytes(StandardCharsets.UTF_16LE);
+    final BufferedInputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(content));
+    assertNull(M3uChunkedReader.read(inputStream, new TestM3uProvider(), sequence -> fail("Not streamed")));
+    assertArrayEquals(content, inputStream.readAllBytes(), "Stream not consumed");
+  }
+}
@@ -0,0 +1,49 @@
+package listfix.io.playlists;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlaylistContentDetectorTests
+{
+  private static String detect(String content)
+  {
+    final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    return PlaylistContentDetector.detectFormat(bytes, bytes.length);
+  }
+
+  @Test
+  public void detectFormat()
+  {
+    assertEquals("m3u", detect("#EXTM3U\n#EXTINF:123,Artist - Title\nmusic/01.mp3\n"));
+    assertEquals("m3u", detect("\uFEFF#EXTM3U\n"), "UTF-8 BOM");
+    assertEquals("pls", detect("\n[Playlist]\nFile1=01.mp3\n"));
+    assertEquals("xspf", detect("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- exported -->\n<playlist version=\"1\" xmlns=\"http://xspf.org/ns/0/\">"));
+    assertEquals("wpl", detect("<?wpl version=\"1.0\"?>\n<smil>"));
+    assertEquals("smil", detect("<!DOCTYPE smil><smil>"));
+    assertEquals("asx", detect("<ASX version=\"3.0\">"));
+    assertNull(detect("music/01.mp3\n"), "Plain M3U without header is not recognized");
+    assertNull(detect(""));
+  }
+
+  @Test
+  public void detectUtf16()
+  {
+    final byte[] bytes = "\uFEFF[playlist]".getBytes(StandardCharsets.UTF_16LE);
+    assertEquals("pls", PlaylistContentDetector.detectFormat(bytes, bytes.length));
+  }
+
+  @Test
+  public void detectDoesNotConsume() throws IOException
+  {
+    final byte[] bytes = "#EXTM3U\n01.mp3\n".getBytes(StandardCharsets.UTF_8);
+    final BufferedInputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(bytes));
+    assertEquals("m3u", PlaylistContentDetector.detectFormat(inputStream));
+    assertArrayEquals(bytes, inputStream.readAllBytes());
+  }
+}
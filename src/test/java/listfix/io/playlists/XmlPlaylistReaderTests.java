@@ -0,0 +1,178 @@
+package listfix.io.playlists;
+
+import io.github.borewit.lizzy.content.Content;
+import io.github.borewit.lizzy.playlist.Media;
+import io.github.borewit.lizzy.playlist.PlaylistFormat;
+import io.github.borewit.lizzy.playlist.Sequence;
+import listfix.json.JsonAppOptions;
+import listfix.model.playlists.Playlist;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class XmlPlaylistReaderTests
+{
+  @TempDir
+  Path tempDir;
+
+  private static List<Media> readMedia(String formatId, byte[] content) throws XMLStreamException
+  {
+    return XmlPlaylistReader.read(new ByteArrayInputStream(content), formatId).getComponents().stream()
+      .map(component -> (Media) component)
+      .collect(Collectors.toList());
+  }
+
+  private static String describe(Media media)
+  {
+    final String elements = media instanceof XmlMedia ? ((XmlMedia) media).getMetadata().getElements().stream()
+      .map(element -> element.getName() + "=" + element.getText())
+      .collect(Collectors.joining(", ")) : "";
+    final String title = media instanceof XmlMedia ? ((XmlMedia) media).getMetadata().getTitle() : null;
+    return String.format("%s %s %s [%s]", media.getSource(), title, media.getDuration(), elements);
+  }
+
+  private static List<String> read(String formatId, String xml) throws XMLStreamException
+  {
+    return read(formatId, xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<String> read(String formatId, byte[] content) throws XMLStreamException
+  {
+    final Sequence sequence = XmlPlaylistReader.read(new ByteArrayInputStream(content), formatId);
+    return sequence.getComponents().stream()
+      .map(component -> ((Media) component).getSource().toString())
+      .collect(Collectors.toList());
+  }
+
+  @Test
+  public void readXspf() throws XMLStreamException
+  {
+    final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+      "<playlist version=\"1\" xmlns=\"http://xspf.org/ns/0/\"><trackList>\n" +
+      "<track><title>A</title><location>music/A%20Song.mp3</location><location>alternative.mp3</location></track>\n" +
+      "<track><location>https://example.com/stream</location></track>\n" +
+      "</trackList></playlist>";
+    assertEquals(List.of("music/A Song.mp3", "https://example.com/stream"), read("xspf", xml));
+  }
+
+  @Test
+  public void readAsxIgnoresCase() throws XMLStreamException
+  {
+    final String xml = "<ASX version=\"3.0\"><Entry><Ref HREF=\"a.wma\"/><ref href=\"fallback.wma\"/></Entry><entry><ref href=\"b.wma\"/></entry></ASX>";
+    assertEquals(List.of("a.wma", "b.wma"), read("asx", xml));
+  }
+
+  @Test
+  public void readITunesInPlaylistOrder() throws XMLStreamException
+  {
+    final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+      "<!DOCTYPE plist PUBLIC \"-//Apple Computer//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n" +
+      "<plist version=\"1.0\"><dict>\n" +
+      "<key>Major Version</key><integer>1</integer><key>Show Content Ratings</key><true/>\n" +
+      "<key>Tracks</key><dict>\n" +
+      "<key>7</key><dict><key>Track ID</key><integer>7</integer><key>Name</key><string>A</string><key>Location</key><string>file://localhost/music/a.mp3</string></dict>\n" +
+      "<key>9</key><dict><key>Track ID</key><integer>9</integer><key>Location</key><string>file:///music/b%20c.mp3</string><key>Disabled</key><true/></dict>\n" +
+      "</dict>\n" +
+      "<key>Playlists</key><array><dict><key>Name</key><string>List</string><key>Playlist Items</key><array>\n" +
+      "<dict><key>Track ID</key><integer>9</integer></dict><dict><key>Track ID</key><integer>7</integer></dict>\n" +
+      "</array></dict></array>\n" +
+      "</dict></plist>";
+    assertEquals(List.of(Path.of("/music/b c.mp3").toString(), Path.of("/music/a.mp3").toString()), read("plist", xml));
+  }
+
+  @Test
+  public void writeAndReadBack() throws Exception
+  {
+    final List<String> locations = List.of(
+      Path.of("music", "A & B.mp3").toString(),
+      Path.of("music", "50% #1.flac").toAbsolutePath().toString(),
+      "https://example.com/stream?a=1&b=2");
+    final List<Media> media = locations.stream().map(location -> new Media(new Content(location))).collect(Collectors.toList());
+    for (String formatId : XmlPlaylistReader.FORMAT_IDS)
+    {
+      final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      XmlPlaylistWriter.write(outputStream, formatId, "Title", media);
+      assertEquals(locations, read(formatId, outputStream.toByteArray()), formatId);
+    }
+  }
+
+  @Test
+  public void writeBackMetadata() throws Exception
+  {
+    final List<String> documents = List.of(
+      "<playlist version=\"1\" xmlns=\"http://xspf.org/ns/0/\"><trackList><track><location>a.mp3</location><title>A &amp; B</title>" +
+        "<annotation>Live</annotation><duration>61000</duration><meta rel=\"http://example.com/rating\">5</meta></track></trackList></playlist>",
+      "<smil><body><seq><media src=\"a.mp3\" trackTitle=\"A &amp; B\" albumArtist=\"C\"/></seq></body></smil>",
+      "<asx version=\"3.0\"><entry clientskip=\"no\"><title>A &amp; B</title><ref href=\"a.mp3\"/><duration value=\"00:01:01.5\"/><author>C</author></entry></asx>",
+      "<plist version=\"1.0\"><dict><key>Tracks</key><dict><key>3</key><dict><key>Track ID</key><integer>3</integer><key>Name</key><string>A &amp; B</string>" +
+        "<key>Total Time</key><integer>61000</integer><key>Compilation</key><true/><key>Location</key><string>a.mp3</string></dict></dict></dict></plist>");
+    final List<String> formatIds = List.of("xspf", "wpl", "asx", "plist");
+    for (int i = 0; i < formatIds.size(); ++i)
+    {
+      final String formatId = formatIds.get(i);
+      final List<Media> media = readMedia(formatId, documents.get(i).getBytes(StandardCharsets.UTF_8));
+      assertEquals("A & B", ((XmlMedia) media.get(0)).getMetadata().getTitle(), formatId);
+
+      final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      XmlPlaylistWriter.write(outputStream, formatId, "Title", media);
+      final List<Media> readBack = readMedia(formatId, outputStream.toByteArray());
+      assertEquals(media.stream().map(XmlPlaylistReaderTests::describe).collect(Collectors.toList()),
+        readBack.stream().map(XmlPlaylistReaderTests::describe).collect(Collectors.toList()), formatId);
+
+      // Converted to another format, the title and duration are kept
+      final String otherFormatId = formatIds.get((i + 2) % formatIds.size());
+      final ByteArrayOutputStream convertedStream = new ByteArrayOutputStream();
+      XmlPlaylistWriter.write(convertedStream, otherFormatId, "Title", media);
+      final Media converted = readMedia(otherFormatId, convertedStream.toByteArray()).get(0);
+      assertEquals("A & B", ((XmlMedia) converted).getMetadata().getTitle(), otherFormatId);
+      if (media.get(0).getDuration() != null && !otherFormatId.equals("wpl"))
+      {
+        assertEquals(media.get(0).getDuration(), converted.getDuration(), otherFormatId);
+      }
+    }
+  }
+
+  @Test
+  public void saveKeepsXspfTitlesAndDurations() throws Exception
+  {
+    final Path playlistPath = this.tempDir.resolve("list.xspf");
+    Files.writeString(playlistPath, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+      "<playlist version=\"1\" xmlns=\"http://xspf.org/ns/0/\"><title>Mine</title><trackList>\n" +
+      "<track><location>music/a.mp3</location><title>First</title><creator>C</creator><duration>215000</duration></track>\n" +
+      "<track><location>music/b.mp3</location><title>Second</title><annotation>Live</annotation><duration>1000</duration></track>\n" +
+      "<track><location>music/c.mp3</location></track>\n" +
+      "</trackList></playlist>");
+    final List<String> original = readMedia("xspf", Files.readAllBytes(playlistPath)).stream()
+      .map(media -> describe(media).substring(media.getSource().toString().length()))
+      .collect(Collectors.toList());
+
+    final Playlist playlist = Playlist.load(playlistPath, null, new JsonAppOptions());
+    playlist.save(PlaylistFormat.xspf, null);
+    final byte[] saved = Files.readAllBytes(playlistPath);
+    final List<Media> savedMedia = readMedia("xspf", saved);
+    assertEquals(original, savedMedia.stream()
+      .map(media -> describe(media).substring(media.getSource().toString().length()))
+      .collect(Collectors.toList()));
+    assertEquals(List.of(" First 215000 [title=First, creator=C, duration=215000]", " Second 1000 [title=Second, annotation=Live, duration=1000]", " null null []"), original);
+
+    // Saving again writes the same bytes
+    Playlist.load(playlistPath, null, new JsonAppOptions()).save(PlaylistFormat.xspf, null);
+    assertArrayEquals(saved, Files.readAllBytes(playlistPath));
+  }
+
+  @Test
+  public void notWellFormed()
+  {
+    assertThrows(XMLStreamException.class, () -> read("asx", "<asx><entry><ref href=\"a&b.wma\"/></entry></asx>"));
+  }
+}
@@ -0,0 +1,241 @@
+package listfix.model.playlists;
+
+import listfix.io.IPlaylistOptions;
+import listfix.model.BatchMatchItem;
+import listfix.util.FileNameTokenIndex;
+import listfix.view.support.IProgressObserver;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClosestMatchFinderTests
+{
+  private static final IPlaylistOptions options = new IPlaylistOptions()
+  {
+    @Override
+    public boolean getAlwaysUseUNCPaths()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean getSavePlaylistsWithRelativePaths()
+    {
+      return false;
+    }
+
+    @Override
+    public String getIgnoredSmallWords()
+    {
+      return "an, and, dsp, in, my, of, the, to";
+    }
+
+    @Override
+    public int getMaxClosestResults()
+    {
+      return 5;
+    }
+
+    @Override
+    public int getClosestMatchParallelism()
+    {
+      return 8;
+    }
+
+    @Override
+    public boolean getCaseInsensitiveExactMatching()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean getSyncPlaylistsOnSave()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean getPreservePlaylistAttributesOnSave()
+    {
+      return false;
+    }
+
+    @Override
+    public Set<String> getPlaylistDirectories()
+    {
+      return Collections.emptySet();
+    }
+  };
+
+  /**
+   * Missing entry, only providing a track file name
+   */
+  private static class TestEntry extends PlaylistEntry
+  {
+    private final String fileName;
+
+    private TestEntry(String fileName)
+    {
+      super(null, null);
+      this.fileName = fileName;
+    }
+
+    @Override
+    public String getTrackFolder()
+    {
+      return "";
+    }
+
+    @Override
+    public String getTrackFileName()
+    {
+      return this.fileName;
+    }
+
+    @Override
+    protected boolean exists()
+    {
+      return false;
+    }
+
+    @Override
+    public void recheckFoundStatus()
+    {
+    }
+
+    @Override
+    public boolean isURL()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean isRelative()
+    {
+      return false;
+    }
+
+    @Override
+    public Object clone()
+    {
+      return new TestEntry(this.fileName);
+    }
+  }
+
+  private static List<String> makeFileNames(Random random, int count)
+  {
+    final String[] words = {"Love", "Life", "Queen", "Live", "Wembley", "Remix", "Stop", "Night", "Air", "01", "02", "Blue", "Moon"};
+    final List<String> fileNames = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i)
+    {
+      final StringBuilder name = new StringBuilder();
+      final int wordCount = 1 + random.nextInt(4);
+      for (int w = 0; w < wordCount; ++w)
+      {
+        name.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      fileNames.add(name.append(i % 7).append(".mp3").toString());
+    }
+    return fileNames;
+  }
+
+  private static List<String> describe(List<BatchMatchItem> items)
+  {
+    final List<String> result = new ArrayList<>();
+    for (BatchMatchItem item : items)
+    {
+      result.add(item.getEntry().getTrackFileName() + " -> " + item.getMatches());
+    }
+    return result;
+  }
+
+  @Test
+  public void parallelResultsEqualSequentialResults()
+  {
+    final Random random = new Random(11);
+    final List<String> mediaFiles = new ArrayList<>();
+    for (String fileName : makeFileNames(random, 2000))
+    {
+      mediaFiles.add(File.separator + "music" + File.separator + fileName);
+    }
+    final FileNameTokenIndex tokenIndex = new FileNameTokenIndex(mediaFiles);
+    final List<PlaylistEntry> entries = new ArrayList<>();
+    for (String fileName : makeFileNames(random, 300))
+    {
+      entries.add(new TestEntry(fileName));
+    }
+
+    final List<String> expected = describe(new ClosestMatchFinder(tokenIndex, options, 1, null).findClosestMatches(entries, null));
+    assertFalse(expected.isEmpty());
+
+    final List<Integer> progress = new CopyOnWriteArrayList<>();
+    final IProgressObserver<String> observer = new IProgressObserver<>()
+    {
+      @Override
+      public void reportProgress(int percent)
+      {
+        progress.add(percent);
+      }
+
+      @Override
+      public void reportProgress(int percent, String state)
+      {
+        progress.add(percent);
+      }
+
+      @Override
+      public boolean getCancelled()
+      {
+        return false;
+      }
+    };
+    assertEquals(expected, describe(new ClosestMatchFinder(tokenIndex, options).findClosestMatches(entries, observer)));
+
+    for (int i = 1; i < progress.size(); ++i)
+    {
+      assertTrue(progress.get(i) > progress.get(i - 1), "Progress should only increase");
+    }
+    assertEquals(100, (int) progress.get(progress.size() - 1));
+  }
+
+  @Test
+  public void cacheMatchesEachFileNameOnce()
+  {
+    final Random random = new Random(12);
+    final List<String> mediaFiles = new ArrayList<>();
+    for (String fileName : makeFileNames(random, 1000))
+    {
+      mediaFiles.add(File.separator + "music" + File.separator + fileName);
+    }
+    final FileNameTokenIndex tokenIndex = new FileNameTokenIndex(mediaFiles);
+    final List<String> fileNames = makeFileNames(random, 50);
+    final List<PlaylistEntry> entries = new ArrayList<>();
+    for (String fileName : fileNames)
+    {
+      entries.add(new TestEntry(fileName));
+    }
+    final List<String> expected = describe(new ClosestMatchFinder(tokenIndex, options, 1, null).findClosestMatches(entries, null));
+
+    final ClosestMatchCache cache = new ClosestMatchCache();
+    final int playlistCount = 4;
+    for (int i = 0; i < playlistCount; ++i)
+    {
+      assertEquals(expected, describe(new ClosestMatchFinder(tokenIndex, options, 4, cache).findClosestMatches(entries, null)));
+    }
+    final int distinct = new HashSet<>(fileNames).size();
+    assertEquals(distinct, cache.getMissCount());
+    assertEquals(playlistCount * fileNames.size() - distinct, cache.getHitCount());
+
+    // A new media library snapshot should not reuse the matches
+    new ClosestMatchFinder(new FileNameTokenIndex(mediaFiles), options, 4, cache).findClosestMatches(entries, null);
+    assertEquals(2L * distinct, cache.getMissCount());
+
+    final ClosestMatchCache bounded = new ClosestMatchCache(10);
+    new ClosestMatchFinder(tokenIndex, options, 4, bounded).findClosestMatches(entries, null);
+    assertEquals(10, bounded.size());
+  }
+}
@@ -0,0 +1,232 @@
+package listfix.model.playlists;
+
+import listfix.json.JsonAppOptions;
+import listfix.model.enums.PlaylistEntryStatus;
+import listfix.view.support.IPlaylistModifiedListener;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntryCountersTests
+{
+  @TempDir
+  Path tempDir;
+
+  private static class TestEntry extends PlaylistEntry
+  {
+    private final boolean url;
+
+    private TestEntry(boolean url, PlaylistEntryStatus status)
+    {
+      super(null, null);
+      this.url = url;
+      this._status = status;
+    }
+
+    private void repair()
+    {
+      this._status = PlaylistEntryStatus.Found;
+      this._isFixed = true;
+    }
+
+    @Override
+    public String getTrackFolder()
+    {
+      return "";
+    }
+
+    @Override
+    public String getTrackFileName()
+    {
+      return "";
+    }
+
+    @Override
+    protected boolean exists()
+    {
+      return false;
+    }
+
+    @Override
+    public void recheckFoundStatus()
+    {
+    }
+
+    @Override
+    public boolean isURL()
+    {
+      return this.url;
+    }
+
+    @Override
+    public boolean isRelative()
+    {
+      return false;
+    }
+
+    @Override
+    public Object clone()
+    {
+      return new TestEntry(this.url, this._status);
+    }
+  }
+
+  private static void assertCounts(EntryCounters expected, EntryCounters actual)
+  {
+    assertEquals(expected.getUrlCount(), actual.getUrlCount(), "URL");
+    assertEquals(expected.getMissingCount(), actual.getMissingCount(), "Missing");
+    assertEquals(expected.getFixedCount(), actual.getFixedCount(), "Fixed");
+    assertEquals(expected.getUnknownCount(), actual.getUnknownCount(), "Unknown");
+  }
+
+  @Test
+  public void concurrentChangesMatchRecount()
+  {
+    final Random random = new Random(11);
+    final PlaylistEntryStatus[] statuses = {PlaylistEntryStatus.Found, PlaylistEntryStatus.Missing, PlaylistEntryStatus.Unknown};
+    final List<TestEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 20000; ++i)
+    {
+      entries.add(new TestEntry(random.nextInt(10) == 0, statuses[random.nextInt(statuses.length)]));
+    }
+    final EntryCounters counters = new EntryCounters();
+    counters.addAll(entries);
+
+    IntStream.range(0, entries.size()).parallel().filter(i -> i % 3 == 0).forEach(i -> {
+      final TestEntry entry = entries.get(i);
+      final int previousState = EntryCounters.stateOf(entry);
+      entry.repair();
+      counters.changed(previousState, entry);
+    });
+    final TestEntry removed = entries.remove(1);
+    counters.remove(removed);
+
+    final EntryCounters expected = new EntryCounters();
+    expected.recount(entries);
+    assertCounts(expected, counters);
+    assertTrue(counters.getFixedCount() > 0);
+  }
+
+  @Test
+  public void backgroundResolutionKeepsCountersExact() throws Exception
+  {
+    final Path music = Files.createDirectories(this.tempDir.resolve("music"));
+    final StringBuilder content = new StringBuilder();
+    for (int i = 0; i < Playlist.DEFERRED_STATUS_MIN_ENTRIES; ++i)
+    {
+      content.append("music/").append(i).append(".mp3\n");
+      if (i % 3 == 0)
+      {
+        Files.createFile(music.resolve(i + ".mp3"));
+      }
+    }
+    final Path playlistPath = this.tempDir.resolve("list.m3u8");
+    Files.writeString(playlistPath, content);
+    final Playlist playlist = Playlist.load(playlistPath, null, new JsonAppOptions(), true);
+    assertEquals(playlist.size(), playlist.getUnknownCount());
+
+    // Single thread standing in for the event dispatch thread, the only one accessing the playlist
+    final ExecutorService notifier = Executors.newSingleThreadExecutor();
+    try
+    {
+      final List<int[]> ranges = new ArrayList<>();
+      notifier.submit(() -> {
+        playlist.addModifiedListener(new IPlaylistModifiedListener()
+        {
+          @Override
+          public void playlistModified(Playlist list)
+          {
+          }
+
+          @Override
+          public void entryStatusResolved(Playlist list, int firstIndex, int lastIndex)
+          {
+            ranges.add(new int[]{firstIndex, lastIndex});
+          }
+        });
+        playlist.resolveStatusInBackground(notifier);
+        // Removed while being resolved
+        playlist.remove(IntStream.range(0, 100).toArray());
+      }).get();
+
+      final long deadline = System.currentTimeMillis() + 60000;
+      while (notifier.submit(playlist::getUnknownCount).get() > 0)
+      {
+        assertTrue(System.currentTimeMillis() < deadline, "Resolved in time");
+        Thread.sleep(10);
+      }
+      notifier.submit(() -> {
+        final EntryCounters expected = new EntryCounters();
+        expected.recount(playlist.getEntries());
+        assertEquals(expected.getMissingCount(), playlist.getMissingCount());
+        assertEquals((playlist.size() * 2 + 1) / 3, playlist.getMissingCount());
+        assertFalse(ranges.isEmpty());
+        for (int[] range : ranges)
+        {
+          assertTrue(range[0] >= 0 && range[0] <= range[1] && range[1] < playlist.size());
+        }
+      }).get();
+    }
+    finally
+    {
+      notifier.shutdown();
+      assertTrue(notifier.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void prioritizedEntriesAreCheckedOnce() throws Exception
+  {
+    final StringBuilder content = new StringBuilder();
+    for (int i = 0; i < Playlist.DEFERRED_STATUS_MIN_ENTRIES; ++i)
+    {
+      content.append("music/").append(i).append(".mp3\n");
+    }
+    final Path playlistPath = this.tempDir.resolve("list.m3u8");
+    Files.writeString(playlistPath, content);
+    final Playlist playlist = Playlist.load(playlistPath, null, new JsonAppOptions(), true);
+    final List<FilePlaylistEntry> entries = new ArrayList<>();
+    playlist.getEntries().forEach(entry -> entries.add((FilePlaylistEntry) entry));
+
+    final ExecutorService notifier = Executors.newSingleThreadExecutor();
+    try
+    {
+      final BackgroundStatusResolver resolver = new BackgroundStatusResolver(entries, notifier);
+      // Requested again while the entries already checked are not published yet
+      for (int i = entries.size() - 1; i >= 0; i -= 2)
+      {
+        resolver.prioritize(entries.get(i));
+      }
+      final List<FilePlaylistEntry.StatusCheck> checks = new ArrayList<>();
+      resolver.start(checks::addAll);
+      for (int i = entries.size() - 1; i >= 0; i -= 2)
+      {
+        resolver.prioritize(entries.get(i));
+      }
+
+      final long deadline = System.currentTimeMillis() + 60000;
+      while (!notifier.submit(resolver::isDone).get())
+      {
+        assertTrue(System.currentTimeMillis() < deadline, "Resolved in time");
+        Thread.sleep(10);
+      }
+      assertEquals(entries.size(), (int) notifier.submit(checks::size).get());
+    }
+    finally
+    {
+      notifier.shutdown();
+      assertTrue(notifier.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package listfix.model.playlists;
+
+import io.github.borewit.lizzy.content.Content;
+import io.github.borewit.lizzy.playlist.Media;
+import listfix.json.JsonAppOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FilePlaylistEntryTests
+{
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void resolvesAgainstThePlaylistFolder() throws IOException
+  {
+    Files.createDirectories(this.tempDir.resolve("music"));
+    Files.createFile(this.tempDir.resolve("music").resolve("a.mp3"));
+    final Path playlistPath = this.tempDir.resolve("list.m3u8");
+    Files.writeString(playlistPath, "music/a.mp3\nmusic/b.mp3\n");
+
+    final Playlist playlist = Playlist.load(playlistPath, null, new JsonAppOptions());
+    final FilePlaylistEntry a = (FilePlaylistEntry) playlist.get(0);
+    final FilePlaylistEntry b = (FilePlaylistEntry) playlist.get(1);
+    assertEquals("music", a.getTrackFolder());
+    assertEquals(a.getTrackFolder(), b.getTrackFolder());
+    assertEquals(this.tempDir.resolve("music").resolve("a.mp3"), a.getAbsolutePath());
+    assertTrue(a.isFound());
+    assertFalse(b.isFound());
+
+    a.setFileName("b.mp3");
+    assertEquals(this.tempDir.resolve("music").resolve("b.mp3"), a.getAbsolutePath());
+    assertEquals(b, a);
+    assertEquals(b.hashCode(), a.hashCode());
+
+  }
+
+  @Test
+  public void savesTheMediaItWasReadFrom() throws IOException
+  {
+    final Path playlistPath = this.tempDir.resolve("list.m3u8");
+    Files.writeString(playlistPath, "");
+    final Playlist playlist = Playlist.load(playlistPath, null, new JsonAppOptions());
+    final Media media = new Media(new Content(this.tempDir.resolve("a.mp3").toString()));
+    media.setDuration(215000L);
+
+    final PlaylistEntry entry = PlaylistEntry.makePlaylistEntry(playlist, media);
+    final String moved = this.tempDir.resolve("b.mp3").toString();
+    assertSame(media, entry.toMedia(moved), "Keeps the fields read by Lizzy");
+    assertEquals(moved, media.getSource().toString());
+
+    final Media copy = ((PlaylistEntry) entry.clone()).toMedia(moved);
+    assertNotSame(media, copy, "A copy does not change the media of the original");
+    assertEquals(Long.valueOf(215000L), copy.getDuration());
+  }
+
+  @Test
+  public void keepsPointingToTheSameFileWhenMoved() throws IOException
+  {
+    Files.createDirectories(this.tempDir.resolve("music"));
+    Files.createFile(this.tempDir.resolve("music").resolve("a.mp3"));
+    final Path playlistPath = this.tempDir.resolve("list.m3u8");
+    Files.writeString(playlistPath, "music/a.mp3\n");
+
+    final Playlist playlist = Playlist.load(playlistPath, null, new JsonAppOptions());
+    final FilePlaylistEntry entry = (FilePlaylistEntry) playlist.get(0);
+    playlist.setPath(this.tempDir.resolve("lists").resolve("list.m3u8"));
+    assertEquals(this.tempDir.resolve("music").resolve("a.mp3"), entry.getAbsolutePath());
+    assertEquals(Path.of("..", "music", "a.mp3"), entry.getTrackPath());
+    assertTrue(entry.isFound());
+
+    playlist.setPath(playlistPath);
+    assertEquals(Path.of("music", "a.mp3"), entry.getTrackPath());
+  }
+}
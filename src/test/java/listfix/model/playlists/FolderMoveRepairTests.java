@@ -0,0 +1,163 @@
+package listfix.model.playlists;
+
+import listfix.config.IMediaLibrary;
+import listfix.json.JsonAppOptions;
+import listfix.json.JsonMediaLibrary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FolderMoveRepairTests
+{
+  @TempDir
+  Path tempDir;
+
+  private Path oldRoot;
+  private Path newRoot;
+  private IMediaLibrary mediaLibrary;
+
+  @BeforeEach
+  public void setUp()
+  {
+    this.oldRoot = this.tempDir.resolve("old");
+    this.newRoot = this.tempDir.resolve("new");
+    this.mediaLibrary = new JsonMediaLibrary();
+  }
+
+  /**
+   * Create the media file and add it to the media library
+   */
+  private void addMediaFile(Path path) throws IOException
+  {
+    Files.createDirectories(path.getParent());
+    Files.createFile(path);
+    this.mediaLibrary.getNestedMediaFiles().add(path.toString());
+  }
+
+  /**
+   * Load a playlist with the provided absolute entries
+   */
+  private Playlist loadPlaylist(Path... tracks) throws IOException
+  {
+    final Path playlistPath = this.tempDir.resolve("list.m3u8");
+    Files.writeString(playlistPath, Stream.of(tracks).map(track -> track + "\n").collect(Collectors.joining()));
+    return Playlist.load(playlistPath, null, new JsonAppOptions());
+  }
+
+  private List<FilePlaylistEntry> repair(Playlist playlist)
+  {
+    return new FolderMoveRepair(this.mediaLibrary, false, false).repair(playlist.getEntries());
+  }
+
+  private static Path path(PlaylistEntry entry)
+  {
+    return ((FilePlaylistEntry) entry).getAbsolutePath();
+  }
+
+  @Test
+  public void findsMoveByProbing() throws IOException
+  {
+    final Path album = this.newRoot.resolve("Album");
+    this.addMediaFile(album.resolve("b.mp3"));
+    this.addMediaFile(album.resolve("c.mp3"));
+    this.addMediaFile(album.resolve("d.mp3"));
+    // The first probe is not in the media library, the second one finds the folder
+    final Playlist playlist = this.loadPlaylist(
+      this.oldRoot.resolve("Album").resolve("a.mp3"),
+      this.oldRoot.resolve("Album").resolve("b.mp3"),
+      this.oldRoot.resolve("Album").resolve("c.mp3"),
+      this.oldRoot.resolve("Album").resolve("d.mp3"));
+
+    final List<FilePlaylistEntry> repaired = this.repair(playlist);
+    assertEquals(List.of(playlist.get(1), playlist.get(2), playlist.get(3)), repaired);
+    assertFalse(playlist.get(0).isFound());
+    assertEquals(this.oldRoot.resolve("Album").resolve("a.mp3"), path(playlist.get(0)));
+    assertEquals(album.resolve("b.mp3"), path(playlist.get(1)));
+    assertEquals(album.resolve("c.mp3"), path(playlist.get(2)));
+    assertEquals(album.resolve("d.mp3"), path(playlist.get(3)));
+    assertTrue(playlist.get(3).isFound());
+  }
+
+  @Test
+  public void appliesLearnedMoveToFollowingFolders() throws IOException
+  {
+    this.addMediaFile(this.newRoot.resolve("Artist").resolve("First").resolve("a.mp3"));
+    this.addMediaFile(this.newRoot.resolve("Artist").resolve("First").resolve("b.mp3"));
+    this.addMediaFile(this.newRoot.resolve("Artist").resolve("Second").resolve("c.mp3"));
+    // A single entry is not searched by itself, only the learned move of "old" to "new" repairs it
+    final Playlist playlist = this.loadPlaylist(
+      this.oldRoot.resolve("Artist").resolve("First").resolve("a.mp3"),
+      this.oldRoot.resolve("Artist").resolve("First").resolve("b.mp3"),
+      this.oldRoot.resolve("Artist").resolve("Second").resolve("c.mp3"));
+
+    final List<FilePlaylistEntry> repaired = this.repair(playlist);
+    assertEquals(playlist.getEntries(), repaired);
+    assertEquals(this.newRoot.resolve("Artist").resolve("Second").resolve("c.mp3"), path(playlist.get(2)));
+    assertTrue(playlist.get(2).isFound());
+  }
+
+  @Test
+  public void doesNotApplyLearnedMoveToUnrelatedFolder() throws IOException
+  {
+    this.addMediaFile(this.newRoot.resolve("Album").resolve("a.mp3"));
+    this.addMediaFile(this.newRoot.resolve("Album").resolve("b.mp3"));
+    this.addMediaFile(this.newRoot.resolve("Other").resolve("c.mp3"));
+    // "older" shares its name prefix with "old", but is not below it
+    final Path unrelated = this.tempDir.resolve("older").resolve("Other").resolve("c.mp3");
+    final Playlist playlist = this.loadPlaylist(
+      this.oldRoot.resolve("Album").resolve("a.mp3"),
+      this.oldRoot.resolve("Album").resolve("b.mp3"),
+      unrelated);
+
+    final List<FilePlaylistEntry> repaired = this.repair(playlist);
+    assertEquals(List.of(playlist.get(0), playlist.get(1)), repaired);
+    assertEquals(unrelated, path(playlist.get(2)));
+    assertFalse(playlist.get(2).isFound());
+  }
+
+  @Test
+  public void leavesFolderWithAllEntriesMissing() throws IOException
+  {
+    this.addMediaFile(this.newRoot.resolve("Album").resolve("other.mp3"));
+    final Playlist playlist = this.loadPlaylist(
+      this.oldRoot.resolve("Album").resolve("a.mp3"),
+      this.oldRoot.resolve("Album").resolve("b.mp3"),
+      this.oldRoot.resolve("Album").resolve("c.mp3"));
+
+    assertTrue(this.repair(playlist).isEmpty());
+    for (int i = 0; i < playlist.size(); ++i)
+    {
+      assertFalse(playlist.get(i).isFound());
+      assertEquals(this.oldRoot.resolve("Album"), path(playlist.get(i)).getParent());
+    }
+  }
+
+  @Test
+  public void batchRepairNotifiesOnce() throws IOException
+  {
+    this.addMediaFile(this.newRoot.resolve("Album").resolve("a.mp3"));
+    this.addMediaFile(this.newRoot.resolve("Album").resolve("b.mp3"));
+    this.addMediaFile(this.newRoot.resolve("Other").resolve("c.mp3"));
+    final Playlist playlist = this.loadPlaylist(
+      this.oldRoot.resolve("Album").resolve("a.mp3"),
+      this.oldRoot.resolve("Album").resolve("b.mp3"),
+      this.oldRoot.resolve("Other").resolve("c.mp3"));
+    final AtomicInteger notifications = new AtomicInteger();
+    playlist.addModifiedListener(list -> notifications.incrementAndGet());
+
+    playlist.batchRepair(this.mediaLibrary, null);
+    assertEquals(this.newRoot.resolve("Other").resolve("c.mp3"), path(playlist.get(2)));
+    assertEquals(0, playlist.getMissingCount());
+    assertEquals(1, notifications.get());
+  }
+}
@@ -1,15 +1,24 @@
 package listfix.model.playlists;
 
 import io.github.borewit.lizzy.playlist.PlaylistFormat;
+import io.github.borewit.lizzy.playlist.SpecificPlaylist;
 import listfix.io.playlists.LizzyPlaylistUtil;
+import listfix.json.JsonAppOptions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class LizzyPlaylistUtilTests
 {
+  @TempDir
+  Path tempDir;
+
   @Test
   public void resolvePlaylistExtension() {
     assertEquals(".m3u", LizzyPlaylistUtil.getPreferredExtensionFor(PlaylistFormat.m3u));
@@ -27,4 +36,38 @@ public class LizzyPlaylistUtilTests
     Path mp3 = Path.of("01. Sodade.mp3");
     assertFalse(LizzyPlaylistUtil.isPlaylist(mp3), String.format("\"%s\" is not a playlist", mp3));
   }
+
+  @Test
+  public void readsInTheFormatOfTheExtension() throws Exception
+  {
+    // Detected as SMIL without the <?wpl?> processing instruction
+    final Path wpl = this.tempDir.resolve("list.wpl");
+    Files.writeString(wpl, "<smil><head><title>List</title></head><body><seq><media src=\"a.mp3\"/></seq></body></smil>");
+    assertEquals("wpl", LizzyPlaylistUtil.readPlaylist(wpl).getProvider().getId());
+
+    // PLS saved with the M3U extension
+    final Path m3u = this.tempDir.resolve("list.m3u");
+    Files.writeString(m3u, "[playlist]\nFile1=a.mp3\nNumberOfEntries=1\nVersion=2\n");
+    assertEquals("pls", LizzyPlaylistUtil.readPlaylist(m3u).getProvider().getId());
+  }
+
+  @Test
+  public void saveKeepsWhatLizzyRead() throws Exception
+  {
+    final Path track = Files.createFile(this.tempDir.resolve("a.mp3"));
+    final Path playlistPath = this.tempDir.resolve("list.pls");
+    Files.writeString(playlistPath, "[playlist]\n" +
+      "File1=" + track + "\nTitle1=A\nLength1=215\n" +
+      "File2=https://example.com/stream\nTitle2=Radio\nLength2=-1\n" +
+      "NumberOfEntries=2\nVersion=2\n");
+
+    // Lizzy converting the playlist to its generic model and back
+    final SpecificPlaylist specificPlaylist = LizzyPlaylistUtil.readPlaylist(playlistPath);
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    specificPlaylist.getProvider().toSpecificPlaylist(specificPlaylist.toPlaylist()).writeTo(expected);
+
+    final Playlist playlist = Playlist.load(playlistPath, null, new JsonAppOptions());
+    playlist.save(PlaylistFormat.pls, null);
+    assertEquals(expected.toString(StandardCharsets.UTF_8), Files.readString(playlistPath));
+  }
 }
@@ -0,0 +1,141 @@
+package listfix.model.playlists;
+
+import listfix.util.SnapshotList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModificationJournalTests
+{
+  private static class TestEntry extends PlaylistEntry
+  {
+    private final String fileName;
+
+    private TestEntry(String fileName)
+    {
+      super(null, null);
+      this.fileName = fileName;
+    }
+
+    @Override
+    public String getTrackFolder()
+    {
+      return "";
+    }
+
+    @Override
+    public String getTrackFileName()
+    {
+      return this.fileName;
+    }
+
+    @Override
+    protected boolean exists()
+    {
+      return false;
+    }
+
+    @Override
+    public void recheckFoundStatus()
+    {
+    }
+
+    @Override
+    public boolean isURL()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean isRelative()
+    {
+      return false;
+    }
+
+    @Override
+    public Object clone()
+    {
+      return new TestEntry(this.fileName);
+    }
+  }
+
+  private static SnapshotList<PlaylistEntry> makeEntries(int count)
+  {
+    final SnapshotList<PlaylistEntry> entries = new SnapshotList<>();
+    for (int i = 0; i < count; ++i)
+    {
+      entries.add(new TestEntry("track" + i + ".mp3"));
+    }
+    return entries;
+  }
+
+  @Test
+  public void movingBackIsNotModified()
+  {
+    final SnapshotList<PlaylistEntry> entries = makeEntries(100);
+    final ModificationJournal journal = new ModificationJournal(entries);
+    journal.reset(entries.snapshot());
+    final AtomicInteger comparisons = new AtomicInteger();
+    final BooleanSupplier compare = () -> {
+      comparisons.incrementAndGet();
+      return true;
+    };
+
+    assertFalse(journal.isModified(compare));
+    for (int i = 0; i < 99; ++i)
+    {
+      journal.swap(i, i + 1);
+      assertTrue(journal.isModified(compare));
+    }
+    for (int i = 98; i >= 0; --i)
+    {
+      journal.swap(i, i + 1);
+    }
+    assertFalse(journal.isModified(compare));
+
+    journal.set(5, new TestEntry("other.mp3"));
+    assertTrue(journal.isModified(compare));
+    assertEquals(0, comparisons.get(), "Positions are compared by identity");
+  }
+
+  @Test
+  public void writesOutsideOfTheJournalAreDetected()
+  {
+    final SnapshotList<PlaylistEntry> entries = makeEntries(10);
+    final ModificationJournal journal = new ModificationJournal(entries);
+    journal.reset(entries.snapshot());
+
+    Collections.reverse(entries);
+    assertTrue(journal.isModified(() -> true));
+    Collections.reverse(entries);
+    assertFalse(journal.isModified(() -> true));
+    final PlaylistEntry removed = entries.remove(3);
+    assertTrue(journal.isModified(() -> true));
+    entries.add(3, removed);
+    assertFalse(journal.isModified(() -> true));
+  }
+
+  @Test
+  public void locationsAreComparedOnceAfterChanges()
+  {
+    final SnapshotList<PlaylistEntry> entries = makeEntries(10);
+    final ModificationJournal journal = new ModificationJournal(entries);
+    final List<PlaylistEntry> original = entries.snapshot();
+    journal.reset(original);
+    final AtomicInteger comparisons = new AtomicInteger();
+
+    journal.locationsChanged();
+    assertTrue(journal.isModified(() -> comparisons.incrementAndGet() < 0));
+    assertTrue(journal.isModified(() -> comparisons.incrementAndGet() < 0));
+    assertEquals(1, comparisons.get());
+
+    journal.locationsChanged();
+    assertFalse(journal.isModified(() -> comparisons.incrementAndGet() > 0));
+    assertEquals(2, comparisons.get());
+  }
+}
@@ -0,0 +1,63 @@
+package listfix.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedScoreHeapTests
+{
+  /**
+   * Selection as done before the heap: a list sorted on descending score after each insert
+   */
+  private static List<int[]> legacyTopMatches(int[] scores, int max)
+  {
+    final Comparator<int[]> byScore = (a, b) -> Integer.compare(b[1], a[1]);
+    final List<int[]> matches = new ArrayList<>();
+    for (int id = 0; id < scores.length; ++id)
+    {
+      if (matches.size() < max)
+      {
+        matches.add(new int[]{id, scores[id]});
+      }
+      else if (matches.get(max - 1)[1] < scores[id])
+      {
+        matches.set(max - 1, new int[]{id, scores[id]});
+      }
+      matches.sort(byScore);
+    }
+    return matches;
+  }
+
+  @Test
+  public void sameAsSortedList()
+  {
+    final Random random = new Random(5);
+    for (int run = 0; run < 200; ++run)
+    {
+      final int max = 1 + random.nextInt(25);
+      final int[] scores = new int[random.nextInt(300)];
+      for (int id = 0; id < scores.length; ++id)
+      {
+        scores[id] = 1 + random.nextInt(40);
+      }
+
+      final BoundedScoreHeap heap = new BoundedScoreHeap(max);
+      for (int id = scores.length - 1; id >= 0; --id)
+      {
+        heap.offer(id, scores[id]);
+      }
+      final int[] ranked = heap.drain();
+
+      final List<int[]> expected = legacyTopMatches(scores, max);
+      assertEquals(2 * expected.size(), ranked.length);
+      for (int i = 0; i < expected.size(); ++i)
+      {
+        assertEquals(expected.get(i)[0], ranked[2 * i], "id at rank " + i);
+        assertEquals(expected.get(i)[1], ranked[2 * i + 1], "score at rank " + i);
+      }
+      assertEquals(0, heap.size());
+    }
+  }
+}
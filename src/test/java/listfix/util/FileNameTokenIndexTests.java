@@ -0,0 +1,122 @@
+package listfix.util;
+
+import listfix.io.IPlaylistOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileNameTokenIndexTests
+{
+  static final IPlaylistOptions options = new IPlaylistOptions()
+  {
+    @Override
+    public boolean getAlwaysUseUNCPaths()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean getSavePlaylistsWithRelativePaths()
+    {
+      return false;
+    }
+
+    @Override
+    public String getIgnoredSmallWords()
+    {
+      return "an, and, dsp, in, my, of, the, to";
+    }
+
+    @Override
+    public int getMaxClosestResults()
+    {
+      return 20;
+    }
+
+    @Override
+    public int getClosestMatchParallelism()
+    {
+      return 4;
+    }
+
+    @Override
+    public boolean getCaseInsensitiveExactMatching()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean getSyncPlaylistsOnSave()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean getPreservePlaylistAttributesOnSave()
+    {
+      return false;
+    }
+
+    @Override
+    public Set<String> getPlaylistDirectories()
+    {
+      return Collections.emptySet();
+    }
+  };
+
+  static List<String> makeCorpus(Random random, int count)
+  {
+    final String[] words = {"The", "Love", "of", "my", "Life", "Queen", "Live", "at", "Wembley", "remix", "Don't", "Stop", "MeNow", "in", "the", "Air", "Tonight", "01", "02", "a", "B"};
+    final String[] separators = {" ", " - ", "_", ".", "(", ")", "'"};
+    final List<String> corpus = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i)
+    {
+      final StringBuilder name = new StringBuilder();
+      final int wordCount = 1 + random.nextInt(6);
+      for (int w = 0; w < wordCount; ++w)
+      {
+        name.append(words[random.nextInt(words.length)]);
+        name.append(separators[random.nextInt(separators.length)]);
+      }
+      name.append(random.nextBoolean() ? "mp3" : "flac");
+      corpus.add(File.separator + "music" + File.separator + "dir" + (i % 50) + File.separator + name);
+    }
+    return corpus;
+  }
+
+  @Test
+  public void candidatesAreTheFilesWithAPositiveScore()
+  {
+    final Random random = new Random(1);
+    final List<String> corpus = makeCorpus(random, 5000);
+    final FileNameTokenIndex index = new FileNameTokenIndex(corpus);
+    final FileNameTokenizer tokenizer = new FileNameTokenizer(options);
+
+    for (String query : makeCorpus(random, 100))
+    {
+      final String entryName = FileNameTokenizer.normalizeFileName(new File(query).getName());
+      final int[] entryTokenCounts = index.getTokenCounts(tokenizer.splitFileName(entryName));
+      final long entryLengthScore = index.getMaxLengthScore(entryTokenCounts);
+      final List<Integer> expected = new ArrayList<>();
+      for (int id = 0; id < corpus.size(); ++id)
+      {
+        final int score = tokenizer.score(entryName, FileNameTokenizer.normalizeFileName(new File(corpus.get(id)).getName()));
+        assertEquals(score, index.score(entryTokenCounts, id), query);
+        assertTrue(index.getMaxScore(entryTokenCounts, entryLengthScore, id) >= score, query);
+        if (score > 0)
+        {
+          expected.add(id);
+        }
+      }
+      final List<Integer> candidates = new ArrayList<>();
+      for (int id : index.findCandidates(entryTokenCounts))
+      {
+        candidates.add(id);
+      }
+      assertEquals(expected, candidates, query);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package listfix.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileNameTokenizerTests
+{
+  private static final String[] fileNames = {
+    "01 - Bohemian Rhapsody.mp3",
+    "Queen - Bohemian Rhapsody (Live at Wembley '86).flac",
+    "queen_bohemian_rhapsody_remastered_2011.mp3",
+    "Pink Floyd - Another Brick in the Wall, Pt. 2.mp3",
+    "Another Brick In The Wall (Part 2).ogg",
+    "AC-DC - Back In Black.mp3",
+    "ACDC_Back_in_Black_[Remastered].m4a",
+    "Guns N' Roses - Sweet Child O' Mine.mp3",
+    "Sweet Child o Mine (Live).mp3",
+    "Daft Punk - Harder, Better, Faster, Stronger.flac",
+    "DaftPunk-HarderBetterFasterStronger.mp3",
+    "02. Daft Punk - One More Time {Radio Edit}.mp3",
+    "The Beatles - Let It Be (2009 Remaster).mp3",
+    "Let It Be... Naked - 01 - Get Back.mp3",
+    "Sigur R\u00F3s - Hopp\u00EDpolla.mp3",
+    "Bj\u00F6rk - J\u00F3ga.flac",
+    "Beyonc\u00E9 - Halo.mp3",
+    "Mot\u00F6rhead - Ace of Spades.mp3",
+    "Ace Of Spades (Mot\u00F6rhead cover) by Mot\u00F6rhead fans.mp3",
+    "03 - Smells Like Teen Spirit.mp3",
+    "Nirvana - Smells Like Teen Spirit [Official Music Video].webm",
+    "Nirvana_-_Smells_Like_Teen_Spirit.mp3",
+    "track01.cda",
+    "Track 01.wav",
+    "a.mp3",
+    "no extension",
+    ".hidden",
+    "Artist & Band - Song #1 + Song #2 = Medley!.mp3",
+    "Artist~Band@Live;Song:Title|Remix.mp3",
+    "01-01-01 01 01.mp3",
+    "Mr. Brightside.mp3",
+    "The Killers - Mr Brightside.mp3",
+    "dsp - in my time of the season.mp3",
+    "Song Song Song Song.mp3"
+  };
+
+  /**
+   * The scoring algorithm before the introduction of {@link TokenScorer}, as reference
+   */
+  private static int legacyScore(List<String> array1, List<String> array2)
+  {
+    HashMap<String, Integer> array1Counts = new HashMap<>();
+    HashMap<String, Integer> array2Counts = new HashMap<>();
+    for (String t : array1)
+    {
+      array1Counts.merge(t, 1, Integer::sum);
+    }
+    for (String t : array2)
+    {
+      if (array1Counts.containsKey(t))
+      {
+        array2Counts.merge(t, 1, Integer::sum);
+      }
+    }
+    int result = 0;
+    if (array2Counts.size() > 0)
+    {
+      result = array2Counts.size() == 1 ? 1 : (int) Math.pow(3.0, array2Counts.size());
+      for (String token : array2Counts.keySet())
+      {
+        result = result + ((token.length() - 1) * Math.min(array1Counts.get(token), array2Counts.get(token)));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Tokenization before the separator lookup table, as reference
+   */
+  private static List<String> legacySplit(String fileName, Set<String> ignoredWords)
+  {
+    int index = fileName.lastIndexOf(".");
+    if (index >= 0)
+    {
+      fileName = fileName.substring(0, index);
+    }
+    StringTokenizer tokenMaker = new StringTokenizer(fileName, " .-_[]{},/\\`'~!@#$%^\"&*()+=|:;");
+    List<String> result = new ArrayList<>();
+    while (tokenMaker.hasMoreTokens())
+    {
+      String token = tokenMaker.nextToken();
+      if (token.length() > 1 && !ignoredWords.contains(token))
+      {
+        result.add(token);
+      }
+    }
+    return result;
+  }
+
+  private static List<String> corpus()
+  {
+    final List<String> corpus = new ArrayList<>();
+    for (String fileName : fileNames)
+    {
+      corpus.add(FileNameTokenizer.normalizeFileName(fileName));
+    }
+    for (String path : FileNameTokenIndexTests.makeCorpus(new Random(3), 300))
+    {
+      corpus.add(FileNameTokenizer.normalizeFileName(new File(path).getName()));
+    }
+    return corpus;
+  }
+
+  @Test
+  public void sameTokensAsStringTokenizer()
+  {
+    final Set<String> ignoredWords = new HashSet<>(Arrays.asList("an", "and", "dsp", "in", "my", "of", "the", "to"));
+    final FileNameTokenizer tokenizer = new FileNameTokenizer(FileNameTokenIndexTests.options);
+    for (String fileName : corpus())
+    {
+      assertEquals(legacySplit(fileName, ignoredWords), tokenizer.splitFileName(fileName), fileName);
+    }
+  }
+
+  @Test
+  public void sameScoresAsLegacyScoring()
+  {
+    final FileNameTokenizer tokenizer = new FileNameTokenizer(FileNameTokenIndexTests.options);
+    final List<String> corpus = corpus();
+    int positive = 0;
+    for (String fileName1 : corpus)
+    {
+      for (String fileName2 : corpus)
+      {
+        final int expected = legacyScore(tokenizer.splitFileName(fileName1), tokenizer.splitFileName(fileName2));
+        assertEquals(expected, tokenizer.score(fileName1, fileName2), fileName1 + " <> " + fileName2);
+        if (expected > 0)
+        {
+          ++positive;
+        }
+      }
+    }
+    assertTrue(positive > corpus.size(), "Corpus should contain similar file names");
+  }
+}
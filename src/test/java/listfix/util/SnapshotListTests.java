@@ -0,0 +1,105 @@
+package listfix.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotListTests
+{
+  @Test
+  public void behavesLikeArrayList()
+  {
+    final Random random = new Random(3);
+    final SnapshotList<Integer> list = new SnapshotList<>();
+    final List<Integer> expected = new ArrayList<>();
+    for (int step = 0; step < 5000; ++step)
+    {
+      switch (random.nextInt(6))
+      {
+        case 0, 1 -> {
+          final int index = random.nextInt(expected.size() + 1);
+          list.add(index, step);
+          expected.add(index, step);
+        }
+        case 2 -> {
+          final List<Integer> added = List.of(step, -step);
+          final int index = random.nextInt(expected.size() + 1);
+          list.addAll(index, added);
+          expected.addAll(index, added);
+        }
+        case 3 -> {
+          if (!expected.isEmpty())
+          {
+            final int index = random.nextInt(expected.size());
+            assertEquals(expected.remove(index), list.remove(index));
+          }
+        }
+        case 4 -> {
+          if (expected.size() > 1)
+          {
+            Collections.swap(list, 0, list.size() - 1);
+            Collections.swap(expected, 0, expected.size() - 1);
+          }
+        }
+        case 5 -> {
+          list.sort(Comparator.reverseOrder());
+          expected.sort(Comparator.reverseOrder());
+        }
+      }
+      if (step % 7 == 0)
+      {
+        list.snapshot();
+      }
+    }
+    assertEquals(expected, list);
+  }
+
+  @Test
+  public void bulkRemovalMatchesRemovingOneByOne()
+  {
+    final Random random = new Random(7);
+    for (int run = 0; run < 100; ++run)
+    {
+      final SnapshotList<Integer> list = new SnapshotList<>();
+      final List<Integer> expected = new ArrayList<>();
+      final int size = random.nextInt(200);
+      for (int i = 0; i < size; ++i)
+      {
+        list.add(i);
+        expected.add(i);
+      }
+      final List<Integer> snapshot = list.snapshot();
+
+      final int[] indexes = random.ints(random.nextInt(size + 1), 0, Math.max(1, size)).filter(ix -> ix < size).sorted().toArray();
+      assertEquals(Arrays.stream(indexes).distinct().count(), list.removeIndexes(indexes));
+      Arrays.stream(indexes).distinct().boxed().sorted(Comparator.reverseOrder()).forEach(ix -> expected.remove((int) ix));
+      assertEquals(expected, list);
+
+      list.removeIf(value -> value % 3 == 0);
+      expected.removeIf(value -> value % 3 == 0);
+      assertEquals(expected, list);
+      assertEquals(size, snapshot.size());
+    }
+  }
+
+  @Test
+  public void snapshotIsNotAffectedByModifications()
+  {
+    final SnapshotList<String> list = new SnapshotList<>();
+    list.addAll(List.of("a", "b", "c"));
+    final List<String> snapshot = list.snapshot();
+
+    list.set(0, "x");
+    list.remove(2);
+    list.add("d");
+    final List<String> secondSnapshot = list.snapshot();
+    list.clear();
+
+    assertEquals(List.of("a", "b", "c"), snapshot);
+    assertEquals(List.of("x", "b", "d"), secondSnapshot);
+    assertTrue(list.isEmpty());
+    assertThrows(UnsupportedOperationException.class, () -> snapshot.set(0, "y"));
+  }
+}